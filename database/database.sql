@@ -5,18 +5,65 @@
 CREATE TABLE IF NOT EXISTS account
 (
     id      varchar(255) NOT NULL PRIMARY KEY,
-    balance numeric(38, 2)
+    balance numeric(38, 2),
+    hot     boolean NOT NULL DEFAULT false
+);
+
+CREATE TABLE IF NOT EXISTS account_slot
+(
+    account_id varchar(255)   NOT NULL,
+    slot       integer        NOT NULL,
+    balance    numeric(38, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, slot)
 );
 
 CREATE TABLE IF NOT EXISTS transaction
 (
-    id           bigserial PRIMARY KEY,
-    amount       numeric(38, 2),
-    recipient_id varchar(255),
-    sender_id    varchar(255),
-    timestamp    timestamp(6) with time zone
+    id              bigserial PRIMARY KEY,
+    amount          numeric(38, 2),
+    recipient_id    varchar(255),
+    sender_id       varchar(255),
+    timestamp       timestamp(6) with time zone,
+    idempotency_key varchar(255) UNIQUE
+);
+
+CREATE INDEX IF NOT EXISTS transaction_sender_idx ON transaction (sender_id, timestamp, id);
+CREATE INDEX IF NOT EXISTS transaction_recipient_idx ON transaction (recipient_id, timestamp, id);
+CREATE INDEX IF NOT EXISTS transaction_timestamp_idx ON transaction (timestamp);
+
+CREATE TABLE IF NOT EXISTS outbox_message
+(
+    id             bigserial PRIMARY KEY,
+    transaction_id bigint NOT NULL,
+    created_at     timestamp(6) with time zone,
+    sent_at        timestamp(6) with time zone
 );
 
+CREATE INDEX IF NOT EXISTS outbox_message_unsent_idx ON outbox_message (id) WHERE sent_at IS NULL;
+
+CREATE TABLE IF NOT EXISTS account_baseline
+(
+    account_id      varchar(255)   NOT NULL PRIMARY KEY,
+    opening_balance numeric(38, 2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS scheduled_payment
+(
+    id             bigserial PRIMARY KEY,
+    sender_id      varchar(255),
+    recipient_id   varchar(255),
+    amount         numeric(38, 2),
+    recurrence     varchar(16),
+    start_at       timestamp(6) with time zone,
+    end_at         timestamp(6) with time zone,
+    occurrence     bigint NOT NULL DEFAULT 0,
+    next_execution timestamp(6) with time zone,
+    status         varchar(16),
+    last_result    varchar(255)
+);
+
+CREATE INDEX IF NOT EXISTS scheduled_payment_due_idx ON scheduled_payment (status, next_execution, id);
+
 INSERT INTO account (id, balance) VALUES
     ('user1', 1000),
     ('user2', 2000),
@@ -0,0 +1,77 @@
+-- Optional: range partitioning of transaction by month (Postgres 13+).
+-- Run once while the application is stopped, then start it with payment.history.partitioning.enabled=true,
+-- which creates the partitions of the coming months and archives those past the retention.
+
+BEGIN;
+
+ALTER TABLE transaction RENAME TO transaction_unpartitioned;
+
+CREATE TABLE transaction
+(
+    id              bigint NOT NULL DEFAULT nextval('transaction_id_seq'),
+    amount          numeric(38, 2),
+    recipient_id    varchar(255),
+    sender_id       varchar(255),
+    timestamp       timestamp(6) with time zone NOT NULL,
+    idempotency_key varchar(255),
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+ALTER SEQUENCE transaction_id_seq OWNED BY transaction.id;
+
+CREATE TABLE transaction_default PARTITION OF transaction DEFAULT;
+
+CREATE INDEX transaction_sender_idx ON transaction (sender_id, timestamp, id);
+CREATE INDEX transaction_recipient_idx ON transaction (recipient_id, timestamp, id);
+CREATE INDEX transaction_timestamp_idx ON transaction (timestamp);
+CREATE INDEX transaction_idempotency_key_idx ON transaction (idempotency_key);
+
+-- A unique constraint on a partitioned table must contain the partition key, so idempotency keys are kept
+-- unique in a table of their own. A duplicate fails the insert with a unique violation, as before.
+CREATE TABLE transaction_idempotency_key
+(
+    idempotency_key varchar(255) NOT NULL PRIMARY KEY,
+    created_at      timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX transaction_idempotency_key_created_idx ON transaction_idempotency_key (created_at);
+
+CREATE FUNCTION transaction_register_idempotency_key() RETURNS trigger AS
+$$
+BEGIN
+    INSERT INTO transaction_idempotency_key (idempotency_key, created_at) VALUES (NEW.idempotency_key, NEW.timestamp);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER transaction_idempotency_key_trg
+    BEFORE INSERT ON transaction
+    FOR EACH ROW
+    WHEN (NEW.idempotency_key IS NOT NULL)
+EXECUTE FUNCTION transaction_register_idempotency_key();
+
+-- Partitions for the existing history, then the history itself.
+DO
+$$
+    DECLARE
+        month timestamp;
+    BEGIN
+        FOR month IN
+            SELECT generate_series(date_trunc('month', coalesce(min(timestamp), now()) AT TIME ZONE 'UTC'),
+                                   date_trunc('month', now() AT TIME ZONE 'UTC'), interval '1 month')
+            FROM transaction_unpartitioned
+            LOOP
+                EXECUTE format('CREATE TABLE transaction_p%s PARTITION OF transaction FOR VALUES FROM (%L) TO (%L)',
+                               to_char(month, 'YYYY_MM'), month::date || ' 00:00:00+00',
+                               (month + interval '1 month')::date || ' 00:00:00+00');
+            END LOOP;
+    END
+$$;
+
+INSERT INTO transaction (id, amount, recipient_id, sender_id, timestamp, idempotency_key)
+SELECT id, amount, recipient_id, sender_id, coalesce(timestamp, now()), idempotency_key
+FROM transaction_unpartitioned;
+
+DROP TABLE transaction_unpartitioned;
+
+COMMIT;
@@ -0,0 +1,87 @@
+package hu.bergerdenes.instantpayment.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hu.bergerdenes.instantpayment.model.Money;
+
+/**
+ * The balance check and update of a transfer on {@link BigDecimal}, on {@link Money} as the service does it, and on
+ * bare minor units in a {@code long} as the in-memory ledger does it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BalanceArithmeticBenchmark {
+
+    private BigDecimal senderBalance = new BigDecimal("1000000.00");
+
+    private BigDecimal recipientBalance = new BigDecimal("500.00");
+
+    private final BigDecimal amount = new BigDecimal("12.34");
+
+    private Money senderMoney = Money.ofMinor(100_000_000L);
+
+    private Money recipientMoney = Money.ofMinor(50_000L);
+
+    private final Money amountMoney = Money.ofMinor(1_234L);
+
+    private long senderMinor = 100_000_000L;
+
+    private long recipientMinor = 50_000L;
+
+    private final long amountMinor = 1_234L;
+
+    @Benchmark
+    public void bigDecimalTransfer(Blackhole blackhole) {
+        if (senderBalance.compareTo(amount) < 0) {
+            BigDecimal swap = senderBalance;
+            senderBalance = recipientBalance;
+            recipientBalance = swap;
+        }
+        senderBalance = senderBalance.subtract(amount);
+        recipientBalance = recipientBalance.add(amount);
+        blackhole.consume(senderBalance);
+        blackhole.consume(recipientBalance);
+    }
+
+    @Benchmark
+    public void moneyTransfer(Blackhole blackhole) {
+        if (senderMoney.isLessThan(amountMoney)) {
+            Money swap = senderMoney;
+            senderMoney = recipientMoney;
+            recipientMoney = swap;
+        }
+        senderMoney = senderMoney.minus(amountMoney);
+        recipientMoney = recipientMoney.plus(amountMoney);
+        blackhole.consume(senderMoney);
+        blackhole.consume(recipientMoney);
+    }
+
+    @Benchmark
+    public void longMinorUnitsTransfer(Blackhole blackhole) {
+        if (senderMinor < amountMinor) {
+            long swap = senderMinor;
+            senderMinor = recipientMinor;
+            recipientMinor = swap;
+        }
+        senderMinor = Math.subtractExact(senderMinor, amountMinor);
+        recipientMinor = Math.addExact(recipientMinor, amountMinor);
+        blackhole.consume(senderMinor);
+        blackhole.consume(recipientMinor);
+    }
+
+    @Benchmark
+    public Money parseAmount() {
+        return Money.of(new BigDecimal("12.34"));
+    }
+
+}
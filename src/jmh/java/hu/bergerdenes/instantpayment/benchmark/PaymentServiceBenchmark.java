@@ -0,0 +1,154 @@
+package hu.bergerdenes.instantpayment.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import hu.bergerdenes.instantpayment.InstantPaymentApplication;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+
+/**
+ * End-to-end {@link PaymentService#sendPayment} against an in-memory H2 database, with the default configuration
+ * otherwise. {@code scenario} selects the contention pattern: every thread on its own account pair, all threads
+ * sending from one account, or all threads paying into one account.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PaymentServiceBenchmark {
+
+    private static final int ACCOUNTS = 1024;
+
+    private static final String HOT_ACCOUNT = "acc-0";
+
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000000000.00");
+
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({"uncontended", "hot-sender", "hot-recipient"})
+        public String scenario;
+
+        private final AtomicInteger threadIndexes = new AtomicInteger();
+
+        private ConfigurableApplicationContext context;
+
+        private PaymentService paymentService;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(InstantPaymentApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                            "--spring.datasource.driver-class-name=org.h2.Driver",
+                            "--spring.datasource.username=sa",
+                            "--spring.datasource.password=",
+                            "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                            "--spring.jpa.hibernate.ddl-auto=create-drop",
+                            "--kafka.enabled=false",
+                            "--logging.level.hu.bergerdenes.instantpayment=WARN");
+            List<Account> accounts = new ArrayList<>(ACCOUNTS);
+            for (int i = 0; i < ACCOUNTS; i++) {
+                Account account = new Account();
+                account.setId("acc-" + i);
+                account.setBalance(Money.of(INITIAL_BALANCE));
+                accounts.add(account);
+            }
+            context.getBean(AccountRepository.class).saveAll(accounts);
+            paymentService = context.getBean(PaymentService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private String ownSender;
+
+        private String ownRecipient;
+
+        @Setup(Level.Trial)
+        public void assignAccounts(Application application) {
+            int index = application.threadIndexes.getAndIncrement();
+            ownSender = "acc-" + (1 + 2 * index) % ACCOUNTS;
+            ownRecipient = "acc-" + (2 + 2 * index) % ACCOUNTS;
+        }
+
+        SendPaymentResult send(Application application) {
+            String sender;
+            String recipient;
+            switch (application.scenario) {
+                case "hot-sender" -> {
+                    sender = HOT_ACCOUNT;
+                    recipient = randomAccount();
+                }
+                case "hot-recipient" -> {
+                    sender = randomAccount();
+                    recipient = HOT_ACCOUNT;
+                }
+                default -> {
+                    sender = ownSender;
+                    recipient = ownRecipient;
+                }
+            }
+            return application.paymentService.sendPayment(sender, recipient, AMOUNT, UUID.randomUUID().toString());
+        }
+
+        private static String randomAccount() {
+            return "acc-" + ThreadLocalRandom.current().nextInt(1, ACCOUNTS);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SendPaymentResult sendPayment1Thread(Application application, Worker worker) {
+        return worker.send(application);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SendPaymentResult sendPayment4Threads(Application application, Worker worker) {
+        return worker.send(application);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public SendPaymentResult sendPayment16Threads(Application application, Worker worker) {
+        return worker.send(application);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public SendPaymentResult sendPayment64Threads(Application application, Worker worker) {
+        return worker.send(application);
+    }
+
+}
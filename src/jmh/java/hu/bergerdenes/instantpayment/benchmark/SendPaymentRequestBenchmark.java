@@ -0,0 +1,71 @@
+package hu.bergerdenes.instantpayment.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+
+/**
+ * Request body binding and bean validation, the per-request work done before the service is called.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SendPaymentRequestBenchmark {
+
+    private static final byte[] VALID_BODY =
+            "{\"senderId\":\"user1\",\"recipientId\":\"user2\",\"amount\":100.00,\"idempotencyKey\":\"a1b2c3d4\"}".getBytes();
+
+    private static final byte[] INVALID_BODY =
+            "{\"senderId\":\"\",\"recipientId\":\"user2\",\"amount\":-1,\"idempotencyKey\":\"a1b2c3d4\"}".getBytes();
+
+    private ObjectReader reader;
+
+    private ValidatorFactory validatorFactory;
+
+    private Validator validator;
+
+    @Setup
+    public void setup() {
+        reader = new ObjectMapper().readerFor(SendPaymentRequest.class);
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public SendPaymentRequest bind() throws Exception {
+        return reader.readValue(VALID_BODY);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<SendPaymentRequest>> bindAndValidate() throws Exception {
+        return validator.validate(reader.<SendPaymentRequest>readValue(VALID_BODY));
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<SendPaymentRequest>> bindAndValidateInvalid() throws Exception {
+        return validator.validate(reader.<SendPaymentRequest>readValue(INVALID_BODY));
+    }
+
+}
@@ -0,0 +1,258 @@
+package hu.bergerdenes.instantpayment.loadtest;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.InstantPaymentApplication;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.AccountSlot;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.AccountSlotRepository;
+
+/**
+ * Open-loop load test of {@code POST /api/payments/send}. Boots the application in-process (H2 unless
+ * {@code --spring.datasource.*} says otherwise), seeds the accounts and sends requests at a fixed rate with
+ * Zipf-distributed senders and recipients, resending an earlier request with the given ratio. Latency is measured
+ * from the time a request was scheduled, not sent, so a stalled server can not hide its queueing delay. Finally the
+ * total balance of the seeded accounts, hot account slots included, is checked once it has been written behind;
+ * the exit code is 1 if it changed.
+ */
+public final class LoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final String ACCOUNT_PREFIX = "load-";
+
+    private static final int REPLAY_WINDOW = 4096;
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Duration SETTLE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadOptions options;
+
+    private final HttpClient client;
+
+    private final URI sendUri;
+
+    private final ZipfDistribution zipf;
+
+    // auto-resizing: requests time out after a minute but their latency counts from the scheduled time
+    private final Histogram latencies = new ConcurrentHistogram(3);
+
+    private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<String> recentBodies = new AtomicReferenceArray<>(REPLAY_WINDOW);
+
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private LoadGenerator(LoadOptions options, HttpClient client, URI sendUri) {
+        this.options = options;
+        this.client = client;
+        this.sendUri = sendUri;
+        this.zipf = new ZipfDistribution(options.accounts(), options.zipfExponent());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(InstantPaymentApplication.class)
+                .run(applicationArgs(options));
+        AccountRepository accountRepo = context.getBean(AccountRepository.class);
+        seed(accountRepo, options);
+        URI sendUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/payments/send");
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        new LoadGenerator(options, client, sendUri).run();
+        boolean conserved = awaitConservation(context, options);
+        System.exit(SpringApplication.exit(context, () -> conserved ? 0 : 1));
+    }
+
+    private static String[] applicationArgs(LoadOptions options) {
+        Map<String, String> args = new LinkedHashMap<>();
+        args.put("server.port", "0");
+        args.put("spring.datasource.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+        args.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        args.put("spring.datasource.username", "sa");
+        args.put("spring.datasource.password", "");
+        args.put("spring.jpa.database-platform", "org.hibernate.dialect.H2Dialect");
+        args.put("kafka.enabled", "false");
+        args.put("logging.level.hu.bergerdenes.instantpayment", "WARN");
+        args.put("logging.level.hu.bergerdenes.instantpayment.loadtest", "INFO");
+        args.putAll(options.applicationArgs());
+        return args.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+    }
+
+    private static void seed(AccountRepository accountRepo, LoadOptions options) {
+        List<Account> batch = new ArrayList<>(1000);
+        for (int i = 0; i < options.accounts(); i++) {
+            Account account = new Account();
+            account.setId(ACCOUNT_PREFIX + i);
+            account.setBalance(Money.of(BigDecimal.valueOf(options.initialBalance())));
+            batch.add(account);
+            if (batch.size() == 1000 || i == options.accounts() - 1) {
+                accountRepo.saveAll(batch);
+                batch.clear();
+            }
+        }
+        LOGGER.info("Seeded {} accounts with balance {}", options.accounts(), options.initialBalance());
+    }
+
+    private void run() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long durationNanos = options.duration().toNanos();
+        LOGGER.info("Sending {} requests/s for {}, zipf exponent {}, duplicate ratio {}",
+                options.rate(), options.duration(), options.zipfExponent(), options.duplicateRatio());
+
+        long start = System.nanoTime();
+        long sent = 0;
+        for (long intended = start; intended - start < durationNanos; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(nextBody(sent), intended);
+            sent++;
+        }
+
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        report(sent, System.nanoTime() - start);
+    }
+
+    private String nextBody(long sequence) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sequence > 0 && random.nextDouble() < options.duplicateRatio()) {
+            String previous = recentBodies.get(random.nextInt((int) Math.min(sequence, REPLAY_WINDOW)));
+            if (previous != null) {
+                return previous;
+            }
+        }
+        int sender = zipf.sample(random);
+        int recipient = zipf.sample(random);
+        while (recipient == sender && options.accounts() > 1) {
+            recipient = zipf.sample(random);
+        }
+        String body = String.format(Locale.ROOT,
+                "{\"senderId\":\"%s%d\",\"recipientId\":\"%s%d\",\"amount\":%d.%02d,\"idempotencyKey\":\"%s\"}",
+                ACCOUNT_PREFIX, sender, ACCOUNT_PREFIX, recipient, random.nextInt(1, 50), random.nextInt(100), UUID.randomUUID());
+        recentBodies.set((int) (sequence % REPLAY_WINDOW), body);
+        return body;
+    }
+
+    private void send(String body, long intendedStart) {
+        HttpRequest request = HttpRequest.newBuilder(sendUri)
+                .timeout(DRAIN_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        outstanding.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            try {
+                latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+                String outcome = ex != null ? ex.getClass().getSimpleName() : String.valueOf(response.statusCode());
+                outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+            } finally {
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    private void report(long sent, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        LOGGER.info("Requests: sent={}, completed={}, outstanding={}", sent, latencies.getTotalCount(), outstanding.get());
+        LOGGER.info("Throughput: {} requests/s (target {})", String.format(Locale.ROOT, "%.1f", latencies.getTotalCount() / seconds), options.rate());
+        outcomes.forEach((outcome, count) -> LOGGER.info("  {}: {}", outcome, count.sum()));
+        LOGGER.info("Latency (ms, corrected for coordinated omission): p50={} p90={} p99={} p99.9={} max={}",
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+
+    /**
+     * Engines with write-behind (payment.engine=ledger) persist balances after the responses, so the check is repeated
+     * until it passes or the settle timeout is over.
+     */
+    private static boolean awaitConservation(ConfigurableApplicationContext context, LoadOptions options) throws InterruptedException {
+        AccountRepository accountRepo = context.getBean(AccountRepository.class);
+        AccountSlotRepository slotRepo = context.getBean(AccountSlotRepository.class);
+        TransactionTemplate snapshot = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshot.setReadOnly(true);
+        Money expected = Money.of(BigDecimal.valueOf(options.initialBalance()).multiply(BigDecimal.valueOf(options.accounts())));
+
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT.toNanos();
+        while (true) {
+            Map<String, Money> balances = snapshot.execute(status -> balances(accountRepo, slotRepo));
+            Money total = balances.values().stream().reduce(Money.ZERO, Money::plus);
+            long negative = balances.values().stream().filter(balance -> balance.signum() < 0).count();
+            if (total.equals(expected) && negative == 0) {
+                LOGGER.info("Balance check passed: total={}", total);
+                return true;
+            }
+            if (System.nanoTime() >= deadline) {
+                LOGGER.error("Balance check FAILED: expected total={}, actual total={}, negative balances={}", expected, total, negative);
+                return false;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * The balance of every seeded account, including the credit slots of hot accounts.
+     */
+    private static Map<String, Money> balances(AccountRepository accountRepo, AccountSlotRepository slotRepo) {
+        Map<String, Money> balances = new HashMap<>();
+        for (Account account : accountRepo.findAll()) {
+            if (account.getId().startsWith(ACCOUNT_PREFIX)) {
+                balances.merge(account.getId(), account.getBalance(), Money::plus);
+            }
+        }
+        for (AccountSlot slot : slotRepo.findAll()) {
+            if (slot.getAccountId().startsWith(ACCOUNT_PREFIX)) {
+                balances.merge(slot.getAccountId(), slot.getBalance(), Money::plus);
+            }
+        }
+        return balances;
+    }
+
+}
@@ -0,0 +1,45 @@
+package hu.bergerdenes.instantpayment.loadtest;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Options of the load generator. Arguments it does not know are passed on to the application, so
+ * {@code --spring.datasource.url=...} points the booted instance at another database.
+ */
+record LoadOptions(int accounts, long initialBalance, int rate, Duration duration, double zipfExponent,
+                   double duplicateRatio, Map<String, String> applicationArgs) {
+
+    private static final Set<String> OPTIONS =
+            Set.of("accounts", "initial-balance", "rate", "duration", "zipf-exponent", "duplicate-ratio");
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        LoadOptions options = new LoadOptions(
+                Integer.parseInt(values.getOrDefault("accounts", "1000")),
+                Long.parseLong(values.getOrDefault("initial-balance", "1000")),
+                Integer.parseInt(values.getOrDefault("rate", "1000")),
+                DurationStyle.detectAndParse(values.getOrDefault("duration", "30s")),
+                Double.parseDouble(values.getOrDefault("zipf-exponent", "1.1")),
+                Double.parseDouble(values.getOrDefault("duplicate-ratio", "0.05")),
+                new LinkedHashMap<>());
+        values.forEach((name, value) -> {
+            if (!OPTIONS.contains(name)) {
+                options.applicationArgs().put(name, value);
+            }
+        });
+        return options;
+    }
+
+}
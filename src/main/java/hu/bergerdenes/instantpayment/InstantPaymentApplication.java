@@ -3,9 +3,11 @@ package hu.bergerdenes.instantpayment;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableRetry
+@EnableScheduling
 public class InstantPaymentApplication {
     public static void main(String[] args) {
         SpringApplication.run(InstantPaymentApplication.class, args);
@@ -0,0 +1,17 @@
+package hu.bergerdenes.instantpayment.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AsyncConfig {
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService paymentExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("payment-", 0).factory());
+    }
+
+}
@@ -12,24 +12,43 @@ import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 
+import hu.bergerdenes.instantpayment.dto.PaymentNotificationEvent;
+import hu.bergerdenes.instantpayment.dto.PaymentNotificationEventSerializer;
+
 @Configuration
 public class KafkaConfig {
 
     @Value("${kafka.server}")
     private String kafkaServer;
 
+    @Value("${kafka.producer.linger-ms}")
+    private int lingerMs;
+
+    @Value("${kafka.producer.batch-size}")
+    private int batchSize;
+
+    @Value("${kafka.producer.compression-type}")
+    private String compressionType;
+
+    @Value("${kafka.producer.acks}")
+    private String acks;
+
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    public ProducerFactory<String, PaymentNotificationEvent> producerFactory() {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, String.format("%s:9092", kafkaServer));
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, PaymentNotificationEventSerializer.class);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.ACKS_CONFIG, acks);
         return new DefaultKafkaProducerFactory<>(config);
     }
 
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
+    public KafkaTemplate<String, PaymentNotificationEvent> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
-}
\ No newline at end of file
+}
@@ -3,9 +3,15 @@ package hu.bergerdenes.instantpayment.config;
 import java.time.Duration;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.core.IntervalFunction;
 import io.github.resilience4j.retry.RetryConfig;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
 
 @Configuration
 public class Resilience4jConfig {
@@ -17,6 +23,7 @@ public class Resilience4jConfig {
                 .failureRateThreshold(50)
                 .waitDurationInOpenState(Duration.ofSeconds(10))
                 .slidingWindowSize(5)
+                .ignoreExceptions(ServiceBusyException.class)
                 .build();
     }
 
@@ -24,7 +31,9 @@ public class Resilience4jConfig {
     public RetryConfig defaultRetryConfig() {
         return RetryConfig.custom()
                 .maxAttempts(3)
-                .waitDuration(Duration.ofMillis(1000))
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(Duration.ofMillis(50), 2.0, 0.5, Duration.ofSeconds(1)))
+                .retryExceptions(TransientDataAccessException.class, RecoverableDataAccessException.class,
+                        CannotCreateTransactionException.class)
                 .build();
     }
 
@@ -0,0 +1,71 @@
+package hu.bergerdenes.instantpayment.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import hu.bergerdenes.instantpayment.service.outbox.KafkaNotificationPublisher;
+
+/**
+ * Lazy startup mode: springdoc/OpenAPI and the Kafka producer are created on first use instead of at startup.
+ * Every other bean stays eager, so the first payment does not pay for their creation.
+ */
+@Configuration
+public class StartupConfig {
+
+    private static final String LAZY_INITIALIZATION = "spring.main.lazy-initialization";
+
+    private static final List<String> DEFERRED_PACKAGES = List.of(
+            "org.springdoc.", "io.swagger.", "org.springframework.kafka.", "org.apache.kafka.");
+
+    private static final List<Class<?>> DEFERRED_TYPES = List.of(
+            KafkaConfig.class, OpenApiConfig.class, KafkaNotificationPublisher.class);
+
+    /**
+     * Only consulted when {@code spring.main.lazy-initialization} is on, which {@code payment.startup.lazy} sets.
+     * Registered regardless of the property so an AOT-processed build behaves the same either way.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter eagerUnlessDeferred() {
+        return (beanName, beanDefinition, beanType) -> !isDeferred(beanType);
+    }
+
+    /**
+     * Boot's lazy initialization skips beans that opted out of it, which springdoc does with {@code @Lazy(false)},
+     * and keeps {@code SmartInitializingSingleton} beans such as {@code KafkaTemplate} eager. Both would pull the
+     * deferred beans in at startup, so this runs after it and makes the deferred ones lazy too.
+     */
+    @Bean
+    static BeanFactoryPostProcessor deferOptedOutBeans(Environment environment) {
+        return beanFactory -> {
+            if (!environment.getProperty(LAZY_INITIALIZATION, Boolean.class, false)) {
+                return;
+            }
+            for (String beanName : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+                if (beanDefinition.isLazyInit() || beanDefinition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE) {
+                    continue;
+                }
+                Class<?> beanType = beanFactory.getType(beanName, false);
+                if (beanType != null && isDeferred(beanType)) {
+                    beanDefinition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    private static boolean isDeferred(Class<?> beanType) {
+        // configuration classes are CGLIB subclasses
+        if (DEFERRED_TYPES.stream().anyMatch(type -> type.isAssignableFrom(beanType))) {
+            return true;
+        }
+        String name = beanType.getName();
+        return DEFERRED_PACKAGES.stream().anyMatch(name::startsWith);
+    }
+
+}
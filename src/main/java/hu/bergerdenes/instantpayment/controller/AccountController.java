@@ -0,0 +1,111 @@
+package hu.bergerdenes.instantpayment.controller;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Locale;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import hu.bergerdenes.instantpayment.dto.BalanceView;
+import hu.bergerdenes.instantpayment.dto.TransactionHistoryPage;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+import hu.bergerdenes.instantpayment.service.history.StatementExporter;
+import hu.bergerdenes.instantpayment.service.history.StatementFormat;
+import hu.bergerdenes.instantpayment.service.history.TransactionHistoryService;
+
+@RestController
+@RequestMapping("/api/accounts")
+@Tag(name = "Accounts", description = "Read account data")
+public class AccountController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountController.class);
+
+    private final BalanceCache balanceCache;
+
+    private final TransactionHistoryService historyService;
+
+    private final StatementExporter statementExporter;
+
+    private final int maxPageSize;
+
+    public AccountController(BalanceCache balanceCache, TransactionHistoryService historyService, StatementExporter statementExporter,
+                             @Value("${payment.history.max-page-size}") int maxPageSize) {
+        this.balanceCache = balanceCache;
+        this.historyService = historyService;
+        this.statementExporter = statementExporter;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @Operation(summary = "Account balance", description = "Current balance of the account, served from a near cache",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Balance of the account"),
+                    @ApiResponse(responseCode = "404", description = "Account not found", content = @Content)
+            })
+    @GetMapping("/{id}/balance")
+    public ResponseEntity<BalanceView> balance(@PathVariable("id") String accountId) {
+        return balanceCache.get(accountId)
+                .map(balance -> ResponseEntity.ok(new BalanceView(accountId, balance.toBigDecimal())))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Transaction history", description = "Payments sent and received by the account, newest first, paginated with an opaque cursor",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "One page of transactions"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class)))
+            })
+    @GetMapping("/{id}/transactions")
+    public ResponseEntity<TransactionHistoryPage> transactions(@PathVariable("id") String accountId,
+                                                              @RequestParam(name = "cursor", required = false) String cursor,
+                                                              @RequestParam(name = "limit", defaultValue = "${payment.history.default-page-size}") int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        LOGGER.debug("Transaction history requested: accountId={}, limit={}", accountId, limit);
+        return ResponseEntity.ok(historyService.history(accountId, cursor, limit));
+    }
+
+    @Operation(summary = "Account statement", description = "Streams the account's payments in [from, to) with a running balance as CSV or NDJSON",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Statement, streamed"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class)))
+            })
+    @GetMapping("/{id}/statement")
+    public void statement(@PathVariable("id") String accountId,
+                          @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                          @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                          @RequestParam(name = "format", defaultValue = "csv") String format,
+                          HttpServletResponse response) throws IOException {
+        StatementFormat statementFormat;
+        try {
+            statementFormat = StatementFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("format must be csv or ndjson");
+        }
+        Instant end = to == null ? Instant.now() : to;
+        if (!from.isBefore(end)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        response.setContentType(statementFormat.contentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"statement-" + accountId.replaceAll("[^A-Za-z0-9._-]", "_") + "." + format.toLowerCase(Locale.ROOT) + "\"");
+        int lines = statementExporter.export(accountId, from, end, statementFormat, response.getOutputStream());
+        LOGGER.debug("Statement exported: accountId={}, from={}, to={}, lines={}", accountId, from, end, lines);
+    }
+
+}
@@ -1,7 +1,25 @@
 package hu.bergerdenes.instantpayment.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -9,6 +27,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -21,7 +43,11 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
 import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
 import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.service.AdaptiveConcurrencyLimiter;
 import hu.bergerdenes.instantpayment.service.PaymentService;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+import hu.bergerdenes.instantpayment.service.velocity.VelocityLimiter;
 
 @RestController
 @RequestMapping("/api/payments")
@@ -31,10 +57,36 @@ public class PaymentController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PaymentController.class);
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final PaymentService paymentService;
 
-    public PaymentController(PaymentService paymentService) {
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final VelocityLimiter velocityLimiter;
+
+    private final Validator validator;
+
+    private final ObjectReader requestReader;
+
+    private final ObjectWriter resultWriter;
+
+    private final int batchMaxSize;
+
+    private final int streamChunkSize;
+
+    public PaymentController(PaymentService paymentService, AdaptiveConcurrencyLimiter limiter, VelocityLimiter velocityLimiter,
+                             Validator validator, ObjectMapper objectMapper,
+                             @Value("${payment.batch.max-size}") int batchMaxSize,
+                             @Value("${payment.batch.stream-chunk-size}") int streamChunkSize) {
         this.paymentService = paymentService;
+        this.limiter = limiter;
+        this.velocityLimiter = velocityLimiter;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(SendPaymentRequest.class);
+        this.resultWriter = objectMapper.writerFor(SendPaymentResult.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.batchMaxSize = batchMaxSize;
+        this.streamChunkSize = streamChunkSize;
     }
 
     @ExceptionHandler(Exception.class)
@@ -51,7 +103,7 @@ public class PaymentController {
                 .append(" - ")
                 .append(err.getDefaultMessage())
                 .append("; "));
-        return ResponseEntity.badRequest().body(new SendPaymentResult(SuccessCode.FAILED, "Validation error(s): " + errors));
+        return ResponseEntity.badRequest().body(SendPaymentResult.validationError(errors));
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
@@ -60,25 +112,149 @@ public class PaymentController {
         return ResponseEntity.badRequest().body(new SendPaymentResult(SuccessCode.FAILED, ex.getMessage()));
     }
 
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<SendPaymentResult> handleServiceBusy(ServiceBusyException ex) {
+        LOGGER.warn("Service busy: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(ex.getRetryAfter()))
+                .body(SendPaymentResult.serviceBusy(ex.getMessage()));
+    }
+
     @Operation(summary = "Send payment", description = "Send instant payment from sender to recipient",
             responses = {
                     @ApiResponse(responseCode = "200", description = "Payment sent successfully"),
-                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class)))
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class))),
+                    @ApiResponse(responseCode = "429", description = "Service is busy or a velocity limit is exceeded, retry after the Retry-After header")
             })
     @PostMapping("/send")
-    public ResponseEntity<?> sendPayment(@RequestBody @Valid SendPaymentRequest request) {
-        LOGGER.info("Incoming payment request from {} to {}, amount={} idempotencyKey={}",
+    public CompletableFuture<ResponseEntity<?>> sendPayment(@RequestBody @Valid SendPaymentRequest request) {
+        LOGGER.debug("Incoming payment request from {} to {}, amount={} idempotencyKey={}",
                 request.getSenderId(), request.getRecipientId(), request.getAmount(), request.getIdempotencyKey());
-        SendPaymentResult result = paymentService.sendPayment(
-                request.getSenderId(),
-                request.getRecipientId(),
-                request.getAmount(),
-                request.getIdempotencyKey()
-        );
-        return parseResult(result);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+        CompletableFuture<SendPaymentResult> result;
+        try {
+            result = paymentService.sendPaymentAsync(
+                    request.getSenderId(),
+                    request.getRecipientId(),
+                    request.getAmount(),
+                    request.getIdempotencyKey()
+            );
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+        return result.whenComplete((r, ex) -> permit.release(ex)).thenApply(r -> parseResult(r, request));
+    }
+
+    @Operation(summary = "Send payments in bulk", description = "Send a list of instant payments, returns one result per payment in request order",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Payments processed, see the individual results"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class))),
+                    @ApiResponse(responseCode = "429", description = "Service is busy, retry after the Retry-After header")
+            })
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<SendPaymentResult>> sendPayments(@RequestBody List<SendPaymentRequest> requests) {
+        if (requests.size() > batchMaxSize) {
+            throw new IllegalArgumentException("Batch size exceeds the limit of " + batchMaxSize);
+        }
+        LOGGER.debug("Incoming payment batch: size={}", requests.size());
+        return ResponseEntity.ok(processLimited(requests));
     }
 
-    private ResponseEntity<?> parseResult(SendPaymentResult result) {
+    @Operation(summary = "Stream payments in bulk",
+            description = "Send newline-delimited JSON payments, results are streamed back as newline-delimited JSON in request order. "
+                    + "A chunk rejected because the service is busy gets a FAILED result for each of its payments, "
+                    + "or 429 when it is the first one")
+    @PostMapping(value = "/batch", consumes = NDJSON, produces = NDJSON)
+    public void streamPayments(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        int total = 0;
+        try (MappingIterator<SendPaymentRequest> it = requestReader.readValues(request.getInputStream())) {
+            List<SendPaymentRequest> chunk = new ArrayList<>(streamChunkSize);
+            while (it.hasNextValue()) {
+                chunk.add(it.nextValue());
+                if (chunk.size() == streamChunkSize) {
+                    total += writeResults(processChunk(chunk, total == 0), out);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                total += writeResults(processChunk(chunk, total == 0), out);
+            }
+        }
+        LOGGER.debug("Payment stream processed: size={}", total);
+    }
+
+    /**
+     * Once results are written the status can not be changed to 429 any more, so a later rejected chunk gets a
+     * FAILED result for each payment and the stream goes on with the next one.
+     */
+    private List<SendPaymentResult> processChunk(List<SendPaymentRequest> chunk, boolean first) {
+        try {
+            return processLimited(chunk);
+        } catch (ServiceBusyException e) {
+            if (first) {
+                throw e;
+            }
+            LOGGER.warn("Payment stream chunk rejected: size={}, {}", chunk.size(), e.getMessage());
+            return Collections.nCopies(chunk.size(), SendPaymentResult.serviceBusy(e.getMessage()));
+        }
+    }
+
+    /**
+     * Processes the payments under one permit of the concurrency limiter, released with the outcome as on /send.
+     */
+    private List<SendPaymentResult> processLimited(List<SendPaymentRequest> requests) {
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(requests.size());
+        List<SendPaymentResult> results;
+        try {
+            results = processBatch(requests);
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+        permit.release(null);
+        return results;
+    }
+
+    private List<SendPaymentResult> processBatch(List<SendPaymentRequest> requests) {
+        SendPaymentResult[] results = new SendPaymentResult[requests.size()];
+        List<SendPaymentRequest> valid = new ArrayList<>(requests.size());
+        List<Integer> validIndexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Set<ConstraintViolation<SendPaymentRequest>> violations = validator.validate(requests.get(i));
+            if (violations.isEmpty()) {
+                valid.add(requests.get(i));
+                validIndexes.add(i);
+            } else {
+                StringBuilder errors = new StringBuilder();
+                violations.forEach(v -> errors.append(v.getPropertyPath())
+                        .append(" - ")
+                        .append(v.getMessage())
+                        .append("; "));
+                results[i] = SendPaymentResult.validationError(errors);
+            }
+        }
+        if (!valid.isEmpty()) {
+            List<SendPaymentResult> processed = paymentService.sendPayments(valid);
+            for (int i = 0; i < processed.size(); i++) {
+                results[validIndexes.get(i)] = processed.get(i);
+            }
+        }
+        return List.of(results);
+    }
+
+    private int writeResults(List<SendPaymentResult> results, OutputStream out) throws IOException {
+        for (SendPaymentResult result : results) {
+            resultWriter.writeValue(out, result);
+            out.write('\n');
+        }
+        out.flush();
+        return results.size();
+    }
+
+    private ResponseEntity<?> parseResult(SendPaymentResult result, SendPaymentRequest request) {
         switch (result.successCode()) {
             case SUCCESSFUL -> {
                 return ResponseEntity.ok(result);
@@ -86,6 +262,12 @@ public class PaymentController {
             case FAILED -> {
                 return ResponseEntity.badRequest().body(result);
             }
+            case LIMIT_EXCEEDED -> {
+                Duration retryAfter = velocityLimiter.retryAfter(request.getSenderId(), Money.of(request.getAmount()));
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(retryAfter))
+                        .body(result);
+            }
             default -> {
                 return ResponseEntity.internalServerError().body(result);
             }
@@ -93,4 +275,8 @@ public class PaymentController {
         }
     }
 
-}
\ No newline at end of file
+    private static String retryAfterSeconds(Duration retryAfter) {
+        return String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000));
+    }
+
+}
@@ -0,0 +1,73 @@
+package hu.bergerdenes.instantpayment.controller;
+
+import java.net.URI;
+
+import jakarta.validation.Valid;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import hu.bergerdenes.instantpayment.dto.ScheduledPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.ScheduledPaymentView;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+import hu.bergerdenes.instantpayment.service.schedule.ScheduledPaymentService;
+
+@RestController
+@RequestMapping("/api/scheduled-payments")
+@Tag(name = "Scheduled payments", description = "Future-dated and recurring payments")
+public class ScheduledPaymentController {
+
+    private final ScheduledPaymentService scheduleService;
+
+    public ScheduledPaymentController(ScheduledPaymentService scheduleService) {
+        this.scheduleService = scheduleService;
+    }
+
+    @Operation(summary = "Schedule payment", description = "Schedules a payment once or repeating from startAt, until endAt if given",
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "Payment scheduled"),
+                    @ApiResponse(responseCode = "400", description = "Bad request", content = @Content(schema = @Schema(implementation = String.class)))
+            })
+    @PostMapping
+    public ResponseEntity<ScheduledPaymentView> schedule(@RequestBody @Valid ScheduledPaymentRequest request) {
+        ScheduledPayment schedule = scheduleService.create(request);
+        return ResponseEntity.created(URI.create("/api/scheduled-payments/" + schedule.getId())).body(ScheduledPaymentView.from(schedule));
+    }
+
+    @Operation(summary = "Scheduled payment", description = "Status and next occurrence of a scheduled payment",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "The scheduled payment"),
+                    @ApiResponse(responseCode = "404", description = "Scheduled payment not found", content = @Content)
+            })
+    @GetMapping("/{id}")
+    public ResponseEntity<ScheduledPaymentView> get(@PathVariable("id") long id) {
+        return scheduleService.get(id)
+                .map(schedule -> ResponseEntity.ok(ScheduledPaymentView.from(schedule)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @Operation(summary = "Cancel scheduled payment", description = "Stops further occurrences of an active scheduled payment",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "The cancelled scheduled payment"),
+                    @ApiResponse(responseCode = "400", description = "Scheduled payment is not active", content = @Content(schema = @Schema(implementation = String.class))),
+                    @ApiResponse(responseCode = "404", description = "Scheduled payment not found", content = @Content)
+            })
+    @DeleteMapping("/{id}")
+    public ResponseEntity<ScheduledPaymentView> cancel(@PathVariable("id") long id) {
+        return scheduleService.cancel(id)
+                .map(schedule -> ResponseEntity.ok(ScheduledPaymentView.from(schedule)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+}
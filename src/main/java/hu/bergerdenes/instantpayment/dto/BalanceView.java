@@ -0,0 +1,12 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.math.BigDecimal;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record BalanceView(
+        @Schema(description = "Account ID", example = "user1")
+        String accountId,
+        @Schema(description = "Balance, may lag behind the latest payments by up to payment.balance.cache.ttl", example = "1000.00")
+        BigDecimal balance) {
+}
@@ -0,0 +1,28 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.time.Instant;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+/**
+ * Notification published to {@code transaction_notifications} for every processed payment.
+ * Serialized with {@link PaymentNotificationEventSerializer}.
+ */
+public record PaymentNotificationEvent(
+        long transactionId,
+        String senderId,
+        String recipientId,
+        long amountMinor,
+        Instant timestamp,
+        String idempotencyKey) {
+
+    public static PaymentNotificationEvent from(Transaction tx) {
+        return new PaymentNotificationEvent(
+                tx.getId(),
+                tx.getSenderId(),
+                tx.getRecipientId(),
+                tx.getAmount().minorUnits(),
+                tx.getTimestamp(),
+                tx.getIdempotencyKey());
+    }
+}
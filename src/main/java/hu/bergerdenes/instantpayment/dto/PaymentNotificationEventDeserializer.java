@@ -0,0 +1,43 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Reads the layout written by {@link PaymentNotificationEventSerializer}, for downstream consumers.
+ */
+public class PaymentNotificationEventDeserializer implements Deserializer<PaymentNotificationEvent> {
+
+    @Override
+    public PaymentNotificationEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte version = buffer.get();
+            if (version != PaymentNotificationEventSerializer.VERSION) {
+                throw new SerializationException("Unsupported notification event version: " + version);
+            }
+            long transactionId = buffer.getLong();
+            long amountMinor = buffer.getLong();
+            Instant timestamp = Instant.EPOCH.plus(buffer.getLong(), ChronoUnit.MICROS);
+            return new PaymentNotificationEvent(transactionId, getString(buffer), getString(buffer), amountMinor, timestamp, getString(buffer));
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated notification event", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
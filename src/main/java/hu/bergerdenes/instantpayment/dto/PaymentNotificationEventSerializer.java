@@ -0,0 +1,57 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Version 1 layout, big-endian:
+ * <pre>
+ * byte   version (1)
+ * long   transactionId
+ * long   amountMinor
+ * long   timestamp, epoch microseconds
+ * short  length + UTF-8 bytes of senderId, recipientId and idempotencyKey, in this order
+ * </pre>
+ */
+public class PaymentNotificationEventSerializer implements Serializer<PaymentNotificationEvent> {
+
+    public static final byte VERSION = 1;
+
+    static final int FIXED_LENGTH = 1 + 3 * Long.BYTES;
+
+    @Override
+    public byte[] serialize(String topic, PaymentNotificationEvent event) {
+        if (event == null) {
+            return null;
+        }
+        byte[] senderId = encode(event.senderId());
+        byte[] recipientId = encode(event.recipientId());
+        byte[] idempotencyKey = encode(event.idempotencyKey());
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_LENGTH
+                + 3 * Short.BYTES + senderId.length + recipientId.length + idempotencyKey.length);
+        buffer.put(VERSION)
+                .putLong(event.transactionId())
+                .putLong(event.amountMinor())
+                .putLong(event.timestamp().getEpochSecond() * 1_000_000 + event.timestamp().getNano() / 1_000);
+        putString(buffer, senderId);
+        putString(buffer, recipientId);
+        putString(buffer, idempotencyKey);
+        return buffer.array();
+    }
+
+    private static byte[] encode(String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new SerializationException("Field too long for notification event: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+}
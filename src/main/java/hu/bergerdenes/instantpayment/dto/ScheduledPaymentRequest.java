@@ -0,0 +1,104 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.NOT_REQUIRED;
+import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.REQUIRED;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Recurrence;
+
+public class ScheduledPaymentRequest {
+
+    @Schema(description = "Sender's account ID", example = "user1", requiredMode = REQUIRED)
+    @NotBlank
+    private String senderId;
+
+    @Schema(description = "Recipient's account ID", example = "user2", requiredMode = REQUIRED)
+    @NotBlank
+    private String recipientId;
+
+    @Schema(description = "Amount to transfer on every occurrence", example = "100.00", requiredMode = REQUIRED)
+    @NotNull
+    @DecimalMin(value = "0.01", message = "Amount to send has to be positive")
+    @Digits(integer = 16, fraction = 2, message = "Amount can have at most 16 integer digits and 2 decimal places")
+    private BigDecimal amount;
+
+    @Schema(description = "How often the payment repeats", example = "MONTHLY", requiredMode = REQUIRED)
+    @NotNull
+    private Recurrence recurrence;
+
+    @Schema(description = "Due time of the first occurrence", example = "2025-06-01T08:00:00Z", requiredMode = REQUIRED)
+    @NotNull
+    private Instant startAt;
+
+    @Schema(description = "No occurrence is made after this time", example = "2026-06-01T00:00:00Z", requiredMode = NOT_REQUIRED)
+    private Instant endAt;
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+        this.senderId = senderId;
+    }
+
+    public String getRecipientId() {
+        return recipientId;
+    }
+
+    public void setRecipientId(String recipientId) {
+        this.recipientId = recipientId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    public Instant getStartAt() {
+        return startAt;
+    }
+
+    public void setStartAt(Instant startAt) {
+        this.startAt = startAt;
+    }
+
+    public Instant getEndAt() {
+        return endAt;
+    }
+
+    public void setEndAt(Instant endAt) {
+        this.endAt = endAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledPaymentRequest{" +
+                "senderId='" + senderId + '\'' +
+                ", recipientId='" + recipientId + '\'' +
+                ", amount=" + amount +
+                ", recurrence=" + recurrence +
+                ", startAt=" + startAt +
+                ", endAt=" + endAt +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+
+public record ScheduledPaymentView(
+        @Schema(description = "Scheduled payment ID", example = "7")
+        long id,
+        @Schema(description = "Sender Account ID", example = "user1")
+        String senderId,
+        @Schema(description = "Recipient Account ID", example = "user2")
+        String recipientId,
+        @Schema(description = "Amount of every occurrence", example = "100.00")
+        BigDecimal amount,
+        @Schema(description = "How often the payment repeats", example = "MONTHLY")
+        ScheduledPayment.Recurrence recurrence,
+        @Schema(description = "Due time of the first occurrence", example = "2025-06-01T08:00:00Z")
+        Instant startAt,
+        @Schema(description = "No occurrence is made after this time", example = "2026-06-01T00:00:00Z")
+        Instant endAt,
+        @Schema(description = "Number of the next occurrence, starting from 0", example = "3")
+        long occurrence,
+        @Schema(description = "Due time of the next occurrence, empty once completed", example = "2025-09-01T08:00:00Z")
+        Instant nextExecution,
+        @Schema(description = "Status of the schedule", example = "ACTIVE")
+        ScheduledPayment.Status status,
+        @Schema(description = "Result message of the last occurrence", example = "Payment is processed.")
+        String lastResult) {
+
+    public static ScheduledPaymentView from(ScheduledPayment schedule) {
+        return new ScheduledPaymentView(schedule.getId(), schedule.getSenderId(), schedule.getRecipientId(),
+                schedule.getAmount().toBigDecimal(), schedule.getRecurrence(), schedule.getStartAt(), schedule.getEndAt(),
+                schedule.getOccurrence(), schedule.getNextExecution(), schedule.getStatus(), schedule.getLastResult());
+    }
+}
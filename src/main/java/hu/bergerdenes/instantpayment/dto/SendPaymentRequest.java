@@ -5,7 +5,9 @@ import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.REQUIRED;
 import java.math.BigDecimal;
 
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 
@@ -20,7 +22,9 @@ public class SendPaymentRequest {
     private String recipientId;
 
     @Schema(description = "Amount to transfer", example = "100.00", requiredMode = REQUIRED)
+    @NotNull
     @DecimalMin(value = "0.01", message = "Amount to send has to be positive")
+    @Digits(integer = 16, fraction = 2, message = "Amount can have at most 16 integer digits and 2 decimal places")
     private BigDecimal amount;
 
     @Schema(description = "Unique idempotency key", example = "a1b2c3d4", requiredMode = REQUIRED)
@@ -3,11 +3,91 @@ package hu.bergerdenes.instantpayment.dto;
 import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.NOT_REQUIRED;
 import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.REQUIRED;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 
+/**
+ * @param reason why the payment ended with this result, for metrics and retry decisions; not part of the response
+ */
 public record SendPaymentResult(
         @Schema(description = "Payment Sending Success Code", example = "SUCCESSFUL", requiredMode = REQUIRED)
         SuccessCode successCode,
         @Schema(description = "Payment Sending Result Message", example = "Payment success", requiredMode = NOT_REQUIRED)
-        String message) {
+        String message,
+        @JsonIgnore
+        @Schema(hidden = true)
+        Reason reason) {
+
+    public enum Reason {
+        PROCESSED("processed"),
+        ALREADY_PROCESSED("already_processed"),
+        SENDER_NOT_FOUND("sender_not_found"),
+        RECIPIENT_NOT_FOUND("recipient_not_found"),
+        INSUFFICIENT_BALANCE("insufficient_balance"),
+        RECIPIENT_BALANCE_LIMIT("recipient_balance_limit"),
+        IDENTIFIERS_TOO_LONG("identifiers_too_long"),
+        TRANSFER_RATE_LIMIT("transfer_rate_limit"),
+        DAILY_AMOUNT_LIMIT("daily_amount_limit"),
+        VALIDATION("validation"),
+        SERVICE_BUSY("service_busy"),
+        /** A fallback answered instead of the payment path, the payment may be retried. */
+        PROCESSING_FAILED("fallback"),
+        OTHER("other");
+
+        private final String tag;
+
+        Reason(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * The value of the {@code reason} tag of the result metrics.
+         */
+        public String tag() {
+            return tag;
+        }
+    }
+
+    public static final SendPaymentResult PROCESSED =
+            new SendPaymentResult(SuccessCode.SUCCESSFUL, "Payment is processed.", Reason.PROCESSED);
+
+    public static final SendPaymentResult ALREADY_PROCESSED =
+            new SendPaymentResult(SuccessCode.SUCCESSFUL, "Payment is already processed.", Reason.ALREADY_PROCESSED);
+
+    public static final SendPaymentResult SENDER_NOT_FOUND =
+            new SendPaymentResult(SuccessCode.FAILED, "Sender account not found.", Reason.SENDER_NOT_FOUND);
+
+    public static final SendPaymentResult RECIPIENT_NOT_FOUND =
+            new SendPaymentResult(SuccessCode.FAILED, "Recipient account not found.", Reason.RECIPIENT_NOT_FOUND);
+
+    public static final SendPaymentResult INSUFFICIENT_BALANCE =
+            new SendPaymentResult(SuccessCode.FAILED, "Insufficient balance.", Reason.INSUFFICIENT_BALANCE);
+
+    public static final SendPaymentResult RECIPIENT_BALANCE_LIMIT =
+            new SendPaymentResult(SuccessCode.FAILED, "Recipient balance limit exceeded.", Reason.RECIPIENT_BALANCE_LIMIT);
+
+    public static final SendPaymentResult IDENTIFIERS_TOO_LONG =
+            new SendPaymentResult(SuccessCode.FAILED, "Identifiers are too long.", Reason.IDENTIFIERS_TOO_LONG);
+
+    public static final SendPaymentResult TRANSFER_RATE_LIMIT =
+            new SendPaymentResult(SuccessCode.LIMIT_EXCEEDED, "Transfer limit per minute exceeded.", Reason.TRANSFER_RATE_LIMIT);
+
+    public static final SendPaymentResult DAILY_AMOUNT_LIMIT =
+            new SendPaymentResult(SuccessCode.LIMIT_EXCEEDED, "Daily amount limit exceeded.", Reason.DAILY_AMOUNT_LIMIT);
+
+    public static final SendPaymentResult PROCESSING_FAILED =
+            new SendPaymentResult(SuccessCode.FAILED, "Payment processing failed. Please try again later.", Reason.PROCESSING_FAILED);
+
+    public SendPaymentResult(SuccessCode successCode, String message) {
+        this(successCode, message, Reason.OTHER);
+    }
+
+    public static SendPaymentResult validationError(CharSequence errors) {
+        return new SendPaymentResult(SuccessCode.FAILED, "Validation error(s): " + errors, Reason.VALIDATION);
+    }
+
+    public static SendPaymentResult serviceBusy(String message) {
+        return new SendPaymentResult(SuccessCode.FAILED, message, Reason.SERVICE_BUSY);
+    }
+
 }
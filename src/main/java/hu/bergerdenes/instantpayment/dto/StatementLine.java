@@ -0,0 +1,18 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One payment of an account statement with the balance of the account after it.
+ *
+ * @param direction {@code DEBIT}, {@code CREDIT} or {@code SELF} for a payment to the account itself
+ */
+public record StatementLine(
+        long transactionId,
+        Instant timestamp,
+        String direction,
+        String counterpartyId,
+        BigDecimal amount,
+        BigDecimal balance) {
+}
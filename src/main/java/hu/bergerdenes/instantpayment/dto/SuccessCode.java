@@ -2,5 +2,6 @@ package hu.bergerdenes.instantpayment.dto;
 
 public enum SuccessCode {
     SUCCESSFUL,
-    FAILED
+    FAILED,
+    LIMIT_EXCEEDED
 }
@@ -0,0 +1,15 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.NOT_REQUIRED;
+import static io.swagger.v3.oas.annotations.media.Schema.RequiredMode.REQUIRED;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record TransactionHistoryPage(
+        @Schema(description = "Transactions of the account, newest first", requiredMode = REQUIRED)
+        List<TransactionView> transactions,
+        @Schema(description = "Cursor of the next page, absent on the last page", requiredMode = NOT_REQUIRED)
+        String nextCursor) {
+}
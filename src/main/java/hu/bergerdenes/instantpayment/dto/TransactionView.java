@@ -0,0 +1,25 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public record TransactionView(
+        @Schema(description = "Transaction ID", example = "42")
+        long id,
+        @Schema(description = "Sender Account ID", example = "user1")
+        String senderId,
+        @Schema(description = "Recipient Account ID", example = "user2")
+        String recipientId,
+        @Schema(description = "Amount", example = "12.50")
+        BigDecimal amount,
+        @Schema(description = "Time the payment was processed", example = "2025-05-01T10:15:30.123456Z")
+        Instant timestamp) {
+
+    public static TransactionView from(Transaction tx) {
+        return new TransactionView(tx.getId(), tx.getSenderId(), tx.getRecipientId(), tx.getAmount().toBigDecimal(), tx.getTimestamp());
+    }
+}
@@ -1,17 +1,28 @@
 package hu.bergerdenes.instantpayment.model;
 
-import java.math.BigDecimal;
-
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 
+import org.hibernate.annotations.ColumnDefault;
+
 @Entity
 public class Account {
 
     @Id
     private String id;
 
-    private BigDecimal balance;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2)
+    private Money balance;
+
+    /**
+     * A hot account receives its credits into {@link AccountSlot}s, {@link #balance} is only its main part then.
+     */
+    @ColumnDefault("false")
+    @Column(nullable = false)
+    private boolean hot;
 
     public String getId() {
         return id;
@@ -21,12 +32,20 @@ public class Account {
         this.id = id;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
-}
\ No newline at end of file
+    public boolean isHot() {
+        return hot;
+    }
+
+    public void setHot(boolean hot) {
+        this.hot = hot;
+    }
+
+}
@@ -0,0 +1,39 @@
+package hu.bergerdenes.instantpayment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * Opening balance of an account for reconciliation: its balance minus the net of its transactions, as first seen by
+ * the reconciliation job. Payments only move money between accounts, so this stays constant while the ledger is
+ * consistent.
+ */
+@Entity
+public class AccountBaseline {
+
+    @Id
+    private String accountId;
+
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2, nullable = false)
+    private Money openingBalance;
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(String accountId) {
+        this.accountId = accountId;
+    }
+
+    public Money getOpeningBalance() {
+        return openingBalance;
+    }
+
+    public void setOpeningBalance(Money openingBalance) {
+        this.openingBalance = openingBalance;
+    }
+
+}
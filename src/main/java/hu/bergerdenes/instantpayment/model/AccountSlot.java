@@ -0,0 +1,91 @@
+package hu.bergerdenes.instantpayment.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+
+/**
+ * One sub-balance of a hot account. Credits to a hot account are spread over its slots so they do not all
+ * contend on the account row; the account's total balance is its own balance plus the sum of its slots.
+ */
+@Entity
+@IdClass(AccountSlot.Key.class)
+public class AccountSlot {
+
+    @Id
+    private String accountId;
+
+    @Id
+    private int slot;
+
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2, nullable = false)
+    private Money balance = Money.ZERO;
+
+    public AccountSlot() {
+    }
+
+    public AccountSlot(String accountId, int slot) {
+        this.accountId = accountId;
+        this.slot = slot;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(String accountId) {
+        this.accountId = accountId;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    public Money getBalance() {
+        return balance;
+    }
+
+    public void setBalance(Money balance) {
+        this.balance = balance;
+    }
+
+    public static class Key implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private String accountId;
+
+        private int slot;
+
+        public Key() {
+        }
+
+        public Key(String accountId, int slot) {
+            this.accountId = accountId;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && slot == other.slot && Objects.equals(accountId, other.accountId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accountId, slot);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package hu.bergerdenes.instantpayment.model;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * A future-dated or recurring payment. Occurrences are numbered from 0; {@code occurrence} is the next one to be
+ * made and {@code nextExecution} its due time. Occurrence {@code n} is due at {@code startAt} plus {@code n}
+ * recurrence periods, so monthly payments do not drift after a short month.
+ */
+@Entity
+@Table(indexes = @Index(name = "scheduled_payment_due_idx", columnList = "status, next_execution, id"))
+public class ScheduledPayment {
+
+    public enum Recurrence {
+        ONCE, DAILY, WEEKLY, MONTHLY;
+
+        /**
+         * Due time of the occurrence with the given number, in UTC.
+         */
+        public Instant occurrence(Instant startAt, long number) {
+            return switch (this) {
+                case ONCE -> number == 0 ? startAt : null;
+                case DAILY -> startAt.atOffset(ZoneOffset.UTC).plusDays(number).toInstant();
+                case WEEKLY -> startAt.atOffset(ZoneOffset.UTC).plusWeeks(number).toInstant();
+                case MONTHLY -> startAt.atOffset(ZoneOffset.UTC).plusMonths(number).toInstant();
+            };
+        }
+    }
+
+    public enum Status {
+        ACTIVE, COMPLETED, CANCELLED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String senderId;
+
+    private String recipientId;
+
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2)
+    private Money amount;
+
+    @Enumerated(EnumType.STRING)
+    private Recurrence recurrence;
+
+    private Instant startAt;
+
+    /**
+     * No occurrence is made after this time, {@code null} for no end.
+     */
+    private Instant endAt;
+
+    private long occurrence;
+
+    private Instant nextExecution;
+
+    @Enumerated(EnumType.STRING)
+    private Status status = Status.ACTIVE;
+
+    private String lastResult;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+        this.senderId = senderId;
+    }
+
+    public String getRecipientId() {
+        return recipientId;
+    }
+
+    public void setRecipientId(String recipientId) {
+        this.recipientId = recipientId;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
+
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    public Instant getStartAt() {
+        return startAt;
+    }
+
+    public void setStartAt(Instant startAt) {
+        this.startAt = startAt;
+    }
+
+    public Instant getEndAt() {
+        return endAt;
+    }
+
+    public void setEndAt(Instant endAt) {
+        this.endAt = endAt;
+    }
+
+    public long getOccurrence() {
+        return occurrence;
+    }
+
+    public void setOccurrence(long occurrence) {
+        this.occurrence = occurrence;
+    }
+
+    public Instant getNextExecution() {
+        return nextExecution;
+    }
+
+    public void setNextExecution(Instant nextExecution) {
+        this.nextExecution = nextExecution;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getLastResult() {
+        return lastResult;
+    }
+
+    public void setLastResult(String lastResult) {
+        this.lastResult = lastResult;
+    }
+
+    /**
+     * Due time of the occurrence after the given one, or {@code null} if there is none.
+     */
+    public Instant executionAfter(long number) {
+        Instant next = recurrence.occurrence(startAt, number + 1);
+        return next == null || endAt != null && next.isAfter(endAt) ? null : next;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledPayment{" +
+                "id=" + id +
+                ", senderId='" + senderId + '\'' +
+                ", recipientId='" + recipientId + '\'' +
+                ", amount=" + amount +
+                ", recurrence=" + recurrence +
+                ", occurrence=" + occurrence +
+                ", nextExecution=" + nextExecution +
+                ", status=" + status +
+                '}';
+    }
+}
@@ -1,15 +1,22 @@
 package hu.bergerdenes.instantpayment.model;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "transaction_sender_idx", columnList = "sender_id, timestamp, id"),
+        @Index(name = "transaction_recipient_idx", columnList = "recipient_id, timestamp, id"),
+        @Index(name = "transaction_timestamp_idx", columnList = "timestamp")
+})
 public class Transaction {
 
     @Id
@@ -20,7 +27,9 @@ public class Transaction {
 
     private String recipientId;
 
-    private BigDecimal amount;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 38, scale = 2)
+    private Money amount;
 
     private Instant timestamp = Instant.now();
 
@@ -51,11 +60,11 @@ public class Transaction {
         this.recipientId = recipientId;
     }
 
-    public BigDecimal getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(BigDecimal amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -1,6 +1,24 @@
 package hu.bergerdenes.instantpayment.repository;
 
-import hu.bergerdenes.instantpayment.model.Account;
+import java.util.List;
+import java.util.Optional;
+
+import jakarta.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import hu.bergerdenes.instantpayment.model.Account;
+
+public interface AccountRepository extends JpaRepository<Account, String>, AccountTransferRepository {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.id = :id")
+    Optional<Account> findByIdForUpdate(@Param("id") String id);
+
+    @Query("select a.id from Account a where a.hot = true")
+    List<String> findHotAccountIds();
 
-public interface AccountRepository extends JpaRepository<Account, String> {}
+}
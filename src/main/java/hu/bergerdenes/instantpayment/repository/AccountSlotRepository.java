@@ -0,0 +1,29 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import hu.bergerdenes.instantpayment.model.AccountSlot;
+
+public interface AccountSlotRepository extends JpaRepository<AccountSlot, AccountSlot.Key> {
+
+    @Modifying
+    @Query(value = "UPDATE account_slot SET balance = balance + :amount WHERE account_id = :accountId AND slot = :slot", nativeQuery = true)
+    int credit(@Param("accountId") String accountId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from AccountSlot s where s.accountId = :accountId order by s.slot")
+    List<AccountSlot> findByAccountIdForUpdate(@Param("accountId") String accountId);
+
+    @Query(value = "SELECT COALESCE(SUM(balance), 0) FROM account_slot WHERE account_id = :accountId", nativeQuery = true)
+    BigDecimal sumBalance(@Param("accountId") String accountId);
+
+}
@@ -0,0 +1,13 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.math.BigDecimal;
+
+public interface AccountTransferRepository {
+
+    /**
+     * Debits the sender if its balance covers the amount, credits the recipient and inserts the transaction row
+     * in a single statement. With {@code notify} the notification is queued in the outbox by the same statement.
+     */
+    TransferOutcome transfer(String senderId, String recipientId, BigDecimal amount, String idempotencyKey, boolean notify);
+
+}
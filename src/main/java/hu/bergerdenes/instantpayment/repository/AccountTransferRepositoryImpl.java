@@ -0,0 +1,86 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * Postgres specific. Both account rows are locked in id order by the {@code state} aggregate before either is
+ * updated, so concurrent opposite transfers can not deadlock. A concurrent insert of the same idempotency key makes
+ * the whole statement fail on the unique constraint, which is reported as {@link TransferOutcome#DUPLICATE}.
+ */
+public class AccountTransferRepositoryImpl implements AccountTransferRepository {
+
+    private static final String TRANSFER_SQL = """
+            WITH locked AS (
+                SELECT id, balance FROM account WHERE id IN (:senderId, :recipientId) ORDER BY id FOR UPDATE
+            ),
+            state AS (
+                SELECT coalesce(bool_or(id = :senderId), false) AS sender_found,
+                       coalesce(bool_or(id = :recipientId), false) AS recipient_found,
+                       coalesce(max(balance) FILTER (WHERE id = :senderId), 0) AS sender_balance
+                FROM locked
+            ),
+            duplicate AS (
+                SELECT 1 FROM transaction WHERE idempotency_key = :idempotencyKey
+            ),
+            debit AS (
+                UPDATE account
+                SET balance = balance - CASE WHEN :senderId = :recipientId THEN 0 ELSE :amount END
+                WHERE id = :senderId
+                  AND (SELECT sender_found AND recipient_found AND sender_balance >= :amount FROM state)
+                  AND NOT EXISTS (SELECT 1 FROM duplicate)
+                RETURNING id
+            ),
+            credit AS (
+                UPDATE account
+                SET balance = balance + :amount
+                WHERE id = :recipientId AND :recipientId <> :senderId AND EXISTS (SELECT 1 FROM debit)
+                RETURNING id
+            ),
+            inserted AS (
+                INSERT INTO transaction (sender_id, recipient_id, amount, timestamp, idempotency_key)
+                SELECT :senderId, :recipientId, :amount, :timestamp, :idempotencyKey FROM debit
+                RETURNING id
+            ),
+            notification AS (
+                INSERT INTO outbox_message (transaction_id, created_at)
+                SELECT id, :timestamp FROM inserted WHERE :notify
+            )
+            SELECT CASE
+                       WHEN EXISTS (SELECT 1 FROM duplicate) THEN 'DUPLICATE'
+                       WHEN NOT sender_found THEN 'SENDER_NOT_FOUND'
+                       WHEN NOT recipient_found THEN 'RECIPIENT_NOT_FOUND'
+                       WHEN EXISTS (SELECT 1 FROM inserted) THEN 'TRANSFERRED'
+                       ELSE 'INSUFFICIENT_FUNDS'
+                   END
+            FROM state
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public AccountTransferRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public TransferOutcome transfer(String senderId, String recipientId, BigDecimal amount, String idempotencyKey, boolean notify) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("senderId", senderId)
+                .addValue("recipientId", recipientId)
+                .addValue("amount", amount)
+                .addValue("idempotencyKey", idempotencyKey)
+                .addValue("notify", notify)
+                .addValue("timestamp", OffsetDateTime.now(ZoneOffset.UTC));
+        try {
+            return TransferOutcome.valueOf(jdbcTemplate.queryForObject(TRANSFER_SQL, params, String.class));
+        } catch (DuplicateKeyException e) {
+            return TransferOutcome.DUPLICATE;
+        }
+    }
+
+}
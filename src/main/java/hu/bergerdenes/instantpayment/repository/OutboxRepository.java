@@ -0,0 +1,34 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import hu.bergerdenes.instantpayment.model.OutboxMessage;
+
+public interface OutboxRepository extends JpaRepository<OutboxMessage, Long> {
+
+    /**
+     * Oldest unsent messages, locked with {@code FOR UPDATE SKIP LOCKED} so that relays running on several
+     * instances never pick up the same rows.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select o from OutboxMessage o where o.sentAt is null order by o.id")
+    List<OutboxMessage> findUnsent(Pageable pageable);
+
+    @Modifying
+    @Query("delete from OutboxMessage o where o.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+
+}
@@ -0,0 +1,42 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Status;
+
+public interface ScheduledPaymentRepository extends JpaRepository<ScheduledPayment, Long> {
+
+    /**
+     * Active schedules due before {@code until}, in id order after {@code afterId}. Served by
+     * {@code scheduled_payment_due_idx}, so only the near-term schedules are read.
+     */
+    @Query("select s from ScheduledPayment s where s.status = :status and s.nextExecution < :until and s.id > :afterId order by s.id")
+    List<ScheduledPayment> findDueBefore(@Param("status") Status status, @Param("until") Instant until,
+                                         @Param("afterId") long afterId, Pageable pageable);
+
+    /**
+     * Moves the schedule past the given occurrence, unless that has already been done, e.g. by another instance.
+     *
+     * @param nextExecution {@code null} with status {@code COMPLETED} after the last occurrence
+     * @param active {@link Status#ACTIVE}
+     */
+    @Modifying
+    @Query("update ScheduledPayment s set s.occurrence = s.occurrence + 1, s.nextExecution = :nextExecution,"
+            + " s.status = :status, s.lastResult = :lastResult"
+            + " where s.id = :id and s.occurrence = :occurrence and s.status = :active")
+    int advance(@Param("id") long id, @Param("occurrence") long occurrence, @Param("nextExecution") Instant nextExecution,
+                @Param("status") Status status, @Param("lastResult") String lastResult, @Param("active") Status active);
+
+    @Modifying
+    @Query("update ScheduledPayment s set s.status = :to where s.id = :id and s.status = :from")
+    int updateStatus(@Param("id") long id, @Param("from") Status from, @Param("to") Status to);
+
+}
@@ -0,0 +1,11 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.time.Instant;
+
+import hu.bergerdenes.instantpayment.model.Money;
+
+/**
+ * The part of a transaction that counts against the sender's velocity limits.
+ */
+public record SentTransfer(String senderId, Money amount, Instant timestamp) {
+}
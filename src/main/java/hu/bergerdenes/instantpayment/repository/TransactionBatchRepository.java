@@ -0,0 +1,15 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.util.List;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public interface TransactionBatchRepository {
+
+    /**
+     * Inserts the transactions with one JDBC batch and sets their generated ids. With {@code notify} an outbox
+     * message is queued for each of them with a second batch.
+     */
+    void insertAll(List<Transaction> transactions, boolean notify);
+
+}
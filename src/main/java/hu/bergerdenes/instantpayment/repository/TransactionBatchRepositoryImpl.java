@@ -0,0 +1,68 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public class TransactionBatchRepositoryImpl implements TransactionBatchRepository {
+
+    private static final String INSERT_TRANSACTION =
+            "INSERT INTO transaction (sender_id, recipient_id, amount, timestamp, idempotency_key) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_OUTBOX_MESSAGE =
+            "INSERT INTO outbox_message (transaction_id, created_at) VALUES (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TransactionBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAll(List<Transaction> transactions, boolean notify) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(con -> con.prepareStatement(INSERT_TRANSACTION, new String[]{"id"}), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Transaction tx = transactions.get(i);
+                ps.setString(1, tx.getSenderId());
+                ps.setString(2, tx.getRecipientId());
+                ps.setBigDecimal(3, tx.getAmount().toBigDecimal());
+                ps.setObject(4, tx.getTimestamp().atOffset(ZoneOffset.UTC));
+                ps.setString(5, tx.getIdempotencyKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return transactions.size();
+            }
+        }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < transactions.size(); i++) {
+            transactions.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+
+        if (notify) {
+            OffsetDateTime createdAt = OffsetDateTime.now(ZoneOffset.UTC);
+            jdbcTemplate.batchUpdate(INSERT_OUTBOX_MESSAGE, transactions, transactions.size(), (ps, tx) -> {
+                ps.setLong(1, tx.getId());
+                ps.setObject(2, createdAt);
+            });
+        }
+    }
+
+}
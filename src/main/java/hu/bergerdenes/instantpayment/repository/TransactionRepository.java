@@ -1,12 +1,53 @@
 package hu.bergerdenes.instantpayment.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import hu.bergerdenes.instantpayment.model.Transaction;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionBatchRepository,
+        TransactionStatementRepository {
     Optional<Transaction> findByIdempotencyKey(String idempotencyKey);
-}
 
+    @Query("select t.idempotencyKey from Transaction t where t.timestamp >= :since")
+    Stream<String> streamIdempotencyKeysSince(@Param("since") Instant since);
+
+    /**
+     * Served by {@code transaction_timestamp_idx}, so only the rows of the window are read.
+     */
+    @Query("select new hu.bergerdenes.instantpayment.repository.SentTransfer(t.senderId, t.amount, t.timestamp)"
+            + " from Transaction t where t.timestamp >= :since and t.timestamp < :until")
+    Stream<SentTransfer> streamSentBetween(@Param("since") Instant since, @Param("until") Instant until);
+
+    @Query("select t.idempotencyKey from Transaction t where t.idempotencyKey in :keys")
+    Set<String> findExistingIdempotencyKeys(@Param("keys") Collection<String> keys);
+
+    /**
+     * Payments sent by the account before the {@code (timestamp, id)} cursor, newest first. Served by
+     * {@code transaction_sender_idx}, so every page costs the same.
+     */
+    @Query("select t from Transaction t where t.senderId = :accountId"
+            + " and (t.timestamp < :timestamp or (t.timestamp = :timestamp and t.id < :id))"
+            + " order by t.timestamp desc, t.id desc")
+    List<Transaction> findSentBefore(@Param("accountId") String accountId, @Param("timestamp") Instant timestamp,
+                                     @Param("id") long id, Pageable pageable);
+
+    /**
+     * Payments received by the account before the {@code (timestamp, id)} cursor, newest first. Served by
+     * {@code transaction_recipient_idx}.
+     */
+    @Query("select t from Transaction t where t.recipientId = :accountId"
+            + " and (t.timestamp < :timestamp or (t.timestamp = :timestamp and t.id < :id))"
+            + " order by t.timestamp desc, t.id desc")
+    List<Transaction> findReceivedBefore(@Param("accountId") String accountId, @Param("timestamp") Instant timestamp,
+                                         @Param("id") long id, Pageable pageable);
+}
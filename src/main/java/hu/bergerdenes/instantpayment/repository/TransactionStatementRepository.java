@@ -0,0 +1,23 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public interface TransactionStatementRepository {
+
+    /**
+     * Change of the account's balance caused by the payments made at or after {@code since}.
+     */
+    BigDecimal netChangeSince(String accountId, Instant since);
+
+    /**
+     * Passes the account's payments made in {@code [from, to)} to the consumer in {@code (timestamp, id)} order, a
+     * payment to self only once. Rows are fetched with a server-side cursor when called inside a transaction, so
+     * memory use does not depend on the number of rows.
+     */
+    void streamStatement(String accountId, Instant from, Instant to, Consumer<Transaction> consumer);
+
+}
@@ -0,0 +1,63 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public class TransactionStatementRepositoryImpl implements TransactionStatementRepository {
+
+    private static final String NET_CHANGE = """
+            SELECT (SELECT COALESCE(SUM(amount), 0) FROM transaction WHERE recipient_id = ? AND timestamp >= ?)
+                 - (SELECT COALESCE(SUM(amount), 0) FROM transaction WHERE sender_id = ? AND timestamp >= ?)
+            """;
+
+    private static final String STATEMENT = """
+            SELECT id, sender_id, recipient_id, amount, timestamp FROM (
+                SELECT id, sender_id, recipient_id, amount, timestamp FROM transaction
+                WHERE sender_id = ? AND timestamp >= ? AND timestamp < ?
+                UNION ALL
+                SELECT id, sender_id, recipient_id, amount, timestamp FROM transaction
+                WHERE recipient_id = ? AND sender_id <> ? AND timestamp >= ? AND timestamp < ?
+            ) t
+            ORDER BY timestamp, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TransactionStatementRepositoryImpl(DataSource dataSource, @Value("${payment.statement.fetch-size}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Override
+    public BigDecimal netChangeSince(String accountId, Instant since) {
+        OffsetDateTime from = since.atOffset(ZoneOffset.UTC);
+        return jdbcTemplate.queryForObject(NET_CHANGE, BigDecimal.class, accountId, from, accountId, from);
+    }
+
+    @Override
+    public void streamStatement(String accountId, Instant from, Instant to, Consumer<Transaction> consumer) {
+        OffsetDateTime start = from.atOffset(ZoneOffset.UTC);
+        OffsetDateTime end = to.atOffset(ZoneOffset.UTC);
+        jdbcTemplate.query(STATEMENT, rs -> {
+            Transaction tx = new Transaction();
+            tx.setId(rs.getLong(1));
+            tx.setSenderId(rs.getString(2));
+            tx.setRecipientId(rs.getString(3));
+            tx.setAmount(Money.of(rs.getBigDecimal(4)));
+            tx.setTimestamp(rs.getObject(5, OffsetDateTime.class).toInstant());
+            consumer.accept(tx);
+        }, accountId, start, end, accountId, accountId, start, end);
+    }
+
+}
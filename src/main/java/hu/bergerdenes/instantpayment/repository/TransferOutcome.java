@@ -0,0 +1,9 @@
+package hu.bergerdenes.instantpayment.repository;
+
+public enum TransferOutcome {
+    TRANSFERRED,
+    DUPLICATE,
+    SENDER_NOT_FOUND,
+    RECIPIENT_NOT_FOUND,
+    INSUFFICIENT_FUNDS
+}
@@ -0,0 +1,126 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * AIMD concurrency limit in front of the payment service. Every fast completion while the limit is being used
+ * raises it by one; a completion slower than the latency threshold, or one rejected further down for overload,
+ * shrinks it by the backoff ratio. Requests above the limit are rejected right away instead of queueing. A batch of
+ * payments takes one permit, and its latency is judged per payment.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final double backoffRatio;
+
+    private final Duration retryAfter;
+
+    private final Counter rejected;
+
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimiter(@Value("${payment.limiter.initial-limit}") int initialLimit,
+                                      @Value("${payment.limiter.min-limit}") int minLimit,
+                                      @Value("${payment.limiter.max-limit}") int maxLimit,
+                                      @Value("${payment.limiter.latency-threshold}") Duration latencyThreshold,
+                                      @Value("${payment.limiter.backoff-ratio}") double backoffRatio,
+                                      @Value("${payment.limiter.retry-after}") Duration retryAfter,
+                                      MeterRegistry meterRegistry) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.retryAfter = retryAfter;
+        Gauge.builder("payment.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("payment.limiter.in-flight", inFlight, AtomicInteger::get)
+                .description("Payments currently admitted by the limiter")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("payment.limiter.rejected")
+                .description("Payments rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admits a request or throws {@link ServiceBusyException}. The returned permit must be released exactly once.
+     */
+    public Permit acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * Admits a batch of payments processed together, see {@link #acquire()}.
+     */
+    public Permit acquire(int payments) {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                LOGGER.debug("Payment rejected by concurrency limiter: inFlight={}, limit={}", current, (int) limit);
+                throw new ServiceBusyException("Service is busy. Please try again later.", retryAfter);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(System.nanoTime(), Math.max(1, payments));
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    private synchronized void onComplete(long latencyNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped || latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    public final class Permit {
+
+        private final long start;
+
+        private final int inFlightAtStart;
+
+        private final int payments;
+
+        private Permit(long start, int payments) {
+            this.start = start;
+            this.inFlightAtStart = inFlight.get();
+            this.payments = payments;
+        }
+
+        /**
+         * @param failure the failure of the request, or {@code null}; overload failures shrink the limit
+         */
+        public void release(Throwable failure) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            inFlight.decrementAndGet();
+            onComplete((System.nanoTime() - start) / payments, inFlightAtStart, cause instanceof ServiceBusyException);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.PaymentMetrics.Stage;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+import hu.bergerdenes.instantpayment.service.velocity.VelocityLimiter;
+
+/**
+ * Applies a list of payments inside the caller's transaction: every distinct account is locked and loaded once,
+ * known idempotency keys are looked up with one query, the payments are applied in order in memory, and the
+ * results are written with batched statements. Each payment gets its own result; a failing one does not affect
+ * the others. Hot recipients are not locked: their credits are summed per account and added to a slot after all
+ * payments are applied, in account id order. Velocity limit permits of the applied payments are given back if the
+ * transaction rolls back.
+ */
+@Component
+public class BatchPaymentProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchPaymentProcessor.class);
+
+    private final AccountRepository accountRepo;
+
+    private final TransactionRepository transactionRepo;
+
+    private final AccountLockStrategy lockStrategy;
+
+    private final PaymentMetrics metrics;
+
+    private final HotAccounts hotAccounts;
+
+    private final BalanceCache balanceCache;
+
+    private final VelocityLimiter velocityLimiter;
+
+    private final boolean kafkaEnabled;
+
+    public BatchPaymentProcessor(AccountRepository accountRepo, TransactionRepository transactionRepo,
+                                 AccountLockStrategy lockStrategy, PaymentMetrics metrics, HotAccounts hotAccounts,
+                                 BalanceCache balanceCache, VelocityLimiter velocityLimiter,
+                                 @Value("${kafka.enabled}") boolean kafkaEnabled) {
+        this.accountRepo = accountRepo;
+        this.transactionRepo = transactionRepo;
+        this.lockStrategy = lockStrategy;
+        this.metrics = metrics;
+        this.hotAccounts = hotAccounts;
+        this.balanceCache = balanceCache;
+        this.velocityLimiter = velocityLimiter;
+        this.kafkaEnabled = kafkaEnabled;
+    }
+
+    public List<SendPaymentResult> process(List<SendPaymentRequest> requests) {
+        Set<String> accountIds = new HashSet<>();
+        Set<String> lockedIds = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        for (SendPaymentRequest request : requests) {
+            accountIds.add(request.getSenderId());
+            accountIds.add(request.getRecipientId());
+            lockedIds.add(request.getSenderId());
+            if (!hotAccounts.isHot(request.getRecipientId())) {
+                lockedIds.add(request.getRecipientId());
+            }
+            keys.add(request.getIdempotencyKey());
+        }
+        long start = System.nanoTime();
+        lockStrategy.lockAccounts(lockedIds);
+        metrics.lockAcquired(start);
+
+        start = System.nanoTime();
+        Map<String, Account> accounts = new HashMap<>();
+        accountRepo.findAllById(accountIds).forEach(account -> accounts.put(account.getId(), account));
+        metrics.record(Stage.ACCOUNT_LOAD, start);
+        start = System.nanoTime();
+        Set<String> processedKeys = transactionRepo.findExistingIdempotencyKeys(keys);
+        metrics.record(Stage.IDEMPOTENCY_LOOKUP, start);
+
+        Map<String, SendPaymentResult> resultsByKey = new HashMap<>();
+        Map<String, Account> touched = new LinkedHashMap<>();
+        Map<String, Money> hotCredits = new TreeMap<>();
+        Set<String> folded = new HashSet<>();
+        List<Transaction> transactions = new ArrayList<>();
+        List<VelocityLimiter.Permit> permits = new ArrayList<>();
+        List<SendPaymentResult> results = new ArrayList<>(requests.size());
+        for (SendPaymentRequest request : requests) {
+            String key = request.getIdempotencyKey();
+            SendPaymentResult previous = resultsByKey.get(key);
+            if (previous != null || processedKeys.contains(key)) {
+                results.add(previous == null || previous.successCode() == SuccessCode.SUCCESSFUL
+                        ? SendPaymentResult.ALREADY_PROCESSED
+                        : previous);
+                continue;
+            }
+            SendPaymentResult result = apply(request, accounts, touched, hotCredits, folded, transactions, permits);
+            resultsByKey.put(key, result);
+            results.add(result);
+        }
+
+        velocityLimiter.releaseOnRollback(permits);
+        start = System.nanoTime();
+        accountRepo.saveAll(touched.values());
+        hotCredits.forEach(hotAccounts::credit);
+        metrics.record(Stage.PERSIST_ACCOUNTS, start);
+        balanceCache.evictAfterCommit(touched.keySet());
+        balanceCache.evictAfterCommit(hotCredits.keySet());
+        start = System.nanoTime();
+        transactionRepo.insertAll(transactions, kafkaEnabled);
+        metrics.record(Stage.PERSIST_TRANSACTION, start);
+        LOGGER.debug("Payment batch applied: requests={}, transactions={}, accounts={}", requests.size(), transactions.size(), touched.size());
+        return results;
+    }
+
+    private SendPaymentResult apply(SendPaymentRequest request, Map<String, Account> accounts, Map<String, Account> touched,
+                                    Map<String, Money> hotCredits, Set<String> folded, List<Transaction> transactions,
+                                    List<VelocityLimiter.Permit> permits) {
+        Account sender = accounts.get(request.getSenderId());
+        if (sender == null) {
+            return SendPaymentResult.SENDER_NOT_FOUND;
+        }
+        Account recipient = accounts.get(request.getRecipientId());
+        if (recipient == null) {
+            return SendPaymentResult.RECIPIENT_NOT_FOUND;
+        }
+        Money amount = Money.of(request.getAmount());
+        VelocityLimiter.Permit permit = velocityLimiter.tryAcquire(sender.getId(), amount);
+        if (!permit.granted()) {
+            return permit.rejection();
+        }
+        if (sender.getBalance().isLessThan(amount) && sender.isHot() && folded.add(sender.getId())) {
+            hotAccounts.fold(sender);
+            touched.put(sender.getId(), sender);
+        }
+        if (sender.getBalance().isLessThan(amount)) {
+            velocityLimiter.release(permit);
+            return SendPaymentResult.INSUFFICIENT_BALANCE;
+        }
+        permits.add(permit);
+
+        sender.setBalance(sender.getBalance().minus(amount));
+        touched.put(sender.getId(), sender);
+        if (hotAccounts.isHot(recipient.getId())) {
+            hotCredits.merge(recipient.getId(), amount, Money::plus);
+        } else {
+            recipient.setBalance(recipient.getBalance().plus(amount));
+            touched.put(recipient.getId(), recipient);
+        }
+
+        Transaction tx = new Transaction();
+        tx.setSenderId(sender.getId());
+        tx.setRecipientId(recipient.getId());
+        tx.setAmount(amount);
+        tx.setIdempotencyKey(request.getIdempotencyKey());
+        transactions.add(tx);
+        return SendPaymentResult.PROCESSED;
+    }
+
+}
@@ -0,0 +1,54 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds the number of payments working against the database at the same time. With virtual threads there is no
+ * request thread pool limiting concurrency any more, so without the gate every request would queue up inside the
+ * connection pool until its timeout; here the excess waits briefly and is then rejected.
+ */
+@Component
+public class DbAdmissionGate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DbAdmissionGate.class);
+
+    private final Semaphore permits;
+
+    private final Duration timeout;
+
+    private final Duration retryAfter;
+
+    public DbAdmissionGate(@Value("${payment.admission.max-concurrent}") int maxConcurrent,
+                           @Value("${payment.admission.timeout}") Duration timeout,
+                           @Value("${payment.admission.retry-after}") Duration retryAfter) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.timeout = timeout;
+        this.retryAfter = retryAfter;
+    }
+
+    public <T> T call(Supplier<T> work) {
+        try {
+            if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                LOGGER.warn("Payment rejected, database admission gate is full");
+                throw new ServiceBusyException("Service is busy. Please try again later.", retryAfter);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while waiting for admission.", retryAfter);
+        }
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package hu.bergerdenes.instantpayment.service;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+
+/**
+ * Alternative execution path for {@link PaymentService}, selected with {@code payment.engine}.
+ * When no engine bean is present the default JPA path is used.
+ */
+public interface PaymentEngine {
+
+    SendPaymentResult sendPayment(String senderId, String recipientId, Money amount, String idempotencyKey);
+
+    /**
+     * Whether the engine takes the velocity limit permits of its payments itself, in which case
+     * {@link PaymentService} does not take one as well.
+     */
+    default boolean checksVelocityLimits() {
+        return false;
+    }
+
+}
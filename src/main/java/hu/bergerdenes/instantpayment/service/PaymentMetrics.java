@@ -0,0 +1,135 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult.Reason;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+
+/**
+ * Meters of the payment path. All meters are registered up front so recording on the hot path is a field access
+ * and a lock-free histogram update, without tag lookups; results are counted by the reason they carry, not their
+ * message. Fallbacks are the exception, their counters are created on first use of an operation and exception.
+ */
+@Component
+public class PaymentMetrics {
+
+    public enum Stage {
+        IDEMPOTENCY_LOOKUP, ACCOUNT_LOAD, PERSIST_ACCOUNTS, PERSIST_TRANSACTION, OUTBOX_ENQUEUE, TRANSACTION
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    private final Timer lockWait;
+
+    private final Timer lockHold;
+
+    private final Counter[][] resultCounters = new Counter[SuccessCode.values().length][Reason.values().length];
+
+    private final ConcurrentMap<String, Counter> fallbackCounters = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public PaymentMetrics(MeterRegistry meterRegistry, AccountLockStrategy lockStrategy,
+                          ObjectProvider<CircuitBreakerRegistry> circuitBreakerRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, histogram(Timer.builder("payment.stage")
+                    .description("Time spent in one stage of a payment")
+                    .tag("stage", stage.name().toLowerCase())));
+        }
+        this.lockWait = histogram(Timer.builder("payment.lock.wait")
+                .description("Time spent waiting for the account locks")
+                .tag("strategy", lockStrategy.name()));
+        this.lockHold = histogram(Timer.builder("payment.lock.hold")
+                .description("Time the account locks are held, until the transaction completes")
+                .tag("strategy", lockStrategy.name()));
+        for (SuccessCode code : SuccessCode.values()) {
+            for (Reason reason : Reason.values()) {
+                resultCounters[code.ordinal()][reason.ordinal()] = Counter.builder("payment.results")
+                        .description("Payment results by success code and reason")
+                        .tag("code", code.name())
+                        .tag("reason", reason.tag())
+                        .register(meterRegistry);
+            }
+        }
+        Gauge.builder("payment.in.flight", inFlight, AtomicInteger::get)
+                .description("Payments currently being processed")
+                .register(meterRegistry);
+        circuitBreakerRegistry.ifAvailable(registry ->
+                Gauge.builder("payment.circuitbreaker.state", registry, r -> r.circuitBreaker("paymentService").getState().getOrder())
+                        .description("State of the paymentService circuit breaker: 0 closed, 1 open, 2 half open, ...")
+                        .register(meterRegistry));
+    }
+
+    private Timer histogram(Timer.Builder builder) {
+        return builder.publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    public void record(Stage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the lock wait since {@code waitStartNanos} and, inside a transaction, the hold time when it completes.
+     */
+    public void lockAcquired(long waitStartNanos) {
+        long acquired = System.nanoTime();
+        lockWait.record(acquired - waitStartNanos, TimeUnit.NANOSECONDS);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lockHold.record(System.nanoTime() - acquired, TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+    }
+
+    public void paymentStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void paymentFinished(SendPaymentResult result) {
+        inFlight.decrementAndGet();
+        if (result != null) {
+            recordResult(result);
+        }
+    }
+
+    public void recordResult(SendPaymentResult result) {
+        resultCounters[result.successCode().ordinal()][result.reason().ordinal()].increment();
+    }
+
+    public void recordFallback(String operation, Throwable ex) {
+        String exception = ex.getClass().getSimpleName();
+        fallbackCounters.computeIfAbsent(operation + '/' + exception, key -> Counter.builder("payment.fallbacks")
+                .description("Fallback invocations by operation and exception")
+                .tag("operation", operation)
+                .tag("exception", exception)
+                .register(meterRegistry)).increment();
+    }
+
+}
@@ -1,23 +1,45 @@
 package hu.bergerdenes.instantpayment.service;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
 import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
 import hu.bergerdenes.instantpayment.dto.SuccessCode;
 import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.OutboxMessage;
 import hu.bergerdenes.instantpayment.model.Transaction;
 import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
 import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.idempotency.IdempotencyCache;
+import hu.bergerdenes.instantpayment.service.PaymentMetrics.Stage;
+import hu.bergerdenes.instantpayment.service.audit.AuditLog;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+import hu.bergerdenes.instantpayment.service.velocity.VelocityLimiter;
 
 @Service
 public class PaymentService {
@@ -28,92 +50,342 @@ public class PaymentService {
 
     private final TransactionRepository transactionRepo;
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final OutboxRepository outboxRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final PaymentEngine paymentEngine;
+
+    private final IdempotencyCache idempotencyCache;
+
+    private final BatchPaymentProcessor batchProcessor;
+
+    private final DbAdmissionGate admissionGate;
+
+    private final ExecutorService paymentExecutor;
+
+    private final AccountLockStrategy lockStrategy;
+
+    private final PaymentMetrics metrics;
+
+    private final HotAccounts hotAccounts;
+
+    private final BalanceCache balanceCache;
+
+    private final VelocityLimiter velocityLimiter;
+
+    private final AuditLog auditLog;
 
     private final boolean kafkaEnabled;
 
     public PaymentService(AccountRepository accountRepo, TransactionRepository transactionRepo,
-                          KafkaTemplate<String, String> kafkaTemplate, @Value("${kafka.enabled}") boolean kafkaEnabled) {
+                          OutboxRepository outboxRepo, TransactionTemplate transactionTemplate,
+                          ObjectProvider<PaymentEngine> paymentEngine, IdempotencyCache idempotencyCache,
+                          BatchPaymentProcessor batchProcessor, DbAdmissionGate admissionGate,
+                          @Qualifier("paymentExecutor") ExecutorService paymentExecutor, AccountLockStrategy lockStrategy,
+                          PaymentMetrics metrics, HotAccounts hotAccounts, BalanceCache balanceCache,
+                          VelocityLimiter velocityLimiter, AuditLog auditLog, @Value("${kafka.enabled}") boolean kafkaEnabled) {
         this.accountRepo = accountRepo;
         this.transactionRepo = transactionRepo;
-        this.kafkaTemplate = kafkaTemplate;
+        this.outboxRepo = outboxRepo;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentEngine = paymentEngine.getIfAvailable();
+        this.idempotencyCache = idempotencyCache;
+        this.batchProcessor = batchProcessor;
+        this.admissionGate = admissionGate;
+        this.paymentExecutor = paymentExecutor;
+        this.lockStrategy = lockStrategy;
+        this.metrics = metrics;
+        this.hotAccounts = hotAccounts;
+        this.balanceCache = balanceCache;
+        this.velocityLimiter = velocityLimiter;
+        this.auditLog = auditLog;
         this.kafkaEnabled = kafkaEnabled;
     }
 
-    @Transactional
     @Retry(name = "paymentService", fallbackMethod = "fallbackSendPayment")
     @CircuitBreaker(name = "paymentService", fallbackMethod = "fallbackSendPayment")
     public SendPaymentResult sendPayment(String senderId, String recipientId, BigDecimal amount, String idempotencyKey) {
-        if (transactionRepo.findByIdempotencyKey(idempotencyKey).isPresent()) {
-            LOGGER.info("Payment is already processed: idempotencyKey={}", idempotencyKey);
-            return new SendPaymentResult(SuccessCode.SUCCESSFUL, "Payment is already processed.");
+        return processPayment(senderId, recipientId, amount, idempotencyKey);
+    }
+
+    /**
+     * Non-blocking variant of {@link #sendPayment}: the payment runs on a virtual thread and retry waits are
+     * scheduled instead of blocking the caller.
+     */
+    @Retry(name = "paymentService", fallbackMethod = "fallbackSendPaymentAsync")
+    @CircuitBreaker(name = "paymentService", fallbackMethod = "fallbackSendPaymentAsync")
+    public CompletableFuture<SendPaymentResult> sendPaymentAsync(String senderId, String recipientId, BigDecimal amount, String idempotencyKey) {
+        return CompletableFuture.supplyAsync(() -> processPayment(senderId, recipientId, amount, idempotencyKey), paymentExecutor);
+    }
+
+    private SendPaymentResult processPayment(String senderId, String recipientId, BigDecimal decimalAmount, String idempotencyKey) {
+        Money amount = Money.of(decimalAmount);
+        long started = System.nanoTime();
+        metrics.paymentStarted();
+        SendPaymentResult result = null;
+        try {
+            result = idempotencyCache.execute(idempotencyKey, () -> withinVelocityLimits(senderId, amount, () -> {
+                if (paymentEngine != null) {
+                    return paymentEngine.sendPayment(senderId, recipientId, amount, idempotencyKey);
+                }
+                try {
+                    return admissionGate.call(() -> {
+                        long start = System.nanoTime();
+                        SendPaymentResult transferred = transactionTemplate.execute(status -> transfer(senderId, recipientId, amount, idempotencyKey));
+                        metrics.record(Stage.TRANSACTION, start);
+                        return transferred;
+                    });
+                } catch (DataIntegrityViolationException e) {
+                    if (transactionRepo.findByIdempotencyKey(idempotencyKey).isPresent()) {
+                        return alreadyProcessed(idempotencyKey);
+                    }
+                    throw e;
+                }
+            }));
+            return result;
+        } finally {
+            metrics.paymentFinished(result);
+            auditLog.record(senderId, recipientId, amount.minorUnits(), idempotencyKey, result, started);
+        }
+    }
+
+    /**
+     * Processes the payments in one database transaction and returns a result for each, in request order. Keys with
+     * a cached result get it replayed, as on {@link #sendPayment}. With an alternative engine configured the payments
+     * are sent one by one.
+     */
+    @Retry(name = "paymentService", fallbackMethod = "fallbackSendPayments")
+    @CircuitBreaker(name = "paymentService", fallbackMethod = "fallbackSendPayments")
+    public List<SendPaymentResult> sendPayments(List<SendPaymentRequest> requests) {
+        long start = System.nanoTime();
+        if (paymentEngine != null) {
+            List<SendPaymentResult> results = new ArrayList<>(requests.size());
+            for (SendPaymentRequest request : requests) {
+                Money amount = Money.of(request.getAmount());
+                results.add(idempotencyCache.execute(request.getIdempotencyKey(), () -> withinVelocityLimits(request.getSenderId(), amount,
+                        () -> paymentEngine.sendPayment(request.getSenderId(), request.getRecipientId(), amount, request.getIdempotencyKey()))));
+            }
+            results.forEach(metrics::recordResult);
+            audit(requests, results, start);
+            return results;
+        }
+        SendPaymentResult[] results = new SendPaymentResult[requests.size()];
+        List<SendPaymentRequest> uncached = new ArrayList<>(requests.size());
+        List<Integer> uncachedIndexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            results[i] = idempotencyCache.cachedResult(requests.get(i).getIdempotencyKey());
+            if (results[i] == null) {
+                uncached.add(requests.get(i));
+                uncachedIndexes.add(i);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            List<SendPaymentResult> processed = admissionGate.call(() -> processBatch(uncached));
+            for (int i = 0; i < processed.size(); i++) {
+                results[uncachedIndexes.get(i)] = processed.get(i);
+                idempotencyCache.record(uncached.get(i).getIdempotencyKey(), processed.get(i));
+            }
+        }
+        for (SendPaymentResult result : results) {
+            metrics.recordResult(result);
+        }
+        audit(requests, List.of(results), start);
+        LOGGER.debug("Payment batch processed: size={}, cached={}", requests.size(), requests.size() - uncached.size());
+        return List.of(results);
+    }
+
+    /**
+     * Processes the payments in one database transaction. When a payment with one of their keys is committed by
+     * someone else meanwhile, the insert fails on the unique key and the whole transaction rolls back; the batch is
+     * then processed again without the keys found in the database, which are reported as already processed.
+     */
+    private List<SendPaymentResult> processBatch(List<SendPaymentRequest> requests) {
+        try {
+            return transactionTemplate.execute(status -> batchProcessor.process(requests));
+        } catch (DataIntegrityViolationException e) {
+            Set<String> keys = new HashSet<>();
+            requests.forEach(request -> keys.add(request.getIdempotencyKey()));
+            Set<String> processedKeys = transactionRepo.findExistingIdempotencyKeys(keys);
+            if (processedKeys.isEmpty()) {
+                throw e;
+            }
+            LOGGER.debug("Payment batch conflicts with payments processed meanwhile, processing it again: conflicts={}", processedKeys.size());
+            List<SendPaymentRequest> rest = requests.stream()
+                    .filter(request -> !processedKeys.contains(request.getIdempotencyKey()))
+                    .toList();
+            Iterator<SendPaymentResult> restResults = (rest.isEmpty() ? List.<SendPaymentResult>of() : processBatch(rest)).iterator();
+            List<SendPaymentResult> results = new ArrayList<>(requests.size());
+            for (SendPaymentRequest request : requests) {
+                results.add(processedKeys.contains(request.getIdempotencyKey())
+                        ? alreadyProcessed(request.getIdempotencyKey())
+                        : restResults.next());
+            }
+            return results;
         }
+    }
+
+    private void audit(List<SendPaymentRequest> requests, List<SendPaymentResult> results, long start) {
+        for (int i = 0; i < requests.size(); i++) {
+            SendPaymentRequest request = requests.get(i);
+            auditLog.record(request.getSenderId(), request.getRecipientId(), Money.of(request.getAmount()).minorUnits(),
+                    request.getIdempotencyKey(), results.get(i), start);
+        }
+    }
 
+    /**
+     * Runs the payment if the sender is within its velocity limits, unless the engine checks them itself. The permit
+     * is given back unless the payment succeeded, so failed payments do not count. Repeated keys are answered by the
+     * idempotency cache before getting here; one only found in the database keeps its permit.
+     */
+    private SendPaymentResult withinVelocityLimits(String senderId, Money amount, Supplier<SendPaymentResult> payment) {
+        if (paymentEngine != null && paymentEngine.checksVelocityLimits()) {
+            return payment.get();
+        }
+        VelocityLimiter.Permit permit = velocityLimiter.tryAcquire(senderId, amount);
+        if (!permit.granted()) {
+            return permit.rejection();
+        }
+        SendPaymentResult result = null;
+        try {
+            result = payment.get();
+            return result;
+        } finally {
+            if (result == null || result.successCode() != SuccessCode.SUCCESSFUL) {
+                velocityLimiter.release(permit);
+            }
+        }
+    }
+
+    private SendPaymentResult transfer(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        boolean processed = idempotencyCache.mightBeProcessed(idempotencyKey) && transactionRepo.findByIdempotencyKey(idempotencyKey).isPresent();
+        metrics.record(Stage.IDEMPOTENCY_LOOKUP, start);
+        if (processed) {
+            return alreadyProcessed(idempotencyKey);
+        }
+
+        boolean recipientHot = hotAccounts.isHot(recipientId);
+        lockAccounts(senderId, recipientHot ? null : recipientId);
+
+        start = System.nanoTime();
         Optional<Account> senderOpt = accountRepo.findById(senderId);
         if (senderOpt.isEmpty()) {
-            LOGGER.warn("Sender account not found: senderId={}", senderId);
-            return new SendPaymentResult(SuccessCode.FAILED, "Sender account not found.");
+            LOGGER.debug("Sender account not found: senderId={}", senderId);
+            return SendPaymentResult.SENDER_NOT_FOUND;
         }
 
         Account sender = senderOpt.get();
 
         Optional<Account> recipientOpt = accountRepo.findById(recipientId);
         if (recipientOpt.isEmpty()) {
-            LOGGER.warn("Recipient account not found: senderId={}", recipientId);
-            return new SendPaymentResult(SuccessCode.FAILED, "Recipient account not found.");
+            LOGGER.debug("Recipient account not found: recipientId={}", recipientId);
+            return SendPaymentResult.RECIPIENT_NOT_FOUND;
         }
 
         Account recipient = recipientOpt.get();
+        metrics.record(Stage.ACCOUNT_LOAD, start);
 
-        synchronized (senderId.intern()) {
-            if (hasSufficientBalance(amount, sender)) {
-                LOGGER.info("Insufficient balance: senderId={}, amount={}", senderId, amount);
-                return new SendPaymentResult(SuccessCode.FAILED, "Insufficient balance.");
-            }
+        if (hasSufficientBalance(amount, sender) && sender.isHot()) {
+            hotAccounts.fold(sender);
+        }
+        if (hasSufficientBalance(amount, sender)) {
+            LOGGER.debug("Insufficient balance: senderId={}, amount={}", senderId, amount);
+            return SendPaymentResult.INSUFFICIENT_BALANCE;
+        }
 
-            transferMoney(sender, recipient, amount);
-            saveTransaction(senderId, recipientId, amount, idempotencyKey);
-            sendToKafka(recipientId, amount);
+        transferMoney(sender, recipient, recipientHot, amount);
+        Transaction tx = saveTransaction(senderId, recipientId, amount, idempotencyKey);
+        enqueueNotification(tx);
 
-            return new SendPaymentResult(SuccessCode.SUCCESSFUL, "Payment is processed.");
-        }
+        return SendPaymentResult.PROCESSED;
+    }
+
+    private SendPaymentResult alreadyProcessed(String idempotencyKey) {
+        LOGGER.debug("Payment is already processed: idempotencyKey={}", idempotencyKey);
+        return SendPaymentResult.ALREADY_PROCESSED;
     }
 
-    private void sendToKafka(String recipientId, BigDecimal amount) {
+    /**
+     * @param recipientId {@code null} when the recipient is a hot account, which is credited without its lock
+     */
+    private void lockAccounts(String senderId, String recipientId) {
+        long start = System.nanoTime();
+        lockStrategy.lockAccounts(recipientId == null ? List.of(senderId) : List.of(senderId, recipientId));
+        metrics.lockAcquired(start);
+    }
+
+    private void enqueueNotification(Transaction tx) {
         if (kafkaEnabled) {
-            kafkaTemplate.send("transaction_notifications", recipientId, "You received: " + amount);
-            LOGGER.debug("Kafka message sent: recipientId={}, amount={}", recipientId, amount);
+            long start = System.nanoTime();
+            outboxRepo.save(new OutboxMessage(tx.getId()));
+            metrics.record(Stage.OUTBOX_ENQUEUE, start);
+            LOGGER.debug("Notification queued in outbox: transactionId={}", tx.getId());
         } else {
-            LOGGER.debug("Kafka is disabled, not sending message: recipientId={}, amount={}", recipientId, amount);
+            LOGGER.debug("Kafka is disabled, not queueing notification: transactionId={}", tx.getId());
         }
     }
 
-    private void saveTransaction(String senderId, String recipientId, BigDecimal amount, String idempotencyKey) {
+    private Transaction saveTransaction(String senderId, String recipientId, Money amount, String idempotencyKey) {
         Transaction tx = new Transaction();
         tx.setSenderId(senderId);
         tx.setRecipientId(recipientId);
         tx.setAmount(amount);
         tx.setIdempotencyKey(idempotencyKey);
+        long start = System.nanoTime();
         transactionRepo.save(tx);
+        metrics.record(Stage.PERSIST_TRANSACTION, start);
         LOGGER.debug("Transaction saved: {}", tx);
+        return tx;
     }
 
-    private boolean hasSufficientBalance(BigDecimal amount, Account sender) {
-        return sender.getBalance().compareTo(amount) < 0;
+    private boolean hasSufficientBalance(Money amount, Account sender) {
+        return sender.getBalance().isLessThan(amount);
     }
 
-    private void transferMoney(Account sender, Account recipient, BigDecimal amount) {
-        sender.setBalance(sender.getBalance().subtract(amount));
-        recipient.setBalance(recipient.getBalance().add(amount));
+    private void transferMoney(Account sender, Account recipient, boolean recipientHot, Money amount) {
+        sender.setBalance(sender.getBalance().minus(amount));
 
+        long start = System.nanoTime();
         accountRepo.save(sender);
-        accountRepo.save(recipient);
+        if (recipientHot) {
+            hotAccounts.credit(recipient.getId(), amount);
+        } else {
+            recipient.setBalance(recipient.getBalance().plus(amount));
+            accountRepo.save(recipient);
+        }
+        balanceCache.evictAfterCommit(List.of(sender.getId(), recipient.getId()));
+        metrics.record(Stage.PERSIST_ACCOUNTS, start);
         LOGGER.debug("Accounts balances updated: senderId={}, recipientId={}, amount={}", sender.getId(), recipient.getId(), amount);
     }
 
     public SendPaymentResult fallbackSendPayment(String senderId, String recipientId, BigDecimal amount, String idempotencyKey, Throwable ex) {
+        if (ex instanceof ServiceBusyException busy) {
+            throw busy;
+        }
         LOGGER.error("Fallback triggered for payment: sender={}, recipient={}, amount={}, idempotencyKey={}, error={}",
                 senderId, recipientId, amount, idempotencyKey, ex.getMessage());
-        return new SendPaymentResult(SuccessCode.FAILED, "Payment processing failed. Please try again later.");
+        metrics.recordFallback("send", ex);
+        metrics.recordResult(SendPaymentResult.PROCESSING_FAILED);
+        return SendPaymentResult.PROCESSING_FAILED;
+    }
+
+    public CompletableFuture<SendPaymentResult> fallbackSendPaymentAsync(String senderId, String recipientId, BigDecimal amount,
+                                                                        String idempotencyKey, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof ServiceBusyException busy) {
+            return CompletableFuture.failedFuture(busy);
+        }
+        return CompletableFuture.completedFuture(fallbackSendPayment(senderId, recipientId, amount, idempotencyKey, cause));
+    }
+
+    public List<SendPaymentResult> fallbackSendPayments(List<SendPaymentRequest> requests, Throwable ex) {
+        if (ex instanceof ServiceBusyException busy) {
+            throw busy;
+        }
+        LOGGER.error("Fallback triggered for payment batch: size={}, error={}", requests.size(), ex.getMessage());
+        metrics.recordFallback("send_batch", ex);
+        requests.forEach(request -> metrics.recordResult(SendPaymentResult.PROCESSING_FAILED));
+        return requests.stream().map(request -> SendPaymentResult.PROCESSING_FAILED).toList();
     }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a payment is rejected because the service is at capacity. The client may retry after
+ * {@link #getRetryAfter()}.
+ */
+public class ServiceBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,67 @@
+package hu.bergerdenes.instantpayment.service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransferOutcome;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+
+/**
+ * Executes the whole payment as one conditional SQL statement, without a Hibernate session or explicit
+ * transaction. Requires Postgres.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "sql")
+public class SqlPaymentEngine implements PaymentEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SqlPaymentEngine.class);
+
+    private final AccountRepository accountRepo;
+
+    private final BalanceCache balanceCache;
+
+    private final boolean kafkaEnabled;
+
+    public SqlPaymentEngine(AccountRepository accountRepo, BalanceCache balanceCache, @Value("${kafka.enabled}") boolean kafkaEnabled) {
+        this.accountRepo = accountRepo;
+        this.balanceCache = balanceCache;
+        this.kafkaEnabled = kafkaEnabled;
+    }
+
+    @Override
+    public SendPaymentResult sendPayment(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        TransferOutcome outcome = accountRepo.transfer(senderId, recipientId, amount.toBigDecimal(), idempotencyKey, kafkaEnabled);
+        switch (outcome) {
+            case TRANSFERRED -> {
+                balanceCache.evictAfterCommit(List.of(senderId, recipientId));
+                LOGGER.debug("Payment processed: senderId={}, recipientId={}, amount={}", senderId, recipientId, amount);
+                return SendPaymentResult.PROCESSED;
+            }
+            case DUPLICATE -> {
+                LOGGER.debug("Payment is already processed: idempotencyKey={}", idempotencyKey);
+                return SendPaymentResult.ALREADY_PROCESSED;
+            }
+            case SENDER_NOT_FOUND -> {
+                LOGGER.debug("Sender account not found: senderId={}", senderId);
+                return SendPaymentResult.SENDER_NOT_FOUND;
+            }
+            case RECIPIENT_NOT_FOUND -> {
+                LOGGER.debug("Recipient account not found: recipientId={}", recipientId);
+                return SendPaymentResult.RECIPIENT_NOT_FOUND;
+            }
+            default -> {
+                LOGGER.debug("Insufficient balance: senderId={}, amount={}", senderId, amount);
+                return SendPaymentResult.INSUFFICIENT_BALANCE;
+            }
+        }
+    }
+
+}
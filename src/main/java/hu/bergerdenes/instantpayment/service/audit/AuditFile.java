@@ -0,0 +1,178 @@
+package hu.bergerdenes.instantpayment.service.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+
+/**
+ * Audit events as JSON lines in {@code payment-audit.log}. Lines are collected in a buffer and written when it is
+ * full or on {@link #flush()}; once the file reaches its maximum size it is renamed to {@code payment-audit.1.log},
+ * older files move up by one and the oldest beyond the maximum count is deleted. Only used by the audit thread.
+ */
+final class AuditFile implements Closeable {
+
+    static final String FILE_NAME = "payment-audit.log";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final Path directory;
+
+    private final long maxFileSize;
+
+    private final int maxFiles;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final StringBuilder line = new StringBuilder(512);
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private FileChannel channel;
+
+    private long size;
+
+    /**
+     * @param maxFiles rolled files kept besides the current one
+     */
+    AuditFile(Path directory, long maxFileSize, int maxFiles) throws IOException {
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * @param successCode the outcome, {@code null} if the payment failed with an exception
+     */
+    void append(long timestampMillis, String senderId, String recipientId, long amount, String idempotencyKey,
+                SuccessCode successCode, String message, long durationNanos) throws IOException {
+        line.setLength(0);
+        line.append("{\"timestamp\":\"");
+        DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(timestampMillis), line);
+        line.append("\",\"senderId\":");
+        appendString(senderId);
+        line.append(",\"recipientId\":");
+        appendString(recipientId);
+        line.append(",\"amount\":");
+        appendAmount(amount);
+        line.append(",\"idempotencyKey\":");
+        appendString(idempotencyKey);
+        line.append(",\"outcome\":\"").append(successCode == null ? "ERROR" : successCode.name());
+        line.append("\",\"message\":");
+        appendString(message);
+        line.append(",\"durationMicros\":").append(durationNanos / 1000).append("}\n");
+
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            write();
+        }
+    }
+
+    /**
+     * Writes the buffered lines and rolls the file if it is full. Lines are never split across files.
+     */
+    void flush() throws IOException {
+        write();
+        if (size >= maxFileSize) {
+            roll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        write();
+        channel.close();
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            size += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        Files.deleteIfExists(rolled(maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            if (Files.exists(rolled(i))) {
+                Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(directory.resolve(FILE_NAME), rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(directory.resolve(FILE_NAME));
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(directory.resolve(FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    private Path rolled(int index) {
+        return directory.resolve("payment-audit." + index + ".log");
+    }
+
+    private void appendAmount(long minorUnits) {
+        if (minorUnits < 0) {
+            line.append('-');
+        }
+        long abs = Math.abs(minorUnits);
+        long cents = abs % 100;
+        line.append(abs / 100).append('.').append(cents < 10 ? "0" : "").append(cents);
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+}
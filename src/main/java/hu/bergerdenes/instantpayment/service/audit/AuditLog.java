@@ -0,0 +1,249 @@
+package hu.bergerdenes.instantpayment.service.audit;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import jakarta.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+
+/**
+ * Structured audit trail of payments, kept off the request path. A payment thread claims a slot of a preallocated
+ * ring buffer and copies a fixed set of fields into it, without allocating or formatting anything; the
+ * {@code payment-audit} thread encodes the published slots in order and appends them in batches to an
+ * {@link AuditFile}. When the ring is full, the {@code payment.audit.overflow} policy either makes the payment
+ * thread wait for room or drops the event and counts it in {@code payment.audit.dropped}.
+ */
+@Component
+public class AuditLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final int MAX_BATCH = 1024;
+
+    enum Overflow {
+        /**
+         * Wait until the audit thread makes room, so no event is lost.
+         */
+        BLOCK,
+        /**
+         * Drop the event and count it, so payments never wait for the audit trail.
+         */
+        DROP
+    }
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final long maxFileSize;
+
+    private final int maxFiles;
+
+    private final Overflow overflow;
+
+    private final long flushIntervalNanos;
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    /**
+     * Sequence of the event each slot holds, once its fields are written.
+     */
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    private final Counter dropped;
+
+    /**
+     * Next sequence the audit thread reads; slots before it may be claimed again.
+     */
+    private volatile long consumed;
+
+    private volatile boolean running;
+
+    private volatile Thread writer;
+
+    public AuditLog(@Value("${payment.audit.enabled}") boolean enabled,
+                    @Value("${payment.audit.directory}") Path directory,
+                    @Value("${payment.audit.buffer-size}") int bufferSize,
+                    @Value("${payment.audit.overflow}") String overflow,
+                    @Value("${payment.audit.max-file-size}") DataSize maxFileSize,
+                    @Value("${payment.audit.max-files}") int maxFiles,
+                    @Value("${payment.audit.flush-interval}") Duration flushInterval,
+                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxFiles = maxFiles;
+        this.overflow = Overflow.valueOf(overflow.toUpperCase(Locale.ROOT));
+        this.flushIntervalNanos = flushInterval.toNanos();
+        int capacity = enabled ? Math.max(2, Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1) : 0;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.dropped = Counter.builder("payment.audit.dropped")
+                .description("Audit events dropped because the audit buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("payment.audit.backlog", this, audit -> audit.claimed.get() - audit.consumed)
+                .description("Audit events waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        AuditFile file = new AuditFile(directory, maxFileSize, maxFiles);
+        running = true;
+        writer = Thread.ofPlatform().name("payment-audit").daemon(true).start(() -> writeLoop(file));
+        LOGGER.info("Audit log started: directory={}, bufferSize={}, overflow={}", directory, slots.length, overflow);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            writer.join(Duration.ofSeconds(10).toMillis());
+        }
+    }
+
+    /**
+     * Records the outcome of a payment.
+     *
+     * @param amount in minor units
+     * @param result {@code null} if the payment failed with an exception
+     * @param startNanos {@link System#nanoTime()} when the payment started
+     */
+    public void record(String senderId, String recipientId, long amount, String idempotencyKey, SendPaymentResult result,
+                       long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                // nobody makes room before the start, after the stop or once writing failed
+                if (overflow == Overflow.DROP || !running) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(1000);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) (sequence & mask);
+        Slot slot = slots[index];
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.senderId = senderId;
+        slot.recipientId = recipientId;
+        slot.amount = amount;
+        slot.idempotencyKey = idempotencyKey;
+        slot.successCode = result == null ? null : result.successCode();
+        slot.message = result == null ? null : result.message();
+        slot.durationNanos = System.nanoTime() - startNanos;
+        published.set(index, sequence);
+    }
+
+    public long getDropped() {
+        return (long) dropped.count();
+    }
+
+    private void writeLoop(AuditFile file) {
+        try (file) {
+            while (true) {
+                boolean stopping = !running;
+                int written = drain(file);
+                if (written == MAX_BATCH) {
+                    continue;
+                }
+                file.flush();
+                if (stopping && consumed == claimed.get()) {
+                    return;
+                }
+                if (written == 0) {
+                    LockSupport.parkNanos(this, flushIntervalNanos);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            running = false;
+            LOGGER.error("Audit log failed, events are no longer written: {}", e.getMessage(), e);
+        }
+    }
+
+    private int drain(AuditFile file) throws IOException {
+        long next = consumed;
+        int count = 0;
+        while (count < MAX_BATCH) {
+            int index = (int) (next & mask);
+            if (published.get(index) != next) {
+                break;
+            }
+            Slot slot = slots[index];
+            file.append(slot.timestampMillis, slot.senderId, slot.recipientId, slot.amount, slot.idempotencyKey,
+                    slot.successCode, slot.message, slot.durationNanos);
+            slot.clear();
+            next++;
+            count++;
+        }
+        consumed = next;
+        return count;
+    }
+
+    private static final class Slot {
+
+        private long timestampMillis;
+
+        private String senderId;
+
+        private String recipientId;
+
+        private long amount;
+
+        private String idempotencyKey;
+
+        private SuccessCode successCode;
+
+        private String message;
+
+        private long durationNanos;
+
+        private void clear() {
+            senderId = null;
+            recipientId = null;
+            idempotencyKey = null;
+            message = null;
+        }
+    }
+
+}
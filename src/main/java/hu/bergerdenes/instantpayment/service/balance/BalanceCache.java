@@ -0,0 +1,93 @@
+package hu.bergerdenes.instantpayment.service.balance;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+
+/**
+ * Near cache of account balances. A miss is loaded in a read-only transaction, which goes to the read replica when
+ * one is configured, and concurrent misses of the same account share one load. Payments evict the accounts they
+ * changed once their transaction commits; the TTL bounds how stale a balance can get otherwise, e.g. through
+ * replica lag, the ledger engine's write-behind or another instance.
+ */
+@Component
+public class BalanceCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BalanceCache.class);
+
+    private final Cache<String, Money> balances;
+
+    private final AccountRepository accountRepo;
+
+    private final HotAccounts hotAccounts;
+
+    private final TransactionTemplate readOnlyTransaction;
+
+    public BalanceCache(AccountRepository accountRepo, HotAccounts hotAccounts, PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry,
+                        @Value("${payment.balance.cache.max-size}") long maxSize,
+                        @Value("${payment.balance.cache.ttl}") Duration ttl) {
+        this.accountRepo = accountRepo;
+        this.hotAccounts = hotAccounts;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "balance");
+    }
+
+    public Optional<Money> get(String accountId) {
+        return Optional.ofNullable(balances.get(accountId, this::load));
+    }
+
+    /**
+     * Evicts the accounts when the current transaction commits, or right away outside of a transaction.
+     */
+    public void evictAfterCommit(Collection<String> accountIds) {
+        List<String> ids = List.copyOf(accountIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(ids);
+                }
+            });
+        } else {
+            evict(ids);
+        }
+    }
+
+    private void evict(Collection<String> accountIds) {
+        balances.invalidateAll(accountIds);
+    }
+
+    private Money load(String accountId) {
+        Money balance = readOnlyTransaction.execute(status -> accountRepo.findById(accountId)
+                .map(hotAccounts::totalBalance)
+                .orElse(null));
+        LOGGER.debug("Balance loaded: accountId={}, balance={}", accountId, balance);
+        return balance;
+    }
+
+}
@@ -0,0 +1,205 @@
+package hu.bergerdenes.instantpayment.service.groupcommit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.BatchPaymentProcessor;
+import hu.bergerdenes.instantpayment.service.PaymentEngine;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+
+/**
+ * Collects concurrent payments for a short window and commits them together in one database transaction, so the
+ * commit cost is shared by the whole group. Every caller gets its own result; if the group transaction fails the
+ * payments are retried one by one so a single bad item can not fail the others. A full queue, or a payment not
+ * committed within the timeout, is rejected as busy; the latter may still be committed, which a retry with the same
+ * idempotency key finds.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "group-commit")
+public class GroupCommitPaymentEngine implements PaymentEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitPaymentEngine.class);
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final BatchPaymentProcessor batchProcessor;
+
+    private final TransactionRepository transactionRepo;
+
+    private final TransactionOperations transactionOperations;
+
+    private final BlockingQueue<PendingPayment> queue;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final Duration timeout;
+
+    private final Duration retryAfter;
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    public GroupCommitPaymentEngine(BatchPaymentProcessor batchProcessor, TransactionRepository transactionRepo,
+                                    TransactionOperations transactionOperations,
+                                    @Value("${payment.group-commit.window}") Duration window,
+                                    @Value("${payment.group-commit.max-batch-size}") int maxBatchSize,
+                                    @Value("${payment.group-commit.queue-capacity}") int queueCapacity,
+                                    @Value("${payment.group-commit.timeout}") Duration timeout,
+                                    @Value("${payment.group-commit.retry-after}") Duration retryAfter) {
+        this.batchProcessor = batchProcessor;
+        this.transactionRepo = transactionRepo;
+        this.transactionOperations = transactionOperations;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.timeout = timeout;
+        this.retryAfter = retryAfter;
+        this.thread = Thread.ofPlatform().name("group-commit").daemon(true).start(this::run);
+        LOGGER.info("Group commit engine started: window={}, maxBatchSize={}", window, maxBatchSize);
+    }
+
+    @Override
+    public SendPaymentResult sendPayment(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        try {
+            return submit(senderId, recipientId, amount, idempotencyKey).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Interrupted while waiting for group commit.", retryAfter);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Group commit failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            LOGGER.warn("Payment rejected, group commit timed out: idempotencyKey={}", idempotencyKey);
+            throw new ServiceBusyException("Service is busy. Please try again later.", retryAfter);
+        }
+    }
+
+    /**
+     * The {@link BatchPaymentProcessor} takes the permits inside the group transaction.
+     */
+    @Override
+    public boolean checksVelocityLimits() {
+        return true;
+    }
+
+    public CompletableFuture<SendPaymentResult> submit(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        SendPaymentRequest request = new SendPaymentRequest();
+        request.setSenderId(senderId);
+        request.setRecipientId(recipientId);
+        request.setAmount(amount.toBigDecimal());
+        request.setIdempotencyKey(idempotencyKey);
+        PendingPayment pending = new PendingPayment(request, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            LOGGER.warn("Payment rejected, group commit queue is full");
+            return CompletableFuture.failedFuture(new ServiceBusyException("Service is busy. Please try again later.", retryAfter));
+        }
+        return pending.result();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        thread.join(SHUTDOWN_TIMEOUT.toMillis());
+        LOGGER.info("Group commit engine stopped");
+    }
+
+    private void run() {
+        List<PendingPayment> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPayment first = queue.poll(windowNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingPayment next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(p -> p.result().completeExceptionally(new IllegalStateException("Group commit interrupted")));
+                LOGGER.warn("Group commit interrupted, {} queued payments not processed", queue.size());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingPayment> batch) {
+        List<SendPaymentRequest> requests = new ArrayList<>(batch.size());
+        batch.forEach(p -> requests.add(p.request()));
+        try {
+            List<SendPaymentResult> results = transactionOperations.execute(status -> batchProcessor.process(requests));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+            LOGGER.debug("Group committed: size={}", batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                completeSingle(batch.get(0), e);
+                return;
+            }
+            LOGGER.warn("Group commit of {} payments failed, committing them one by one: {}", batch.size(), e.getMessage());
+            for (PendingPayment pending : batch) {
+                try {
+                    SendPaymentResult result = transactionOperations.execute(status -> batchProcessor.process(List.of(pending.request())).get(0));
+                    pending.result().complete(result);
+                } catch (RuntimeException single) {
+                    completeSingle(pending, single);
+                }
+            }
+        }
+    }
+
+    private void completeSingle(PendingPayment pending, RuntimeException e) {
+        String idempotencyKey = pending.request().getIdempotencyKey();
+        if (e instanceof DataIntegrityViolationException && transactionRepo.findByIdempotencyKey(idempotencyKey).isPresent()) {
+            LOGGER.debug("Payment is already processed: idempotencyKey={}", idempotencyKey);
+            pending.result().complete(SendPaymentResult.ALREADY_PROCESSED);
+        } else {
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private record PendingPayment(SendPaymentRequest request, CompletableFuture<SendPaymentResult> result) {
+    }
+
+}
@@ -0,0 +1,149 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import hu.bergerdenes.instantpayment.dto.StatementLine;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+
+/**
+ * Writes an account statement with a running balance straight to an output stream. The opening balance is the
+ * current balance minus the payments made since the start of the statement, read in the same snapshot as the
+ * payments themselves, and the rows are streamed from a JDBC cursor, so memory use is constant.
+ */
+@Service
+public class StatementExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementExporter.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "transaction_id,timestamp,direction,counterparty_id,amount,balance\n";
+
+    private final AccountRepository accountRepo;
+
+    private final TransactionRepository transactionRepo;
+
+    private final HotAccounts hotAccounts;
+
+    private final ObjectWriter lineWriter;
+
+    public StatementExporter(AccountRepository accountRepo, TransactionRepository transactionRepo, HotAccounts hotAccounts,
+                             ObjectMapper objectMapper) {
+        this.accountRepo = accountRepo;
+        this.transactionRepo = transactionRepo;
+        this.hotAccounts = hotAccounts;
+        this.lineWriter = objectMapper.writerFor(StatementLine.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the account does not exist, before anything is written
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public int export(String accountId, Instant from, Instant to, StatementFormat format, OutputStream out) throws IOException {
+        Account account = accountRepo.findById(accountId).orElseThrow(() -> new IllegalArgumentException("Account not found."));
+        Money opening = hotAccounts.totalBalance(account).minus(Money.of(transactionRepo.netChangeSince(accountId, from)));
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == StatementFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        writer.flush();
+        RunningBalance running = new RunningBalance(accountId, opening);
+        try {
+            transactionRepo.streamStatement(accountId, from, to, tx -> {
+                try {
+                    write(running.apply(tx), format, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        LOGGER.debug("Statement exported: accountId={}, lines={}", accountId, running.lines);
+        return running.lines;
+    }
+
+    private void write(StatementLine line, StatementFormat format, Writer writer) throws IOException {
+        if (format == StatementFormat.NDJSON) {
+            lineWriter.writeValue(writer, line);
+        } else {
+            writer.write(Long.toString(line.transactionId()));
+            writer.write(',');
+            writer.write(line.timestamp().toString());
+            writer.write(',');
+            writer.write(line.direction());
+            writer.write(',');
+            writer.write(csvField(line.counterpartyId()));
+            writer.write(',');
+            writer.write(line.amount().toPlainString());
+            writer.write(',');
+            writer.write(line.balance().toPlainString());
+        }
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static final class RunningBalance {
+
+        private final String accountId;
+
+        private Money balance;
+
+        private int lines;
+
+        private RunningBalance(String accountId, Money opening) {
+            this.accountId = accountId;
+            this.balance = opening;
+        }
+
+        private StatementLine apply(Transaction tx) {
+            String direction;
+            String counterparty;
+            if (!tx.getSenderId().equals(accountId)) {
+                direction = "CREDIT";
+                counterparty = tx.getSenderId();
+                balance = balance.plus(tx.getAmount());
+            } else if (!tx.getRecipientId().equals(accountId)) {
+                direction = "DEBIT";
+                counterparty = tx.getRecipientId();
+                balance = balance.minus(tx.getAmount());
+            } else {
+                direction = "SELF";
+                counterparty = accountId;
+            }
+            lines++;
+            return new StatementLine(tx.getId(), tx.getTimestamp(), direction, counterparty,
+                    tx.getAmount().toBigDecimal(), balance.toBigDecimal());
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+public enum StatementFormat {
+
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    StatementFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+}
@@ -0,0 +1,115 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import hu.bergerdenes.instantpayment.dto.TransactionHistoryPage;
+import hu.bergerdenes.instantpayment.dto.TransactionView;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Keyset-paginated history of an account. The sent and received sides are read separately, each with one index
+ * range scan of at most {@code limit + 1} rows starting at the cursor, and merged in memory, so the cost of a page
+ * does not depend on how deep into the history it is.
+ */
+@Service
+public class TransactionHistoryService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionHistoryService.class);
+
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator.comparing(Transaction::getTimestamp)
+            .thenComparing(Transaction::getId)
+            .reversed();
+
+    private final TransactionRepository transactionRepo;
+
+    public TransactionHistoryService(TransactionRepository transactionRepo) {
+        this.transactionRepo = transactionRepo;
+    }
+
+    /**
+     * @param cursor {@code nextCursor} of the previous page, {@code null} for the first page
+     */
+    @Transactional(readOnly = true)
+    public TransactionHistoryPage history(String accountId, String cursor, int limit) {
+        Cursor after = cursor == null ? Cursor.FIRST : Cursor.decode(cursor);
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        List<Transaction> sent = transactionRepo.findSentBefore(accountId, after.timestamp(), after.id(), pageable);
+        List<Transaction> received = transactionRepo.findReceivedBefore(accountId, after.timestamp(), after.id(), pageable);
+
+        List<Transaction> merged = merge(sent, received, limit + 1);
+        boolean hasMore = merged.size() > limit;
+        List<TransactionView> page = new ArrayList<>(Math.min(merged.size(), limit));
+        for (int i = 0; i < merged.size() && i < limit; i++) {
+            page.add(TransactionView.from(merged.get(i)));
+        }
+        String nextCursor = hasMore ? Cursor.of(merged.get(limit - 1)).encode() : null;
+        LOGGER.debug("Transaction history page read: accountId={}, size={}, hasMore={}", accountId, page.size(), hasMore);
+        return new TransactionHistoryPage(page, nextCursor);
+    }
+
+    /**
+     * Merges two newest-first lists, keeping a payment to self only once.
+     */
+    private static List<Transaction> merge(List<Transaction> left, List<Transaction> right, int max) {
+        List<Transaction> merged = new ArrayList<>(Math.min(left.size() + right.size(), max));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < max && (i < left.size() || j < right.size())) {
+            if (j == right.size()) {
+                merged.add(left.get(i++));
+            } else if (i == left.size()) {
+                merged.add(right.get(j++));
+            } else {
+                int order = NEWEST_FIRST.compare(left.get(i), right.get(j));
+                if (order == 0) {
+                    merged.add(left.get(i++));
+                    j++;
+                } else {
+                    merged.add(order < 0 ? left.get(i++) : right.get(j++));
+                }
+            }
+        }
+        return merged;
+    }
+
+    record Cursor(Instant timestamp, long id) {
+
+        static final Cursor FIRST = new Cursor(Instant.parse("9999-12-31T23:59:59Z"), Long.MAX_VALUE);
+
+        static Cursor of(Transaction tx) {
+            return new Cursor(tx.getTimestamp(), tx.getId());
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split(":");
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), Long.parseLong(parts[2]));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+
+        String encode() {
+            String raw = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+}
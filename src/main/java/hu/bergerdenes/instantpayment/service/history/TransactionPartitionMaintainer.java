@@ -0,0 +1,114 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the monthly partitions of {@code transaction} in shape when the table is partitioned
+ * ({@code database/partitioning.sql}, Postgres only): creates the partitions of the coming months ahead of time and
+ * detaches or drops those older than the retention. A detached partition is an ordinary table that can be archived
+ * and dropped outside of the application. Idempotency keys, which the partitioned table can not keep unique by itself,
+ * are expired together with their partitions. The net of a partition's transactions is folded into the opening
+ * balances of the reconciliation in the same database transaction as the detach, so the accounts still reconcile
+ * against the transactions that are left.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.history.partitioning.enabled", havingValue = "true")
+public class TransactionPartitionMaintainer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionPartitionMaintainer.class);
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String PARTITION_PREFIX = "transaction_p";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int monthsAhead;
+
+    private final int retentionMonths;
+
+    private final boolean drop;
+
+    public TransactionPartitionMaintainer(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                          @Value("${payment.history.partitioning.months-ahead}") int monthsAhead,
+                                          @Value("${payment.history.partitioning.retention-months}") int retentionMonths,
+                                          @Value("${payment.history.partitioning.archive}") String archive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.drop = "drop".equals(archive);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${payment.history.partitioning.cron}", zone = "UTC")
+    public void maintain() {
+        try {
+            YearMonth current = YearMonth.now(ZoneOffset.UTC);
+            for (int i = 0; i <= monthsAhead; i++) {
+                createPartition(current.plusMonths(i));
+            }
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            for (String partition : partitions()) {
+                if (partition.startsWith(PARTITION_PREFIX)
+                        && partition.substring(PARTITION_PREFIX.length()).compareTo(oldestKept.format(PARTITION_SUFFIX)) < 0) {
+                    archivePartition(partition);
+                }
+            }
+            int purged = jdbcTemplate.update("DELETE FROM transaction_idempotency_key WHERE created_at < ?",
+                    oldestKept.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC));
+            LOGGER.debug("Expired idempotency keys purged: count={}", purged);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Transaction partition maintenance failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + PARTITION_PREFIX + month.format(PARTITION_SUFFIX)
+                + " PARTITION OF transaction FOR VALUES FROM ('" + from + " 00:00:00+00') TO ('" + to + " 00:00:00+00')");
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i"
+                + " JOIN pg_class c ON c.oid = i.inhrelid"
+                + " JOIN pg_class p ON p.oid = i.inhparent"
+                + " WHERE p.relname = 'transaction' ORDER BY c.relname", String.class);
+    }
+
+    private void archivePartition(String partition) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int folded = jdbcTemplate.update("UPDATE account_baseline b SET opening_balance = b.opening_balance + n.net"
+                    + " FROM (SELECT account_id, SUM(amount) AS net FROM ("
+                    + "SELECT recipient_id AS account_id, amount FROM " + partition
+                    + " UNION ALL SELECT sender_id, -amount FROM " + partition + ") f GROUP BY account_id) n"
+                    + " WHERE b.account_id = n.account_id");
+            jdbcTemplate.execute("ALTER TABLE transaction DETACH PARTITION " + partition);
+            LOGGER.debug("Opening balances moved past partition {}: accounts={}", partition, folded);
+        });
+        if (drop) {
+            jdbcTemplate.execute("DROP TABLE " + partition);
+        }
+        LOGGER.info("Transaction partition {}: {}", drop ? "dropped" : "detached", partition);
+    }
+
+}
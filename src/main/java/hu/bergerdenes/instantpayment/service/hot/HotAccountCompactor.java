@@ -0,0 +1,75 @@
+package hu.bergerdenes.instantpayment.service.hot;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+
+/**
+ * Flags the configured accounts hot at startup and periodically folds the slots of every hot account into its own
+ * balance. Not active with the in-memory ledger, which owns the account balances while it runs.
+ */
+@Component
+@ConditionalOnExpression("'${payment.engine:jpa}' != 'ledger'")
+public class HotAccountCompactor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotAccountCompactor.class);
+
+    private final HotAccounts hotAccounts;
+
+    private final AccountRepository accountRepo;
+
+    private final AccountLockStrategy lockStrategy;
+
+    private final TransactionOperations transactionOperations;
+
+    private final List<String> configuredIds;
+
+    public HotAccountCompactor(HotAccounts hotAccounts, AccountRepository accountRepo, AccountLockStrategy lockStrategy,
+                               TransactionOperations transactionOperations,
+                               @Value("${payment.hot-accounts.ids:}") List<String> configuredIds) {
+        this.hotAccounts = hotAccounts;
+        this.accountRepo = accountRepo;
+        this.lockStrategy = lockStrategy;
+        this.transactionOperations = transactionOperations;
+        this.configuredIds = configuredIds;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void markConfiguredAccounts() {
+        for (String accountId : configuredIds) {
+            transactionOperations.executeWithoutResult(status -> {
+                lockStrategy.lockAccounts(List.of(accountId));
+                accountRepo.findByIdForUpdate(accountId).ifPresentOrElse(hotAccounts::markHot,
+                        () -> LOGGER.warn("Configured hot account does not exist: accountId={}", accountId));
+            });
+        }
+        hotAccounts.refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${payment.hot-accounts.compact-interval-ms}")
+    public void compact() {
+        try {
+            hotAccounts.refresh();
+            for (String accountId : hotAccounts.ids()) {
+                transactionOperations.executeWithoutResult(status -> {
+                    lockStrategy.lockAccounts(List.of(accountId));
+                    accountRepo.findByIdForUpdate(accountId).ifPresent(hotAccounts::fold);
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Hot account compaction failed, will retry: {}", e.getMessage());
+        }
+    }
+
+}
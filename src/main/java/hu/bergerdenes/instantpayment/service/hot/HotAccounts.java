@@ -0,0 +1,106 @@
+package hu.bergerdenes.instantpayment.service.hot;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.AccountSlot;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.AccountSlotRepository;
+
+/**
+ * Balance splitting for hot accounts. A credit to a hot account goes to one of its slots, chosen at random, with a
+ * single row update and without locking the account, so concurrent credits only collide when they pick the same
+ * slot. Debits use the account's own balance and fold the slots into it when that is not enough.
+ * All methods must run inside the caller's database transaction.
+ */
+@Component
+public class HotAccounts {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotAccounts.class);
+
+    private final AccountRepository accountRepo;
+
+    private final AccountSlotRepository slotRepo;
+
+    private final int slots;
+
+    private volatile Set<String> hotIds = Set.of();
+
+    public HotAccounts(AccountRepository accountRepo, AccountSlotRepository slotRepo, @Value("${payment.hot-accounts.slots}") int slots) {
+        this.accountRepo = accountRepo;
+        this.slotRepo = slotRepo;
+        this.slots = slots;
+    }
+
+    public boolean isHot(String accountId) {
+        return hotIds.contains(accountId);
+    }
+
+    public Set<String> ids() {
+        return hotIds;
+    }
+
+    public void refresh() {
+        List<String> ids = accountRepo.findHotAccountIds();
+        hotIds = ids == null ? Set.of() : Set.copyOf(ids);
+    }
+
+    public void credit(String accountId, Money amount) {
+        int slot = ThreadLocalRandom.current().nextInt(slots);
+        if (slotRepo.credit(accountId, slot, amount.toBigDecimal()) != 1) {
+            throw new IllegalStateException("Slot " + slot + " of hot account " + accountId + " does not exist");
+        }
+    }
+
+    /**
+     * Moves the slot balances into the account's own balance. The caller must hold the account's lock.
+     *
+     * @return the amount moved
+     */
+    public Money fold(Account account) {
+        Money folded = Money.ZERO;
+        for (AccountSlot slot : slotRepo.findByAccountIdForUpdate(account.getId())) {
+            if (slot.getBalance().signum() != 0) {
+                folded = folded.plus(slot.getBalance());
+                slot.setBalance(Money.ZERO);
+            }
+        }
+        if (folded.signum() != 0) {
+            account.setBalance(account.getBalance().plus(folded));
+            LOGGER.debug("Hot account slots folded: accountId={}, amount={}", account.getId(), folded);
+        }
+        return folded;
+    }
+
+    /**
+     * The account's balance including its slots.
+     */
+    public Money totalBalance(Account account) {
+        return account.isHot() ? account.getBalance().plus(Money.of(slotRepo.sumBalance(account.getId()))) : account.getBalance();
+    }
+
+    /**
+     * Flags the account hot and creates its missing slots. The caller must hold the account's lock.
+     */
+    public void markHot(Account account) {
+        for (int i = 0; i < slots; i++) {
+            if (!slotRepo.existsById(new AccountSlot.Key(account.getId(), i))) {
+                slotRepo.save(new AccountSlot(account.getId(), i));
+            }
+        }
+        if (!account.isHot()) {
+            account.setHot(true);
+            accountRepo.save(account);
+            LOGGER.info("Account flagged hot: accountId={}, slots={}", account.getId(), slots);
+        }
+    }
+
+}
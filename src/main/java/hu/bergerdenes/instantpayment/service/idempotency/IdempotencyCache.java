@@ -0,0 +1,163 @@
+package hu.bergerdenes.instantpayment.service.idempotency;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Serves repeated idempotency keys from memory. Recent results are kept in a bounded TTL cache, concurrent
+ * requests with the same key wait for the one already running, and a Bloom filter of known keys lets brand-new
+ * keys skip the database lookup; the filter is rotated every warm-up window, see {@link RotatingBloomFilter}. The
+ * unique constraint on {@code transaction.idempotency_key} stays the final arbiter, e.g. for keys processed by
+ * another instance.
+ */
+@Component
+public class IdempotencyCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyCache.class);
+
+    private final Cache<String, SendPaymentResult> results;
+
+    private final ConcurrentMap<String, CompletableFuture<SendPaymentResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final RotatingBloomFilter knownKeys;
+
+    private final TransactionRepository transactionRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration warmUpWindow;
+
+    private volatile boolean warmedUp;
+
+    public IdempotencyCache(TransactionRepository transactionRepo, TransactionTemplate transactionTemplate,
+                            @Value("${payment.idempotency.cache.max-size}") long maxSize,
+                            @Value("${payment.idempotency.cache.ttl}") Duration ttl,
+                            @Value("${payment.idempotency.filter.expected-keys}") long expectedKeys,
+                            @Value("${payment.idempotency.filter.false-positive-rate}") double falsePositiveRate,
+                            @Value("${payment.idempotency.filter.warm-up-window}") Duration warmUpWindow) {
+        this.transactionRepo = transactionRepo;
+        this.transactionTemplate = transactionTemplate;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.knownKeys = new RotatingBloomFilter(expectedKeys, falsePositiveRate, warmUpWindow);
+        this.warmUpWindow = warmUpWindow;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Instant since = Instant.now().minus(warmUpWindow);
+        Long count = transactionTemplate.execute(status -> {
+            long loaded = 0;
+            try (Stream<String> keys = transactionRepo.streamIdempotencyKeysSince(since)) {
+                Iterator<String> it = keys.iterator();
+                while (it.hasNext()) {
+                    knownKeys.put(it.next());
+                    loaded++;
+                }
+            }
+            return loaded;
+        });
+        warmedUp = true;
+        LOGGER.info("Idempotency key filter warmed up: keys={}, since={}", count, since);
+    }
+
+    /**
+     * Returns {@code false} only if the key has certainly not been processed by this instance since the warm-up
+     * window, so the database lookup can be skipped. With more than the expected number of keys in a window, older
+     * keys of it may be forgotten earlier; the unique constraint still catches those.
+     */
+    public boolean mightBeProcessed(String idempotencyKey) {
+        return !warmedUp || knownKeys.mightContain(idempotencyKey);
+    }
+
+    /**
+     * Runs the payment unless its key has a cached result. A concurrent call with the same key waits for the running
+     * one. Repeated keys get the original failure, or "already processed" for an original success. A velocity limit
+     * rejection is not kept, so a retry with the same key is tried again once the sender is within its limits.
+     */
+    public SendPaymentResult execute(String idempotencyKey, Supplier<SendPaymentResult> payment) {
+        SendPaymentResult cached = results.getIfPresent(idempotencyKey);
+        if (cached != null) {
+            LOGGER.debug("Replaying payment result: idempotencyKey={}", idempotencyKey);
+            return replay(cached);
+        }
+
+        CompletableFuture<SendPaymentResult> own = new CompletableFuture<>();
+        CompletableFuture<SendPaymentResult> running = inFlight.putIfAbsent(idempotencyKey, own);
+        if (running != null) {
+            LOGGER.debug("Waiting for in-flight payment: idempotencyKey={}", idempotencyKey);
+            return replay(await(running));
+        }
+
+        try {
+            SendPaymentResult result = payment.get();
+            record(idempotencyKey, result);
+            own.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(idempotencyKey, own);
+        }
+    }
+
+    /**
+     * Returns what {@link #execute(String, Supplier)} would replay for the key, or {@code null} when it has no cached
+     * result, for payments processed outside of it.
+     */
+    public SendPaymentResult cachedResult(String idempotencyKey) {
+        SendPaymentResult cached = results.getIfPresent(idempotencyKey);
+        return cached == null ? null : replay(cached);
+    }
+
+    /**
+     * Records the result of a payment that was processed outside {@link #execute(String, Supplier)}.
+     */
+    public void record(String idempotencyKey, SendPaymentResult result) {
+        if (result.successCode() == SuccessCode.LIMIT_EXCEEDED) {
+            return;
+        }
+        results.put(idempotencyKey, result);
+        knownKeys.put(idempotencyKey);
+    }
+
+    private static SendPaymentResult await(CompletableFuture<SendPaymentResult> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static SendPaymentResult replay(SendPaymentResult original) {
+        return original.successCode() == SuccessCode.SUCCESSFUL ? SendPaymentResult.ALREADY_PROCESSED : original;
+    }
+
+}
@@ -0,0 +1,78 @@
+package hu.bergerdenes.instantpayment.service.idempotency;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Two generations of {@link BloomFilter}: keys are put into the current one and looked up in both. Once the current
+ * generation is older than the rotation interval or holds the expected number of keys, it becomes the previous one
+ * and the previous one is dropped, so the false positive rate stays near the configured one however many keys come.
+ * A key is remembered for at least one interval, unless more than the expected number of keys arrive within it.
+ */
+final class RotatingBloomFilter {
+
+    private final long expectedInsertions;
+
+    private final double falsePositiveRate;
+
+    private final long intervalNanos;
+
+    private final LongSupplier nanoClock;
+
+    private volatile Generation current;
+
+    private volatile Generation previous;
+
+    RotatingBloomFilter(long expectedInsertions, double falsePositiveRate, Duration interval) {
+        this(expectedInsertions, falsePositiveRate, interval, System::nanoTime);
+    }
+
+    RotatingBloomFilter(long expectedInsertions, double falsePositiveRate, Duration interval, LongSupplier nanoClock) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.intervalNanos = interval.toNanos();
+        this.nanoClock = nanoClock;
+        this.current = new Generation(new BloomFilter(expectedInsertions, falsePositiveRate), nanoClock.getAsLong());
+    }
+
+    void put(String key) {
+        Generation generation = current;
+        if (generation.insertions.incrementAndGet() > expectedInsertions
+                || nanoClock.getAsLong() - generation.createdNanos >= intervalNanos) {
+            generation = rotate(generation);
+            generation.insertions.incrementAndGet();
+        }
+        generation.filter.put(key);
+    }
+
+    boolean mightContain(String key) {
+        // current first: rotate() publishes the previous generation before the new current one
+        Generation newer = current;
+        Generation older = previous;
+        return newer.filter.mightContain(key) || older != null && older.filter.mightContain(key);
+    }
+
+    private synchronized Generation rotate(Generation full) {
+        if (current == full) {
+            previous = full;
+            current = new Generation(new BloomFilter(expectedInsertions, falsePositiveRate), nanoClock.getAsLong());
+        }
+        return current;
+    }
+
+    private static final class Generation {
+
+        private final BloomFilter filter;
+
+        private final long createdNanos;
+
+        private final AtomicLong insertions = new AtomicLong();
+
+        private Generation(BloomFilter filter, long createdNanos) {
+            this.filter = filter;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+}
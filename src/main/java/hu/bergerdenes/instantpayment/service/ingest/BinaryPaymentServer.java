@@ -0,0 +1,364 @@
+package hu.bergerdenes.instantpayment.service.ingest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.service.AdaptiveConcurrencyLimiter;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+
+/**
+ * TCP listener for partner systems sending a continuous stream of payments as length-prefixed {@link PaymentFrames}.
+ * One selector thread reads the frames of every connection, validates them like {@link SendPaymentRequest} and hands
+ * them to {@link PaymentService#sendPaymentAsync} through the {@link AdaptiveConcurrencyLimiter}; results are written
+ * back as they complete, correlated by the id of the payment frame. Each connection may have
+ * {@code payment.ingest.max-in-flight} payments in progress, including results not written yet, and is not read
+ * while it is at that limit, so a partner that sends faster than it is served, or does not read its results, is
+ * slowed down by TCP instead of queueing. Read and write buffers are pooled and frames are decoded in place.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.ingest.enabled", havingValue = "true")
+public class BinaryPaymentServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryPaymentServer.class);
+
+    private final PaymentService paymentService;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final Validator validator;
+
+    private final int port;
+
+    private final int maxInFlight;
+
+    private final BufferPool bufferPool;
+
+    /**
+     * Connections with results to write, filled by the threads completing payments.
+     */
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+    private final Set<Connection> connections = new HashSet<>();
+
+    private volatile boolean running = true;
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread selectorThread;
+
+    public BinaryPaymentServer(PaymentService paymentService, AdaptiveConcurrencyLimiter limiter, Validator validator,
+                               @Value("${payment.ingest.port}") int port,
+                               @Value("${payment.ingest.buffer-size}") DataSize bufferSize,
+                               @Value("${payment.ingest.max-in-flight}") int maxInFlight,
+                               @Value("${payment.ingest.pooled-buffers}") int pooledBuffers) {
+        int minBufferSize = PaymentFrames.LENGTH_BYTES + Math.max(PaymentFrames.MAX_PAYMENT_LENGTH, PaymentFrames.MAX_RESULT_LENGTH);
+        if (bufferSize.toBytes() < minBufferSize || bufferSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("payment.ingest.buffer-size must be at least " + minBufferSize + " bytes");
+        }
+        this.paymentService = paymentService;
+        this.limiter = limiter;
+        this.validator = validator;
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.bufferPool = new BufferPool((int) bufferSize.toBytes(), pooledBuffers);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = Thread.ofPlatform().name("payment-ingest").daemon(true).start(this::run);
+        LOGGER.info("Binary payment ingestion listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (selectorThread != null) {
+            selector.wakeup();
+            selectorThread.join(Duration.ofSeconds(10).toMillis());
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Connection flushed;
+                while ((flushed = flushes.poll()) != null) {
+                    flushed.flushScheduled.set(false);
+                    flushed.handle(false);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).handle(key.isReadable());
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Binary payment ingestion failed to accept: {}", e.getMessage());
+            }
+        }
+        new ArrayList<>(connections).forEach(Connection::close);
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warn("Closing binary payment ingestion failed: {}", e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            LOGGER.debug("Ingestion connection accepted: {}", connection.remote);
+        }
+    }
+
+    private void dispatch(Connection connection, PaymentFrames.Payment payment) {
+        long correlationId = payment.correlationId;
+        BigDecimal amount = BigDecimal.valueOf(payment.amount, 2);
+        String violations = validate(payment, amount);
+        if (violations != null) {
+            connection.complete(correlationId, PaymentFrames.FAILED, violations);
+            return;
+        }
+        AdaptiveConcurrencyLimiter.Permit permit;
+        try {
+            permit = limiter.acquire();
+        } catch (ServiceBusyException e) {
+            connection.complete(correlationId, PaymentFrames.BUSY, e.getMessage());
+            return;
+        }
+        CompletableFuture<SendPaymentResult> result;
+        try {
+            result = paymentService.sendPaymentAsync(payment.senderId, payment.recipientId, amount, payment.idempotencyKey);
+        } catch (RuntimeException e) {
+            permit.release(e);
+            LOGGER.warn("Ingested payment failed: correlationId={}, error={}", correlationId, e.getMessage());
+            connection.complete(correlationId, PaymentFrames.ERROR, SendPaymentResult.PROCESSING_FAILED.message());
+            return;
+        }
+        result.whenComplete((r, ex) -> {
+            permit.release(ex);
+            if (ex == null) {
+                connection.complete(correlationId, PaymentFrames.status(r.successCode()), r.message());
+            } else {
+                LOGGER.warn("Ingested payment failed: correlationId={}, error={}", correlationId, ex.getMessage());
+                connection.complete(correlationId, PaymentFrames.ERROR, SendPaymentResult.PROCESSING_FAILED.message());
+            }
+        });
+    }
+
+    /**
+     * @return the violations in the format of the batch endpoints, or {@code null} if the payment is valid
+     */
+    private String validate(PaymentFrames.Payment payment, BigDecimal amount) {
+        StringBuilder errors = null;
+        errors = appendViolations(errors, validator.validateValue(SendPaymentRequest.class, "senderId", payment.senderId));
+        errors = appendViolations(errors, validator.validateValue(SendPaymentRequest.class, "recipientId", payment.recipientId));
+        errors = appendViolations(errors, validator.validateValue(SendPaymentRequest.class, "amount", amount));
+        errors = appendViolations(errors, validator.validateValue(SendPaymentRequest.class, "idempotencyKey", payment.idempotencyKey));
+        return errors == null ? null : errors.toString();
+    }
+
+    private static StringBuilder appendViolations(StringBuilder errors, Set<ConstraintViolation<SendPaymentRequest>> violations) {
+        if (violations.isEmpty()) {
+            return errors;
+        }
+        StringBuilder appended = errors == null ? new StringBuilder("Validation error(s): ") : errors;
+        violations.forEach(v -> appended.append(v.getPropertyPath())
+                .append(" - ")
+                .append(v.getMessage())
+                .append("; "));
+        return appended;
+    }
+
+    private record Result(long correlationId, byte status, String message) {
+    }
+
+    /**
+     * State of one partner connection. Everything but {@link #complete} runs on the selector thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+
+        private final Object remote;
+
+        private final ByteBuffer in = bufferPool.acquire();
+
+        private final ByteBuffer out = bufferPool.acquire();
+
+        private final byte[] scratch = new byte[255];
+
+        private final PaymentFrames.Payment payment = new PaymentFrames.Payment();
+
+        private final Queue<Result> results = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+        private SelectionKey key;
+
+        /**
+         * Payments read whose result is not in the write buffer yet.
+         */
+        private int inFlight;
+
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remote = channel.getRemoteAddress();
+        }
+
+        private void handle(boolean readable) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (readable && channel.read(in) < 0) {
+                    LOGGER.debug("Ingestion connection closed by peer: {}, inFlight={}", remote, inFlight);
+                    close();
+                    return;
+                }
+                readFrames();
+                flush();
+                // results written above free room for frames already buffered
+                readFrames();
+                key.interestOps((inFlight < maxInFlight && in.hasRemaining() ? SelectionKey.OP_READ : 0)
+                        | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Ingestion connection {} closed: {}", remote, e.getMessage());
+                close();
+            }
+        }
+
+        private void readFrames() throws ProtocolException {
+            in.flip();
+            try {
+                while (inFlight < maxInFlight && in.remaining() >= PaymentFrames.LENGTH_BYTES) {
+                    int length = in.getInt(in.position());
+                    if (length < PaymentFrames.MIN_PAYMENT_LENGTH || length > PaymentFrames.MAX_PAYMENT_LENGTH) {
+                        throw new ProtocolException("Invalid payment frame length " + length);
+                    }
+                    if (in.remaining() < PaymentFrames.LENGTH_BYTES + length) {
+                        break;
+                    }
+                    in.position(in.position() + PaymentFrames.LENGTH_BYTES);
+                    if (!PaymentFrames.decodePayment(in, length, payment, scratch)) {
+                        throw new ProtocolException("Malformed payment frame");
+                    }
+                    inFlight++;
+                    dispatch(this, payment);
+                }
+            } finally {
+                in.compact();
+            }
+        }
+
+        private void flush() throws IOException {
+            while (true) {
+                Result result;
+                while ((result = results.peek()) != null
+                        && PaymentFrames.encodeResult(out, result.correlationId, result.status, result.message)) {
+                    results.poll();
+                    inFlight--;
+                }
+                out.flip();
+                int written = channel.write(out);
+                out.compact();
+                if (written == 0 || results.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        private void complete(long correlationId, byte status, String message) {
+            if (closed) {
+                return;
+            }
+            results.add(new Result(correlationId, status, message));
+            if (flushScheduled.compareAndSet(false, true)) {
+                flushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Closing ingestion connection {} failed: {}", remote, e.getMessage());
+            }
+            bufferPool.release(in);
+            bufferPool.release(out);
+        }
+    }
+
+}
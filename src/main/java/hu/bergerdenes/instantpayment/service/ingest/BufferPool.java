@@ -0,0 +1,34 @@
+package hu.bergerdenes.instantpayment.service.ingest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Direct buffers of one size, handed back when their connection closes and reused by the next one. Only used by
+ * the selector thread.
+ */
+final class BufferPool {
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final ArrayDeque<ByteBuffer> pooled = new ArrayDeque<>();
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = pooled.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(bufferSize) : buffer.clear();
+    }
+
+    void release(ByteBuffer buffer) {
+        if (pooled.size() < maxPooled) {
+            pooled.push(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package hu.bergerdenes.instantpayment.service.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+
+/**
+ * Frames of the binary ingestion channel, big-endian, each preceded by the length of the rest of the frame (4 bytes).
+ * Payment: correlation id (8), amount in minor units (8), then sender id, recipient id and idempotency key, each an
+ * unsigned length (1) and UTF-8 bytes. Result: correlation id of the payment (8), status (1), then the message as an
+ * unsigned length (2) and at most {@value #MAX_MESSAGE_BYTES} bytes of UTF-8. Results are written as payments
+ * complete, not in request order.
+ */
+final class PaymentFrames {
+
+    static final int LENGTH_BYTES = 4;
+
+    static final int MIN_PAYMENT_LENGTH = 8 + 8 + 3;
+
+    static final int MAX_PAYMENT_LENGTH = MIN_PAYMENT_LENGTH + 3 * 255;
+
+    static final int MAX_MESSAGE_BYTES = 1024;
+
+    static final int MAX_RESULT_LENGTH = 8 + 1 + 2 + MAX_MESSAGE_BYTES;
+
+    static final byte SUCCESSFUL = 0;
+
+    static final byte FAILED = 1;
+
+    static final byte LIMIT_EXCEEDED = 2;
+
+    /**
+     * Rejected by the concurrency limiter, the payment was not attempted.
+     */
+    static final byte BUSY = 3;
+
+    /**
+     * Processing failed unexpectedly; the payment may or may not have been made, resend it with the same key.
+     */
+    static final byte ERROR = 4;
+
+    private static final int MAX_CACHED_MESSAGES = 256;
+
+    private static final byte[] NO_MESSAGE = new byte[0];
+
+    /**
+     * Encoded result messages; most results carry one of a few fixed messages.
+     */
+    private static final Map<String, byte[]> MESSAGES = new ConcurrentHashMap<>();
+
+    private PaymentFrames() {
+    }
+
+    /**
+     * A decoded payment, reused for every frame of a connection.
+     */
+    static final class Payment {
+
+        long correlationId;
+
+        long amount;
+
+        String senderId;
+
+        String recipientId;
+
+        String idempotencyKey;
+    }
+
+    /**
+     * Decodes the payment frame body of {@code length} bytes at the buffer position into {@code payment}, using
+     * {@code scratch} of at least 255 bytes for the strings. Moves the position past the frame.
+     *
+     * @return {@code false} if the fields do not add up to the frame length
+     */
+    static boolean decodePayment(ByteBuffer buffer, int length, Payment payment, byte[] scratch) {
+        int end = buffer.position() + length;
+        payment.correlationId = buffer.getLong();
+        payment.amount = buffer.getLong();
+        payment.senderId = readString(buffer, end, scratch);
+        payment.recipientId = payment.senderId == null ? null : readString(buffer, end, scratch);
+        payment.idempotencyKey = payment.recipientId == null ? null : readString(buffer, end, scratch);
+        boolean valid = payment.idempotencyKey != null && buffer.position() == end;
+        buffer.position(end);
+        return valid;
+    }
+
+    private static String readString(ByteBuffer buffer, int end, byte[] scratch) {
+        if (buffer.position() >= end) {
+            return null;
+        }
+        int length = Byte.toUnsignedInt(buffer.get());
+        if (buffer.position() + length > end) {
+            return null;
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a payment frame, for clients of the channel.
+     */
+    static void encodePayment(ByteBuffer buffer, long correlationId, long amount, String senderId, String recipientId,
+                              String idempotencyKey) {
+        byte[] sender = senderId.getBytes(StandardCharsets.UTF_8);
+        byte[] recipient = recipientId.getBytes(StandardCharsets.UTF_8);
+        byte[] key = idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        if (sender.length > 255 || recipient.length > 255 || key.length > 255) {
+            throw new IllegalArgumentException("Fields of a payment frame are limited to 255 bytes");
+        }
+        buffer.putInt(MIN_PAYMENT_LENGTH + sender.length + recipient.length + key.length)
+                .putLong(correlationId)
+                .putLong(amount)
+                .put((byte) sender.length).put(sender)
+                .put((byte) recipient.length).put(recipient)
+                .put((byte) key.length).put(key);
+    }
+
+    /**
+     * Writes a result frame if it fits in the remaining space of the buffer.
+     *
+     * @return {@code false} if the buffer has no room for it, nothing is written then
+     */
+    static boolean encodeResult(ByteBuffer buffer, long correlationId, byte status, String message) {
+        byte[] bytes = message(message);
+        int length = 8 + 1 + 2 + bytes.length;
+        if (buffer.remaining() < LENGTH_BYTES + length) {
+            return false;
+        }
+        buffer.putInt(length)
+                .putLong(correlationId)
+                .put(status)
+                .putShort((short) bytes.length)
+                .put(bytes);
+        return true;
+    }
+
+    static byte status(SuccessCode successCode) {
+        return switch (successCode) {
+            case SUCCESSFUL -> SUCCESSFUL;
+            case FAILED -> FAILED;
+            case LIMIT_EXCEEDED -> LIMIT_EXCEEDED;
+        };
+    }
+
+    private static byte[] message(String message) {
+        if (message == null) {
+            return NO_MESSAGE;
+        }
+        byte[] cached = MESSAGES.get(message);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_MESSAGE_BYTES) {
+            // may cut a multi-byte character, the message is informational only
+            bytes = Arrays.copyOf(bytes, MAX_MESSAGE_BYTES);
+        }
+        if (MESSAGES.size() < MAX_CACHED_MESSAGES) {
+            MESSAGES.putIfAbsent(message, bytes);
+        }
+        return bytes;
+    }
+
+}
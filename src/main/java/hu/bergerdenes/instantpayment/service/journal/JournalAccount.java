@@ -0,0 +1,11 @@
+package hu.bergerdenes.instantpayment.service.journal;
+
+/**
+ * Balance of an account as recorded in the journal, in minor units.
+ */
+public record JournalAccount(long balance, boolean hot) {
+
+    JournalAccount plus(long amount) {
+        return new JournalAccount(Math.addExact(balance, amount), hot);
+    }
+}
@@ -0,0 +1,100 @@
+package hu.bergerdenes.instantpayment.service.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Fixed-size journal record. Layout: CRC32C of the rest of the record (4 bytes), type (1), flags (1), padding (2),
+ * sequence (8), timestamp in epoch microseconds (8), amount in minor units (8), then three fields of a 2 byte length
+ * and up to {@value #MAX_FIELD_BYTES} bytes of UTF-8, zero padded to {@value #SIZE} bytes. An all-zero or torn
+ * record fails the checksum, which marks the end of the journal.
+ *
+ * @param account the opened account, or the sender of a transfer
+ * @param recipient the recipient of a transfer
+ * @param idempotencyKey the idempotency key of a transfer
+ */
+record JournalRecord(byte type, long sequence, long timestampMicros, long amount, boolean hot,
+                     String account, String recipient, String idempotencyKey) {
+
+    static final int SIZE = 512;
+
+    static final int MAX_FIELD_BYTES = 150;
+
+    /**
+     * First balance of an account, as loaded from the database.
+     */
+    static final byte OPEN = 1;
+
+    static final byte TRANSFER = 2;
+
+    private static final int FLAG_HOT = 1;
+
+    private static final int FIELDS_OFFSET = 32;
+
+    private static final int FIELD_SIZE = 2 + MAX_FIELD_BYTES;
+
+    static boolean fits(String value) {
+        return value == null || value.length() * 3 <= MAX_FIELD_BYTES || value.getBytes(StandardCharsets.UTF_8).length <= MAX_FIELD_BYTES;
+    }
+
+    /**
+     * Encodes the record into {@code buffer}, a heap buffer of {@link #SIZE} bytes.
+     */
+    void encode(ByteBuffer buffer) {
+        byte[] array = buffer.array();
+        Arrays.fill(array, (byte) 0);
+        buffer.put(4, type);
+        buffer.put(5, (byte) (hot ? FLAG_HOT : 0));
+        buffer.putLong(8, sequence);
+        buffer.putLong(16, timestampMicros);
+        buffer.putLong(24, amount);
+        putField(buffer, 0, account);
+        putField(buffer, 1, recipient);
+        putField(buffer, 2, idempotencyKey);
+        CRC32C crc = new CRC32C();
+        crc.update(array, 4, SIZE - 4);
+        buffer.putInt(0, (int) crc.getValue());
+    }
+
+    /**
+     * Decodes the record at {@code offset} of {@code source}, or returns {@code null} if there is no valid record.
+     */
+    static JournalRecord decode(ByteBuffer source, int offset) {
+        byte[] array = new byte[SIZE];
+        source.get(offset, array);
+        ByteBuffer buffer = ByteBuffer.wrap(array);
+        CRC32C crc = new CRC32C();
+        crc.update(array, 4, SIZE - 4);
+        if (buffer.getInt(0) != (int) crc.getValue() || (buffer.get(4) != OPEN && buffer.get(4) != TRANSFER)) {
+            return null;
+        }
+        return new JournalRecord(buffer.get(4), buffer.getLong(8), buffer.getLong(16), buffer.getLong(24),
+                (buffer.get(5) & FLAG_HOT) != 0, getField(buffer, 0), getField(buffer, 1), getField(buffer, 2));
+    }
+
+    private static void putField(ByteBuffer buffer, int index, String value) {
+        int offset = FIELDS_OFFSET + index * FIELD_SIZE;
+        if (value == null) {
+            buffer.putShort(offset, (short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Value is too long for the journal: " + value);
+        }
+        buffer.putShort(offset, (short) bytes.length);
+        buffer.put(offset + 2, bytes);
+    }
+
+    private static String getField(ByteBuffer buffer, int index) {
+        int offset = FIELDS_OFFSET + index * FIELD_SIZE;
+        short length = buffer.getShort(offset);
+        if (length < 0) {
+            return null;
+        }
+        return new String(buffer.array(), offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,16 @@
+package hu.bergerdenes.instantpayment.service.journal;
+
+import java.util.List;
+import java.util.Map;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+/**
+ * State rebuilt from the latest snapshot and the journal records after it.
+ *
+ * @param accounts balance of every account the journal knows about
+ * @param transfers transfers recorded after the snapshot, in journal order; they may not be in the database yet
+ * @param lastSequence sequence of the last valid record, 0 for an empty journal
+ */
+public record JournalRecovery(Map<String, JournalAccount> accounts, List<Transaction> transfers, long lastSequence) {
+}
@@ -0,0 +1,635 @@
+package hu.bergerdenes.instantpayment.service.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Write-ahead journal of the ledger engine. Every account the ledger loads and every transfer it accepts is appended
+ * as a fixed-size {@link JournalRecord} to memory-mapped segment files, and a transfer is acknowledged once its record
+ * is durable according to the fsync policy. The latest snapshot plus the records after it reproduce every balance
+ * the ledger holds, so a restarted node recovers without reading the account table and writes the transfers that
+ * had not reached the database yet. Closed segments whose transfers are all in the database are folded into a new
+ * snapshot and deleted.
+ */
+@Component
+@ConditionalOnExpression("'${payment.engine:jpa}' == 'ledger' and ${payment.ledger.journal.enabled:false}")
+public class PaymentJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaymentJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private static final long SNAPSHOT_MAGIC = 0x4950_534E_4150_0001L;
+
+    private static final int KEY_CHECK_CHUNK = 1000;
+
+    enum FsyncPolicy {
+        /**
+         * Force the segment as soon as records are pending; concurrent transfers share one force.
+         */
+        ALWAYS,
+        /**
+         * Force the segment at a fixed interval, transfers wait for the next one.
+         */
+        INTERVAL,
+        /**
+         * Never force, acknowledge right after the append and leave writing back to the operating system.
+         */
+        NONE
+    }
+
+    private final Path directory;
+
+    private final int segmentRecords;
+
+    private final FsyncPolicy fsync;
+
+    private final long fsyncIntervalNanos;
+
+    private final TransactionRepository transactionRepo;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(JournalRecord.SIZE);
+
+    private final ReentrantLock waitersLock = new ReentrantLock();
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+    private volatile Segment current;
+
+    private long nextSequence;
+
+    private volatile long appendedSequence;
+
+    private volatile long durableSequence;
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    public PaymentJournal(TransactionRepository transactionRepo,
+                          @Value("${payment.ledger.journal.directory}") Path directory,
+                          @Value("${payment.ledger.journal.segment-size}") DataSize segmentSize,
+                          @Value("${payment.ledger.journal.fsync}") String fsync,
+                          @Value("${payment.ledger.journal.fsync-interval}") Duration fsyncInterval) {
+        this.transactionRepo = transactionRepo;
+        this.directory = directory;
+        this.segmentRecords = (int) Math.max(1, Math.min(Integer.MAX_VALUE / JournalRecord.SIZE, segmentSize.toBytes() / JournalRecord.SIZE));
+        this.fsync = FsyncPolicy.valueOf(fsync.toUpperCase(Locale.ROOT));
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+    }
+
+    /**
+     * Rebuilds the journal state and opens the journal for appending. Must be called once, before any append.
+     */
+    public JournalRecovery recover() {
+        appendLock.lock();
+        try {
+            Files.createDirectories(directory);
+            State state = readState(directory);
+            long lastSequence = state.lastSequence;
+            Segment last = state.lastSegment;
+            if (last != null && lastSequence + 1 < last.firstSequence + segmentRecords) {
+                current = Segment.open(last.path, last.firstSequence, segmentRecords);
+                current.clearFrom((int) (lastSequence + 1 - last.firstSequence));
+            } else {
+                current = Segment.create(directory, lastSequence + 1, segmentRecords);
+            }
+            nextSequence = lastSequence + 1;
+            appendedSequence = lastSequence;
+            durableSequence = lastSequence;
+            running = true;
+            if (fsync != FsyncPolicy.NONE) {
+                flusher = Thread.ofPlatform().name("journal-flusher").daemon(true).start(this::flushLoop);
+            }
+            LOGGER.info("Journal recovered: accounts={}, pendingTransfers={}, lastSequence={}",
+                    state.accounts.size(), state.transfers.size(), lastSequence);
+            return new JournalRecovery(state.accounts, state.transfers, lastSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal recovery failed", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Whether the values fit into a journal record.
+     */
+    public boolean fits(String... values) {
+        for (String value : values) {
+            if (!JournalRecord.fits(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long appendOpen(String accountId, Money balance, boolean hot) {
+        return append(JournalRecord.OPEN, Instant.now(), balance.minorUnits(), hot, accountId, null, null);
+    }
+
+    public long appendTransfer(Transaction tx) {
+        return append(JournalRecord.TRANSFER, tx.getTimestamp(), tx.getAmount().minorUnits(), false,
+                tx.getSenderId(), tx.getRecipientId(), tx.getIdempotencyKey());
+    }
+
+    /**
+     * Sequence of the last appended record.
+     */
+    public long appendedSequence() {
+        return appendedSequence;
+    }
+
+    /**
+     * Completes once the record with the given sequence, and all before it, is durable.
+     */
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        if (fsync == FsyncPolicy.NONE || sequence <= durableSequence) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waitersLock.lock();
+        try {
+            waiters.add(new Waiter(sequence, future));
+        } finally {
+            waitersLock.unlock();
+        }
+        if (sequence <= durableSequence) {
+            completeWaiters(durableSequence);
+        }
+        return future;
+    }
+
+    /**
+     * Reads the journal without changing it, also while it is being appended to.
+     */
+    public JournalRecovery read() {
+        try {
+            State state = readState(directory);
+            return new JournalRecovery(state.accounts, state.transfers, state.lastSequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal read failed", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.ledger.journal.snapshot-interval-ms}")
+    public void snapshot() {
+        if (!running) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Journal snapshot failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            flusher.join();
+        }
+        appendLock.lock();
+        try {
+            current.force();
+            current.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal close failed", e);
+        } finally {
+            appendLock.unlock();
+        }
+        LOGGER.info("Journal closed: lastSequence={}", appendedSequence);
+    }
+
+    private long append(byte type, Instant timestamp, long amount, boolean hot, String account, String recipient, String key) {
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Journal is not open");
+            }
+            if (nextSequence - current.firstSequence == segmentRecords) {
+                rotate();
+            }
+            long sequence = nextSequence;
+            long micros = ChronoUnit.MICROS.between(Instant.EPOCH, timestamp);
+            new JournalRecord(type, sequence, micros, amount, hot, account, recipient, key).encode(recordBuffer);
+            current.write((int) (sequence - current.firstSequence), recordBuffer.array());
+            nextSequence++;
+            appendedSequence = sequence;
+            if (fsync == FsyncPolicy.ALWAYS) {
+                LockSupport.unpark(flusher);
+            }
+            return sequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void rotate() {
+        Segment full = current;
+        full.force();
+        try {
+            current = Segment.create(directory, nextSequence, segmentRecords);
+            full.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal segment rotation failed", e);
+        }
+        LOGGER.debug("Journal segment rotated: firstSequence={}", nextSequence);
+    }
+
+    private void flushLoop() {
+        while (running || durableSequence < appendedSequence) {
+            long target = appendedSequence;
+            if (target > durableSequence) {
+                // records up to target are in this segment or in older ones, which were forced when rotated
+                current.force();
+                durableSequence = target;
+                completeWaiters(target);
+            }
+            if (fsync == FsyncPolicy.INTERVAL) {
+                LockSupport.parkNanos(this, fsyncIntervalNanos);
+            } else if (appendedSequence == target && running) {
+                LockSupport.parkNanos(this, fsyncIntervalNanos);
+            }
+        }
+    }
+
+    private void completeWaiters(long durable) {
+        List<CompletableFuture<Void>> completed = new ArrayList<>();
+        waitersLock.lock();
+        try {
+            while (!waiters.isEmpty() && waiters.peek().sequence <= durable) {
+                completed.add(waiters.poll().future);
+            }
+        } finally {
+            waitersLock.unlock();
+        }
+        completed.forEach(future -> future.complete(null));
+    }
+
+    /**
+     * Folds the closed segments whose transfers are all in the database into a new snapshot, then deletes them.
+     */
+    void compact() throws IOException {
+        long currentFirst = current.firstSequence;
+        Snapshot base = latestSnapshot(directory);
+        Map<String, JournalAccount> accounts = new HashMap<>(base.accounts);
+        long sequence = base.sequence;
+        List<Path> compacted = new ArrayList<>();
+        for (Path path : segmentPaths(directory)) {
+            long first = firstSequence(path);
+            if (first >= currentFirst) {
+                break;
+            }
+            List<JournalRecord> records = new ArrayList<>();
+            try (Segment segment = Segment.openReadOnly(path, first)) {
+                segment.readInto(records);
+            }
+            Set<String> keys = new HashSet<>();
+            for (JournalRecord record : records) {
+                if (record.sequence() > sequence && record.type() == JournalRecord.TRANSFER) {
+                    keys.add(record.idempotencyKey());
+                }
+            }
+            if (!persisted(keys)) {
+                break;
+            }
+            for (JournalRecord record : records) {
+                if (record.sequence() > sequence) {
+                    apply(record, accounts);
+                    sequence = record.sequence();
+                }
+            }
+            compacted.add(path);
+        }
+        if (compacted.isEmpty()) {
+            return;
+        }
+        writeSnapshot(directory, sequence, accounts);
+        for (Path path : compacted) {
+            Files.delete(path);
+        }
+        for (Path path : snapshotPaths(directory)) {
+            if (firstSequence(path) < sequence) {
+                Files.delete(path);
+            }
+        }
+        LOGGER.info("Journal snapshot written: sequence={}, accounts={}, segmentsCompacted={}", sequence, accounts.size(), compacted.size());
+    }
+
+    private boolean persisted(Set<String> keys) {
+        List<String> chunk = new ArrayList<>(KEY_CHECK_CHUNK);
+        for (String key : keys) {
+            chunk.add(key);
+            if (chunk.size() == KEY_CHECK_CHUNK) {
+                if (transactionRepo.findExistingIdempotencyKeys(chunk).size() < chunk.size()) {
+                    return false;
+                }
+                chunk.clear();
+            }
+        }
+        return chunk.isEmpty() || transactionRepo.findExistingIdempotencyKeys(chunk).size() == chunk.size();
+    }
+
+    private static State readState(Path directory) throws IOException {
+        Snapshot snapshot = latestSnapshot(directory);
+        State state = new State(new HashMap<>(snapshot.accounts), snapshot.sequence);
+        List<Path> paths = segmentPaths(directory);
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            long first = firstSequence(path);
+            List<JournalRecord> records = new ArrayList<>();
+            int read;
+            try (Segment segment = Segment.openReadOnly(path, first)) {
+                read = segment.readInto(records);
+                if (i == paths.size() - 1) {
+                    state.lastSegment = segment;
+                } else if (read < segment.capacity()) {
+                    throw new IllegalStateException("Journal segment is incomplete: " + path);
+                }
+            }
+            for (JournalRecord record : records) {
+                if (record.sequence() <= state.lastSequence) {
+                    continue;
+                }
+                if (record.sequence() != state.lastSequence + 1) {
+                    throw new IllegalStateException("Journal sequence gap before record " + record.sequence());
+                }
+                apply(record, state.accounts);
+                if (record.type() == JournalRecord.TRANSFER) {
+                    state.transfers.add(toTransaction(record));
+                }
+                state.lastSequence = record.sequence();
+            }
+        }
+        return state;
+    }
+
+    private static void apply(JournalRecord record, Map<String, JournalAccount> accounts) {
+        if (record.type() == JournalRecord.OPEN) {
+            accounts.put(record.account(), new JournalAccount(record.amount(), record.hot()));
+            return;
+        }
+        for (String id : List.of(record.account(), record.recipient())) {
+            if (!accounts.containsKey(id)) {
+                throw new IllegalStateException("Journal record " + record.sequence() + " refers to unknown account " + id);
+            }
+        }
+        accounts.computeIfPresent(record.account(), (id, account) -> account.plus(-record.amount()));
+        accounts.computeIfPresent(record.recipient(), (id, account) -> account.plus(record.amount()));
+    }
+
+    private static Transaction toTransaction(JournalRecord record) {
+        Transaction tx = new Transaction();
+        tx.setSenderId(record.account());
+        tx.setRecipientId(record.recipient());
+        tx.setAmount(Money.ofMinor(record.amount()));
+        tx.setTimestamp(Instant.EPOCH.plus(record.timestampMicros(), ChronoUnit.MICROS));
+        tx.setIdempotencyKey(record.idempotencyKey());
+        return tx;
+    }
+
+    private static Snapshot latestSnapshot(Path directory) throws IOException {
+        List<Path> paths = snapshotPaths(directory);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Snapshot snapshot = readSnapshot(paths.get(i));
+            if (snapshot != null) {
+                return snapshot;
+            }
+            LOGGER.warn("Journal snapshot is corrupt, skipping: {}", paths.get(i));
+        }
+        return new Snapshot(0, Map.of());
+    }
+
+    private static Snapshot readSnapshot(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(path));
+             CheckedInputStream checked = new CheckedInputStream(file, crc)) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                return null;
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            Map<String, JournalAccount> accounts = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                accounts.put(in.readUTF(), new JournalAccount(in.readLong(), in.readBoolean()));
+            }
+            long expected = crc.getValue();
+            return new DataInputStream(file).readLong() == expected ? new Snapshot(sequence, accounts) : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void writeSnapshot(Path directory, long sequence, Map<String, JournalAccount> accounts) throws IOException {
+        Path target = directory.resolve(String.format("%020d", sequence) + SNAPSHOT_SUFFIX);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            BufferedOutputStream buffered = new BufferedOutputStream(file);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+            out.writeLong(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(accounts.size());
+            for (Map.Entry<String, JournalAccount> entry : accounts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().balance());
+                out.writeBoolean(entry.getValue().hot());
+            }
+            out.flush();
+            new DataOutputStream(buffered).writeLong(crc.getValue());
+            buffered.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<Path> segmentPaths(Path directory) throws IOException {
+        return list(directory, SEGMENT_SUFFIX);
+    }
+
+    private static List<Path> snapshotPaths(Path directory) throws IOException {
+        return list(directory, SNAPSHOT_SUFFIX);
+    }
+
+    private static List<Path> list(Path directory, String suffix) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    private static long firstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    private static final class State {
+
+        private final Map<String, JournalAccount> accounts;
+
+        private final List<Transaction> transfers = new ArrayList<>();
+
+        private long lastSequence;
+
+        private Segment lastSegment;
+
+        private State(Map<String, JournalAccount> accounts, long lastSequence) {
+            this.accounts = accounts;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    private record Snapshot(long sequence, Map<String, JournalAccount> accounts) {
+    }
+
+    private record Waiter(long sequence, CompletableFuture<Void> future) implements Comparable<Waiter> {
+
+        @Override
+        public int compareTo(Waiter other) {
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * One memory-mapped segment file, named after the sequence of its first record.
+     */
+    private static final class Segment implements AutoCloseable {
+
+        private final Path path;
+
+        private final long firstSequence;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long firstSequence, int records) throws IOException {
+            return open(directory.resolve(String.format("%020d", firstSequence) + SEGMENT_SUFFIX), firstSequence, records);
+        }
+
+        static Segment open(Path path, long firstSequence, int records) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), (long) records * JournalRecord.SIZE);
+            return new Segment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        static Segment openReadOnly(Path path, long firstSequence) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new Segment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+
+        int capacity() {
+            return buffer.capacity() / JournalRecord.SIZE;
+        }
+
+        void write(int index, byte[] record) {
+            buffer.put(index * JournalRecord.SIZE, record);
+        }
+
+        /**
+         * Reads the records up to the first invalid one.
+         *
+         * @return the number of records read
+         */
+        int readInto(Collection<JournalRecord> records) {
+            int count = 0;
+            for (int i = 0; i < capacity(); i++) {
+                JournalRecord record = JournalRecord.decode(buffer, i * JournalRecord.SIZE);
+                if (record == null || record.sequence() != firstSequence + i) {
+                    break;
+                }
+                records.add(record);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Zeroes the records from {@code index} on, so that records left over from before a crash can never be
+         * mistaken for new ones.
+         */
+        void clearFrom(int index) {
+            byte[] zeros = new byte[JournalRecord.SIZE];
+            for (int i = index; i < capacity(); i++) {
+                buffer.put(i * JournalRecord.SIZE, zeros);
+            }
+            buffer.force();
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+}
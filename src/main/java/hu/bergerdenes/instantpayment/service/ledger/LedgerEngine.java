@@ -0,0 +1,240 @@
+package hu.bergerdenes.instantpayment.service.ledger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import jakarta.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.PaymentEngine;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+import hu.bergerdenes.instantpayment.service.journal.JournalAccount;
+import hu.bergerdenes.instantpayment.service.journal.JournalRecovery;
+import hu.bergerdenes.instantpayment.service.journal.PaymentJournal;
+
+/**
+ * In-memory ledger partitioned by account hash across single-writer shards. A transfer visits the recipient's
+ * shard (existence check), the sender's shard (balance check and debit) and the recipient's shard again (credit,
+ * or the sender's shard for a refund when the credit fails), so no account is ever touched by two threads and no
+ * locks are taken. Results are written behind to the database; transfers are rejected while the write-behind backlog
+ * is over its bound. With the {@link PaymentJournal} enabled a transfer is acknowledged once it is durable in the
+ * journal, and the balances are recovered from the journal at startup.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.engine", havingValue = "ledger")
+public class LedgerEngine implements PaymentEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LedgerEngine.class);
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final int KEY_CHECK_CHUNK = 1000;
+
+    private final TransactionRepository transactionRepo;
+
+    private final LedgerShard[] shards;
+
+    private final LedgerWriter writer;
+
+    private final PaymentJournal journal;
+
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    private final Duration timeout;
+
+    private final int maxBacklog;
+
+    private final Duration retryAfter;
+
+    public LedgerEngine(AccountRepository accountRepo, TransactionRepository transactionRepo, OutboxRepository outboxRepo,
+                        TransactionOperations transactionOperations, ObjectProvider<PaymentJournal> journal,
+                        @Value("${kafka.enabled}") boolean kafkaEnabled,
+                        @Value("${payment.ledger.shards}") int shardCount,
+                        @Value("${payment.ledger.max-in-flight}") int maxInFlight,
+                        @Value("${payment.ledger.timeout}") Duration timeout,
+                        @Value("${payment.ledger.write-behind.batch-size}") int batchSize,
+                        @Value("${payment.ledger.write-behind.interval}") Duration interval,
+                        @Value("${payment.ledger.write-behind.max-backlog}") int maxBacklog,
+                        @Value("${payment.ledger.retry-after}") Duration retryAfter,
+                        MeterRegistry meterRegistry) {
+        this.transactionRepo = transactionRepo;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+        this.maxBacklog = maxBacklog;
+        this.retryAfter = retryAfter;
+        this.writer = new LedgerWriter(accountRepo, transactionRepo, kafkaEnabled ? outboxRepo : null, transactionOperations,
+                pendingKeys::remove, batchSize, interval);
+        Gauge.builder("payment.ledger.write-behind.backlog", writer, LedgerWriter::backlog)
+                .description("Ledger transactions not yet persisted")
+                .register(meterRegistry);
+        Gauge.builder("payment.ledger.write-behind.lag", writer, w -> w.lag().toMillis() / 1000.0)
+                .description("Seconds the write-behind has had a backlog without persisting anything")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        FunctionCounter.builder("payment.ledger.write-behind.parked", writer, LedgerWriter::parked)
+                .description("Ledger transactions and balances left out because the database rejected them")
+                .register(meterRegistry);
+        this.journal = journal.getIfAvailable();
+        Map<String, JournalAccount> recovered = this.journal == null ? Map.of() : recover(this.journal.recover());
+        this.shards = new LedgerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LedgerShard(i, accountRepo, writer, this.journal, recovered);
+        }
+        LOGGER.info("Ledger engine started: shards={}, maxInFlight={}", shardCount, maxInFlight);
+    }
+
+    @Override
+    public SendPaymentResult sendPayment(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        try {
+            return submit(senderId, recipientId, amount, idempotencyKey).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for ledger", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServiceBusyException busy) {
+                throw busy;
+            }
+            throw new IllegalStateException("Ledger transfer failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Ledger transfer timed out", e);
+        }
+    }
+
+    public CompletableFuture<SendPaymentResult> submit(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        if (journal != null && !journal.fits(senderId, recipientId, idempotencyKey)) {
+            return CompletableFuture.completedFuture(SendPaymentResult.IDENTIFIERS_TOO_LONG);
+        }
+        if (!pendingKeys.add(idempotencyKey)) {
+            return alreadyProcessed(idempotencyKey);
+        }
+        if (transactionRepo.findByIdempotencyKey(idempotencyKey).isPresent()) {
+            pendingKeys.remove(idempotencyKey);
+            return alreadyProcessed(idempotencyKey);
+        }
+        if (writer.backlog() >= maxBacklog) {
+            pendingKeys.remove(idempotencyKey);
+            LOGGER.warn("Payment rejected, ledger write-behind backlog is full: backlog={}", writer.backlog());
+            return CompletableFuture.failedFuture(new ServiceBusyException("Service is busy. Please try again later.", retryAfter));
+        }
+        if (!inFlight.tryAcquire()) {
+            pendingKeys.remove(idempotencyKey);
+            return CompletableFuture.failedFuture(new IllegalStateException("Ledger is saturated"));
+        }
+
+        LedgerShard senderShard = shardFor(senderId);
+        LedgerShard recipientShard = shardFor(recipientId);
+        return recipientShard.submit(() -> recipientShard.exists(recipientId))
+                .thenCompose(recipientExists -> senderShard.submit(() -> senderShard.debit(senderId, recipientExists, amount)))
+                .thenCompose(failure -> failure != null
+                        ? CompletableFuture.completedFuture(failure)
+                        : recipientShard.submit(() -> recipientShard.credit(senderId, recipientId, amount, idempotencyKey))
+                        .thenCompose(result -> result.successCode() == SuccessCode.SUCCESSFUL
+                                ? whenDurable(result)
+                                : senderShard.submit(() -> {
+                                    senderShard.refund(senderId, amount);
+                                    return result;
+                                })))
+                .whenComplete((result, ex) -> {
+                    inFlight.release();
+                    if (ex != null || result.successCode() != SuccessCode.SUCCESSFUL) {
+                        pendingKeys.remove(idempotencyKey);
+                    }
+                });
+    }
+
+    /**
+     * The credit's journal record is at or before the last appended one, so waiting for that one is enough.
+     */
+    private CompletableFuture<SendPaymentResult> whenDurable(SendPaymentResult result) {
+        if (journal == null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return journal.whenDurable(journal.appendedSequence()).thenApply(ignored -> result);
+    }
+
+    /**
+     * Writes the recovered balances and the journaled transfers missing from the database behind, and keeps their
+     * idempotency keys pending until they are persisted.
+     */
+    private Map<String, JournalAccount> recover(JournalRecovery recovery) {
+        recovery.accounts().forEach((accountId, account) -> writer.markDirty(accountId, 0, account.balance(), account.hot()));
+        int missing = 0;
+        List<Transaction> transfers = recovery.transfers();
+        for (int from = 0; from < transfers.size(); from += KEY_CHECK_CHUNK) {
+            List<Transaction> chunk = transfers.subList(from, Math.min(from + KEY_CHECK_CHUNK, transfers.size()));
+            List<String> keys = new ArrayList<>(chunk.size());
+            chunk.forEach(tx -> keys.add(tx.getIdempotencyKey()));
+            Set<String> persisted = transactionRepo.findExistingIdempotencyKeys(keys);
+            for (Transaction tx : chunk) {
+                if (!persisted.contains(tx.getIdempotencyKey()) && pendingKeys.add(tx.getIdempotencyKey())) {
+                    writer.append(tx);
+                    missing++;
+                }
+            }
+        }
+        LOGGER.info("Ledger recovered from journal: accounts={}, transfersWrittenAgain={}", recovery.accounts().size(), missing);
+        return recovery.accounts();
+    }
+
+    private CompletableFuture<SendPaymentResult> alreadyProcessed(String idempotencyKey) {
+        LOGGER.debug("Payment is already processed: idempotencyKey={}", idempotencyKey);
+        return CompletableFuture.completedFuture(SendPaymentResult.ALREADY_PROCESSED);
+    }
+
+    int writeBehindBacklog() {
+        return writer.backlog();
+    }
+
+    Money balance(String accountId) {
+        LedgerShard shard = shardFor(accountId);
+        return shard.submit(() -> shard.balance(accountId)).join();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!inFlight.tryAcquire(maxInFlight, SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Ledger engine stopping with transfers still in flight");
+        }
+        for (LedgerShard shard : shards) {
+            shard.stop(SHUTDOWN_TIMEOUT);
+        }
+        writer.stop(SHUTDOWN_TIMEOUT);
+        LOGGER.info("Ledger engine stopped");
+    }
+
+    private LedgerShard shardFor(String accountId) {
+        return shards[Math.floorMod(accountId.hashCode(), shards.length)];
+    }
+
+}
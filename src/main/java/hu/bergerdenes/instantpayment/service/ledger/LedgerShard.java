@@ -0,0 +1,154 @@
+package hu.bergerdenes.instantpayment.service.ledger;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.service.journal.JournalAccount;
+import hu.bergerdenes.instantpayment.service.journal.PaymentJournal;
+
+/**
+ * Owns the in-memory balances of a subset of accounts. Every method except {@link #submit(Supplier)} and
+ * {@link #stop(Duration)} must only be called from the shard's own thread.
+ */
+final class LedgerShard {
+
+    private final AccountRepository accountRepo;
+
+    private final LedgerWriter writer;
+
+    private final PaymentJournal journal;
+
+    private final Map<String, JournalAccount> recovered;
+
+    private final Map<String, LedgerAccount> accounts = new HashMap<>();
+
+    private final ExecutorService executor;
+
+    /**
+     * @param journal where loaded accounts and transfers are recorded, {@code null} without a journal
+     * @param recovered balances recovered from the journal, used instead of the database
+     */
+    LedgerShard(int index, AccountRepository accountRepo, LedgerWriter writer, PaymentJournal journal, Map<String, JournalAccount> recovered) {
+        this.accountRepo = accountRepo;
+        this.writer = writer;
+        this.journal = journal;
+        this.recovered = recovered;
+        this.executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("ledger-shard-" + index).daemon(true).factory());
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    boolean exists(String accountId) {
+        return load(accountId) != null;
+    }
+
+    Money balance(String accountId) {
+        LedgerAccount account = load(accountId);
+        return account == null ? null : Money.ofMinor(account.balance);
+    }
+
+    /**
+     * Debits the sender, or returns the failure result when the transfer can not proceed.
+     */
+    SendPaymentResult debit(String senderId, boolean recipientExists, Money amount) {
+        LedgerAccount sender = load(senderId);
+        if (sender == null) {
+            return SendPaymentResult.SENDER_NOT_FOUND;
+        }
+        if (!recipientExists) {
+            return SendPaymentResult.RECIPIENT_NOT_FOUND;
+        }
+        if (sender.balance < amount.minorUnits()) {
+            return SendPaymentResult.INSUFFICIENT_BALANCE;
+        }
+        sender.balance = Math.subtractExact(sender.balance, amount.minorUnits());
+        writer.markDirty(senderId, ++sender.version, sender.balance, sender.hot);
+        return null;
+    }
+
+    /**
+     * Gives back an amount debited for a transfer whose credit failed.
+     */
+    void refund(String senderId, Money amount) {
+        LedgerAccount sender = load(senderId);
+        sender.balance = Math.addExact(sender.balance, amount.minorUnits());
+        writer.markDirty(senderId, ++sender.version, sender.balance, sender.hot);
+    }
+
+    /**
+     * Credits the recipient and records the transfer, or returns the failure result without touching the recipient
+     * when its balance can not hold the amount; the sender then has to be {@link #refund(String, Money) refunded}.
+     */
+    SendPaymentResult credit(String senderId, String recipientId, Money amount, String idempotencyKey) {
+        LedgerAccount recipient = load(recipientId);
+        if (recipient.balance > Long.MAX_VALUE - amount.minorUnits()) {
+            return SendPaymentResult.RECIPIENT_BALANCE_LIMIT;
+        }
+        recipient.balance += amount.minorUnits();
+        writer.markDirty(recipientId, ++recipient.version, recipient.balance, recipient.hot);
+
+        Transaction tx = new Transaction();
+        tx.setSenderId(senderId);
+        tx.setRecipientId(recipientId);
+        tx.setAmount(amount);
+        tx.setIdempotencyKey(idempotencyKey);
+        if (journal != null) {
+            journal.appendTransfer(tx);
+        }
+        writer.append(tx);
+        return SendPaymentResult.PROCESSED;
+    }
+
+    void stop(Duration timeout) throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private LedgerAccount load(String accountId) {
+        LedgerAccount account = accounts.get(accountId);
+        if (account == null) {
+            JournalAccount journaled = recovered.get(accountId);
+            if (journaled != null) {
+                account = new LedgerAccount(journaled.balance(), journaled.hot());
+            } else {
+                account = accountRepo.findById(accountId)
+                        .map(entity -> new LedgerAccount(entity.getBalance().minorUnits(), entity.isHot()))
+                        .orElse(null);
+                if (account != null && journal != null) {
+                    journal.appendOpen(accountId, Money.ofMinor(account.balance), account.hot);
+                }
+            }
+            if (account != null) {
+                accounts.put(accountId, account);
+            }
+        }
+        return account;
+    }
+
+    private static final class LedgerAccount {
+
+        private long balance;
+
+        private long version;
+
+        private final boolean hot;
+
+        private LedgerAccount(long balance, boolean hot) {
+            this.balance = balance;
+            this.hot = hot;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+package hu.bergerdenes.instantpayment.service.ledger;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.OutboxMessage;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Write-behind of ledger state: batches transaction rows and the latest balance of every dirty account
+ * into one database transaction per flush. A flush failing for a transient reason is retried as a whole; otherwise
+ * the batch is split until the rows the database rejects are found, and those are parked: logged, counted and left
+ * out, with the idempotency keys of parked transactions kept pending so they are not processed again.
+ */
+final class LedgerWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LedgerWriter.class);
+
+    private final AccountRepository accountRepo;
+
+    private final TransactionRepository transactionRepo;
+
+    private final OutboxRepository outboxRepo;
+
+    private final TransactionOperations transactionOperations;
+
+    private final Consumer<String> onPersisted;
+
+    private final int batchSize;
+
+    private final long intervalNanos;
+
+    private final BlockingQueue<Transaction> transactions = new LinkedBlockingQueue<>();
+
+    private final ConcurrentMap<String, BalanceSnapshot> dirtyBalances = new ConcurrentHashMap<>();
+
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    private final AtomicLong parked = new AtomicLong();
+
+    private volatile long lastProgressNanos = System.nanoTime();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param outboxRepo where notifications for the persisted transactions are queued, {@code null} to not notify
+     */
+    LedgerWriter(AccountRepository accountRepo, TransactionRepository transactionRepo, OutboxRepository outboxRepo,
+                 TransactionOperations transactionOperations, Consumer<String> onPersisted, int batchSize, Duration interval) {
+        this.accountRepo = accountRepo;
+        this.transactionRepo = transactionRepo;
+        this.outboxRepo = outboxRepo;
+        this.transactionOperations = transactionOperations;
+        this.onPersisted = onPersisted;
+        this.batchSize = batchSize;
+        this.intervalNanos = interval.toNanos();
+        this.thread = Thread.ofPlatform().name("ledger-writer").daemon(true).start(this::run);
+    }
+
+    void markDirty(String accountId, long version, long balance, boolean hot) {
+        dirtyBalances.merge(accountId, new BalanceSnapshot(accountId, version, balance, hot),
+                (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+    }
+
+    void append(Transaction transaction) {
+        backlog.incrementAndGet();
+        transactions.add(transaction);
+    }
+
+    /**
+     * Transactions appended and neither persisted nor parked yet.
+     */
+    int backlog() {
+        return backlog.get();
+    }
+
+    /**
+     * Transactions and balances left out because the database rejected them.
+     */
+    long parked() {
+        return parked.get();
+    }
+
+    /**
+     * How long the writer has had a backlog without persisting anything, zero when it is caught up.
+     */
+    Duration lag() {
+        return backlog.get() == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - lastProgressNanos);
+    }
+
+    void stop(Duration timeout) throws InterruptedException {
+        running = false;
+        thread.join(timeout.toMillis());
+    }
+
+    private void run() {
+        List<Transaction> batch = new ArrayList<>(batchSize);
+        while (running || !transactions.isEmpty() || !dirtyBalances.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.size() < batchSize) {
+                    Transaction first = transactions.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        transactions.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+                if (!batch.isEmpty() || !dirtyBalances.isEmpty()) {
+                    write(batch);
+                    batch.clear();
+                } else {
+                    lastProgressNanos = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Ledger writer interrupted, {} transactions not persisted", batch.size() + transactions.size());
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Ledger write-behind failed, retrying: {}", e.getMessage());
+                if (!running) {
+                    LOGGER.error("Ledger writer stopped with {} unpersisted transactions", batch.size() + transactions.size());
+                    return;
+                }
+                LockSupport.parkNanos(intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * Flushes the batch with the dirty balances. When the database rejects it, the balances and then the
+     * transactions are written in halves and the single ones still rejected are parked. Written and parked
+     * transactions are removed from the batch, so a transient failure in between only retries the rest.
+     */
+    private void write(List<Transaction> batch) {
+        try {
+            flush(batch, new HashMap<>(dirtyBalances));
+            return;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            LOGGER.warn("Ledger write-behind batch rejected, splitting it: {}", e.getMessage());
+        }
+        writeBalances(new ArrayList<>(dirtyBalances.values()));
+
+        List<Transaction> rows = List.copyOf(batch);
+        int done = 0;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, rows.size()});
+        try {
+            while (!ranges.isEmpty()) {
+                int[] range = ranges.pop();
+                List<Transaction> part = rows.subList(range[0], range[1]);
+                try {
+                    flush(part, new HashMap<>(dirtyBalances));
+                } catch (RuntimeException e) {
+                    if (isTransient(e)) {
+                        throw e;
+                    }
+                    if (part.size() > 1) {
+                        int middle = (range[0] + range[1]) >>> 1;
+                        ranges.push(new int[] {middle, range[1]});
+                        ranges.push(new int[] {range[0], middle});
+                        continue;
+                    }
+                    park(part.get(0), e);
+                }
+                done = range[1];
+            }
+        } finally {
+            batch.subList(0, done).clear();
+        }
+    }
+
+    private void writeBalances(List<BalanceSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        Map<String, BalanceSnapshot> balances = new HashMap<>();
+        snapshots.forEach(snapshot -> balances.put(snapshot.accountId(), snapshot));
+        try {
+            flush(List.of(), balances);
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            if (snapshots.size() > 1) {
+                writeBalances(snapshots.subList(0, snapshots.size() / 2));
+                writeBalances(snapshots.subList(snapshots.size() / 2, snapshots.size()));
+                return;
+            }
+            BalanceSnapshot snapshot = snapshots.get(0);
+            dirtyBalances.remove(snapshot.accountId(), snapshot);
+            parked.incrementAndGet();
+            LOGGER.error("Ledger balance parked, the database rejects it: accountId={}, balance={}, cause={}",
+                    snapshot.accountId(), Money.ofMinor(snapshot.balance()), e.getMessage());
+        }
+    }
+
+    private void park(Transaction tx, RuntimeException cause) {
+        backlog.decrementAndGet();
+        parked.incrementAndGet();
+        LOGGER.error("Ledger transaction parked, the database rejects it: idempotencyKey={}, senderId={}, recipientId={}, amount={}, cause={}",
+                tx.getIdempotencyKey(), tx.getSenderId(), tx.getRecipientId(), tx.getAmount(), cause.getMessage());
+    }
+
+    private void flush(List<Transaction> batch, Map<String, BalanceSnapshot> balances) {
+        try {
+            transactionOperations.executeWithoutResult(status -> {
+                List<Account> accounts = new ArrayList<>(balances.size());
+                balances.values().forEach(snapshot -> accounts.add(snapshot.toAccount()));
+                accountRepo.saveAll(accounts);
+                transactionRepo.saveAll(batch);
+                if (outboxRepo != null) {
+                    List<OutboxMessage> notifications = new ArrayList<>(batch.size());
+                    batch.forEach(tx -> notifications.add(new OutboxMessage(tx.getId())));
+                    outboxRepo.saveAll(notifications);
+                }
+            });
+        } catch (RuntimeException e) {
+            batch.forEach(tx -> tx.setId(null));
+            throw e;
+        }
+        balances.forEach(dirtyBalances::remove);
+        batch.forEach(tx -> onPersisted.accept(tx.getIdempotencyKey()));
+        backlog.addAndGet(-batch.size());
+        lastProgressNanos = System.nanoTime();
+        LOGGER.debug("Ledger flushed: transactions={}, accounts={}", batch.size(), balances.size());
+    }
+
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof CannotCreateTransactionException || e instanceof DataAccessResourceFailureException;
+    }
+
+    private record BalanceSnapshot(String accountId, long version, long balance, boolean hot) {
+
+        Account toAccount() {
+            Account account = new Account();
+            account.setId(accountId);
+            account.setBalance(Money.ofMinor(balance));
+            account.setHot(hot);
+            return account;
+        }
+    }
+
+}
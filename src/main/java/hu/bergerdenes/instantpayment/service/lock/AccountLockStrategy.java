@@ -0,0 +1,15 @@
+package hu.bergerdenes.instantpayment.service.lock;
+
+import java.util.Collection;
+
+/**
+ * Locks accounts for the duration of the current transaction. Implementations acquire the locks in a canonical
+ * order, so two transfers touching the same accounts in opposite directions can not deadlock.
+ */
+public interface AccountLockStrategy {
+
+    String name();
+
+    void lockAccounts(Collection<String> accountIds);
+
+}
@@ -0,0 +1,53 @@
+package hu.bergerdenes.instantpayment.service.lock;
+
+import java.util.Collection;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Postgres transaction-level advisory locks keyed by a 64-bit hash of the account id. Released by the database on
+ * commit or rollback, so they are safe across application instances.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.lock.strategy", havingValue = "db-advisory")
+public class AdvisoryLockStrategy implements AccountLockStrategy {
+
+    private static final RowCallbackHandler IGNORE = rs -> {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AdvisoryLockStrategy(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "db-advisory";
+    }
+
+    @Override
+    public void lockAccounts(Collection<String> accountIds) {
+        long[] keys = accountIds.stream()
+                .mapToLong(AdvisoryLockStrategy::lockKey)
+                .distinct()
+                .sorted()
+                .toArray();
+        for (long key : keys) {
+            jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", IGNORE, key);
+        }
+    }
+
+    static long lockKey(String accountId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < accountId.length(); i++) {
+            hash ^= accountId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
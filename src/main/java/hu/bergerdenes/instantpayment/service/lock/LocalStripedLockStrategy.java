@@ -0,0 +1,79 @@
+package hu.bergerdenes.instantpayment.service.lock;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JVM-local lock stripes. Only safe when a single application instance writes to the database.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.lock.strategy", havingValue = "local-striped", matchIfMissing = true)
+public class LocalStripedLockStrategy implements AccountLockStrategy {
+
+    private final ReentrantLock[] stripes;
+
+    private final long timeoutNanos;
+
+    public LocalStripedLockStrategy(@Value("${payment.lock.stripes}") int stripeCount,
+                                    @Value("${payment.lock.timeout}") Duration timeout) {
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    @Override
+    public String name() {
+        return "local-striped";
+    }
+
+    @Override
+    public void lockAccounts(Collection<String> accountIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Account locks require an active transaction");
+        }
+        int[] indexes = accountIds.stream()
+                .mapToInt(id -> Math.floorMod(id.hashCode(), stripes.length))
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int i = 0; i < indexes.length; i++) {
+            if (!tryLock(stripes[indexes[i]])) {
+                unlock(indexes, i);
+                throw new CannotAcquireLockException("Timed out waiting for account lock");
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(indexes, indexes.length);
+            }
+        });
+    }
+
+    private boolean tryLock(ReentrantLock lock) {
+        try {
+            return lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void unlock(int[] indexes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indexes[i]].unlock();
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package hu.bergerdenes.instantpayment.service.lock;
+
+import java.util.Collection;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+
+/**
+ * {@code SELECT ... FOR UPDATE} on the account rows, in account id order. The locked entities stay in the
+ * persistence context, so the following {@code findById} calls do not hit the database again.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.lock.strategy", havingValue = "row-lock")
+public class RowLockStrategy implements AccountLockStrategy {
+
+    private final AccountRepository accountRepo;
+
+    public RowLockStrategy(AccountRepository accountRepo) {
+        this.accountRepo = accountRepo;
+    }
+
+    @Override
+    public String name() {
+        return "row-lock";
+    }
+
+    @Override
+    public void lockAccounts(Collection<String> accountIds) {
+        accountIds.stream()
+                .distinct()
+                .sorted()
+                .forEach(accountRepo::findByIdForUpdate);
+    }
+
+}
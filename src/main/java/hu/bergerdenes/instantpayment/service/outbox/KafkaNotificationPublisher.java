@@ -0,0 +1,65 @@
+package hu.bergerdenes.instantpayment.service.outbox;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import hu.bergerdenes.instantpayment.dto.PaymentNotificationEvent;
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+@Component
+@ConditionalOnProperty(name = "kafka.enabled", havingValue = "true")
+public class KafkaNotificationPublisher implements NotificationPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KafkaNotificationPublisher.class);
+
+    private static final String TOPIC = "transaction_notifications";
+
+    private final KafkaTemplate<String, PaymentNotificationEvent> kafkaTemplate;
+
+    private final Counter sent;
+
+    private final Counter failed;
+
+    private final Timer sendLatency;
+
+    public KafkaNotificationPublisher(KafkaTemplate<String, PaymentNotificationEvent> kafkaTemplate, MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.sent = Counter.builder("payment.notifications").tag("result", "sent").register(meterRegistry);
+        this.failed = Counter.builder("payment.notifications").tag("result", "failed").register(meterRegistry);
+        this.sendLatency = Timer.builder("payment.notifications.send")
+                .description("Time from handing a notification to the producer until the broker acknowledged it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<Void> publish(List<Transaction> transactions) {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[transactions.size()];
+        for (int i = 0; i < sends.length; i++) {
+            Transaction tx = transactions.get(i);
+            long start = System.nanoTime();
+            sends[i] = kafkaTemplate.send(TOPIC, tx.getRecipientId(), PaymentNotificationEvent.from(tx))
+                    .whenComplete((result, ex) -> {
+                        sendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (ex == null) {
+                            sent.increment();
+                        } else {
+                            failed.increment();
+                            LOGGER.warn("Notification not acknowledged: transactionId={}, error={}", tx.getId(), ex.getMessage());
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+}
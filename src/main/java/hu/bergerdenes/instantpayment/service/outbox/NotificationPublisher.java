@@ -0,0 +1,16 @@
+package hu.bergerdenes.instantpayment.service.outbox;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public interface NotificationPublisher {
+
+    /**
+     * Publishes a notification for every transaction. The returned future completes once all of them are
+     * acknowledged, or exceptionally if any of them failed.
+     */
+    CompletableFuture<Void> publish(List<Transaction> transactions);
+
+}
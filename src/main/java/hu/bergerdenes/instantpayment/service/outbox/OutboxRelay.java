@@ -0,0 +1,119 @@
+package hu.bergerdenes.instantpayment.service.outbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.model.OutboxMessage;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Drains the outbox in batches: publishes a notification for each pending transaction, waits for the
+ * acknowledgements and marks the rows sent in the same database transaction that locked them. A failed batch is
+ * rolled back and picked up again on the next poll, so delivery is at-least-once.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outboxRepo;
+
+    private final TransactionRepository transactionRepo;
+
+    private final NotificationPublisher publisher;
+
+    private final TransactionOperations transactionOperations;
+
+    private final int batchSize;
+
+    private final Duration sendTimeout;
+
+    private final Duration retention;
+
+    public OutboxRelay(OutboxRepository outboxRepo, TransactionRepository transactionRepo,
+                       @Lazy NotificationPublisher publisher,
+                       TransactionOperations transactionOperations,
+                       @Value("${payment.outbox.batch-size}") int batchSize,
+                       @Value("${payment.outbox.send-timeout}") Duration sendTimeout,
+                       @Value("${payment.outbox.retention}") Duration retention) {
+        this.outboxRepo = outboxRepo;
+        this.transactionRepo = transactionRepo;
+        this.publisher = publisher;
+        this.transactionOperations = transactionOperations;
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        this.retention = retention;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-interval-ms}")
+    public void relay() {
+        try {
+            int relayed;
+            do {
+                relayed = transactionOperations.execute(status -> relayBatch());
+            } while (relayed == batchSize);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Outbox relay failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.outbox.purge-interval-ms}")
+    public void purge() {
+        Integer deleted = transactionOperations.execute(status -> outboxRepo.deleteSentBefore(Instant.now().minus(retention)));
+        LOGGER.debug("Outbox purged: deleted={}", deleted);
+    }
+
+    int relayBatch() {
+        List<OutboxMessage> messages = outboxRepo.findUnsent(PageRequest.of(0, batchSize));
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Transaction> transactions = transactionRepo.findAllById(messages.stream().map(OutboxMessage::getTransactionId).toList())
+                .stream()
+                .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        List<Transaction> pending = messages.stream()
+                .map(message -> transactions.get(message.getTransactionId()))
+                .filter(Objects::nonNull)
+                .toList();
+        await(publisher.publish(pending));
+
+        Instant sentAt = Instant.now();
+        messages.forEach(message -> message.setSentAt(sentAt));
+        LOGGER.debug("Outbox batch relayed: messages={}", messages.size());
+        return messages.size();
+    }
+
+    private void await(CompletableFuture<Void> acknowledged) {
+        try {
+            acknowledged.get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing notifications", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Publishing notifications failed", e);
+        }
+    }
+
+}
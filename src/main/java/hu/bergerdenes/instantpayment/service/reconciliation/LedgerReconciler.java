@@ -0,0 +1,302 @@
+package hu.bergerdenes.instantpayment.service.reconciliation;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.model.Money;
+
+/**
+ * Compares every account balance, including hot account slots, with its opening balance plus the net of its
+ * transactions. The account keyspace is cut into ranges of {@code chunk-size} accounts by keyset; a fork-join pool
+ * reconciles the ranges in parallel, each in its own short read-only transaction so balances and transaction sums
+ * come from one snapshot, and merges the results. An account seen for the first time gets its opening balance
+ * recorded, as the schema keeps no opening balance otherwise; it is reported as unverified, since whatever drift it
+ * already had is taken into its opening balance.
+ * <p>
+ * Whether money is conserved is decided afterwards from a single snapshot of all balances and opening balances, as
+ * the range snapshots are taken at different times and would not add up under traffic.
+ */
+@Component
+public class LedgerReconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LedgerReconciler.class);
+
+    private static final int MAX_REPORTED = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate snapshotTransaction;
+
+    private final TransactionTemplate writeTransaction;
+
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile ReconciliationReport lastReport;
+
+    public LedgerReconciler(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                            @Value("${payment.reconciliation.chunk-size}") int chunkSize,
+                            @Value("${payment.reconciliation.parallelism}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    @Scheduled(cron = "${payment.reconciliation.cron}")
+    public void scheduled() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a reconciliation unless one is already running.
+     *
+     * @return the report, or {@code null} if a run was already in progress
+     */
+    public ReconciliationReport reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.info("Reconciliation is already running");
+            return null;
+        }
+        try {
+            Instant startedAt = Instant.now();
+            List<Range> ranges = ranges();
+            Totals totals;
+            try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+                totals = pool.invoke(new RangesTask(ranges));
+            }
+            Conservation conservation = snapshotTransaction.execute(status -> conservation());
+            ReconciliationReport report = new ReconciliationReport(startedAt, Instant.now(), ranges.size(), totals.accounts,
+                    totals.unverified, decimal(conservation.balance), decimal(conservation.opening),
+                    conservation.balance == conservation.opening, totals.mismatched, List.copyOf(totals.mismatches));
+            lastReport = report;
+            if (report.consistent()) {
+                LOGGER.info("Reconciliation finished: accounts={}, ranges={}, unverifiedAccounts={}, took={}",
+                        report.accounts(), report.ranges(), report.unverifiedAccounts(), Duration.between(startedAt, report.finishedAt()));
+            } else {
+                LOGGER.warn("Reconciliation found differences: mismatchedAccounts={}, moneyConserved={}, totalBalance={}, totalOpeningBalance={}",
+                        report.mismatchedAccounts(), report.moneyConserved(), report.totalBalance(), report.totalOpeningBalance());
+            }
+            return report;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public ReconciliationReport lastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Cuts the account ids into ranges of {@code chunkSize} with one index-only query per range boundary. The first
+     * range has no lower and the last no upper bound, so transactions of accounts without a row are covered too.
+     */
+    private List<Range> ranges() {
+        List<Range> ranges = new ArrayList<>();
+        String lower = null;
+        while (true) {
+            List<String> upper = lower == null
+                    ? jdbcTemplate.queryForList("SELECT id FROM account ORDER BY id LIMIT 1 OFFSET ?", String.class, chunkSize - 1)
+                    : jdbcTemplate.queryForList("SELECT id FROM account WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?", String.class, lower, chunkSize - 1);
+            if (upper.isEmpty()) {
+                ranges.add(new Range(lower, null));
+                return ranges;
+            }
+            ranges.add(new Range(lower, upper.getFirst()));
+            lower = upper.getFirst();
+        }
+    }
+
+    private Totals reconcile(Range range) {
+        Map<String, Position> positions = snapshotTransaction.execute(status -> {
+            Map<String, Position> read = new HashMap<>();
+            query("SELECT id, balance FROM account", "id", "", range,
+                    (id, amount) -> read.computeIfAbsent(id, key -> new Position()).balance = amount);
+            query("SELECT account_id, SUM(balance) FROM account_slot", "account_id", " GROUP BY account_id", range,
+                    (id, amount) -> read.computeIfAbsent(id, key -> new Position()).slots = amount);
+            query("SELECT sender_id, SUM(amount) FROM transaction", "sender_id", " GROUP BY sender_id", range,
+                    (id, amount) -> read.computeIfAbsent(id, key -> new Position()).debits = amount);
+            query("SELECT recipient_id, SUM(amount) FROM transaction", "recipient_id", " GROUP BY recipient_id", range,
+                    (id, amount) -> read.computeIfAbsent(id, key -> new Position()).credits = amount);
+            query("SELECT account_id, opening_balance FROM account_baseline", "account_id", "", range,
+                    (id, amount) -> read.computeIfAbsent(id, key -> new Position()).opening = amount);
+            return read;
+        });
+
+        Totals totals = new Totals();
+        List<Object[]> baselines = new ArrayList<>();
+        positions.forEach((id, position) -> {
+            long net = position.credits - position.debits;
+            if (position.balance == null) {
+                if (net != 0) {
+                    totals.mismatch(id, null, net);
+                }
+                return;
+            }
+            long balance = position.balance + position.slots;
+            totals.accounts++;
+            if (position.opening == null) {
+                baselines.add(new Object[]{id, decimal(balance - net)});
+                totals.unverified++;
+            } else if (position.opening + net != balance) {
+                totals.mismatch(id, balance, position.opening + net);
+            }
+        });
+        if (!baselines.isEmpty()) {
+            writeTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate("INSERT INTO account_baseline (account_id, opening_balance) VALUES (?, ?)", baselines));
+        }
+        return totals;
+    }
+
+    /**
+     * Total balance against total opening balance. An account created since its range was reconciled has no
+     * opening balance yet, its balance minus the net of its transactions is taken instead.
+     */
+    private Conservation conservation() {
+        long balance = sum("SELECT SUM(balance) FROM account") + sum("SELECT SUM(balance) FROM account_slot");
+        long opening = sum("SELECT SUM(opening_balance) FROM account_baseline") + sum("""
+                SELECT SUM(a.balance
+                        + COALESCE((SELECT SUM(s.balance) FROM account_slot s WHERE s.account_id = a.id), 0)
+                        - COALESCE((SELECT SUM(t.amount) FROM transaction t WHERE t.recipient_id = a.id), 0)
+                        + COALESCE((SELECT SUM(t.amount) FROM transaction t WHERE t.sender_id = a.id), 0))
+                FROM account a
+                WHERE NOT EXISTS (SELECT 1 FROM account_baseline b WHERE b.account_id = a.id)""");
+        return new Conservation(balance, opening);
+    }
+
+    private long sum(String sql) {
+        BigDecimal amount = jdbcTemplate.queryForObject(sql, BigDecimal.class);
+        return amount == null ? 0 : Money.of(amount).minorUnits();
+    }
+
+    private void query(String select, String column, String groupBy, Range range, AmountConsumer consumer) {
+        StringBuilder sql = new StringBuilder(select);
+        List<Object> args = new ArrayList<>(2);
+        if (range.lower != null) {
+            sql.append(" WHERE ").append(column).append(" > ?");
+            args.add(range.lower);
+        }
+        if (range.upper != null) {
+            sql.append(args.isEmpty() ? " WHERE " : " AND ").append(column).append(" <= ?");
+            args.add(range.upper);
+        }
+        sql.append(groupBy);
+        jdbcTemplate.query(sql.toString(), rs -> {
+            BigDecimal amount = rs.getBigDecimal(2);
+            consumer.accept(rs.getString(1), amount == null ? 0 : Money.of(amount).minorUnits());
+        }, args.toArray());
+    }
+
+    private static BigDecimal decimal(long minorUnits) {
+        return Money.ofMinor(minorUnits).toBigDecimal();
+    }
+
+    /**
+     * Account ids in {@code (lower, upper]}, {@code null} for no bound.
+     */
+    private record Range(String lower, String upper) {
+    }
+
+    private record Conservation(long balance, long opening) {
+    }
+
+    @FunctionalInterface
+    private interface AmountConsumer {
+        void accept(String accountId, long minorUnits);
+    }
+
+    private static final class Position {
+
+        private Long balance;
+
+        private long slots;
+
+        private long credits;
+
+        private long debits;
+
+        private Long opening;
+    }
+
+    private static final class Totals {
+
+        private long accounts;
+
+        private long unverified;
+
+        private long mismatched;
+
+        private final List<ReconciliationReport.Mismatch> mismatches = new ArrayList<>();
+
+        private void mismatch(String accountId, Long balance, long expected) {
+            mismatched++;
+            if (mismatches.size() < MAX_REPORTED) {
+                mismatches.add(new ReconciliationReport.Mismatch(accountId, balance == null ? null : decimal(balance), decimal(expected)));
+            }
+        }
+
+        private Totals merge(Totals other) {
+            accounts += other.accounts;
+            unverified += other.unverified;
+            mismatched += other.mismatched;
+            for (ReconciliationReport.Mismatch mismatch : other.mismatches) {
+                if (mismatches.size() == MAX_REPORTED) {
+                    break;
+                }
+                mismatches.add(mismatch);
+            }
+            return this;
+        }
+    }
+
+    private final class RangesTask extends RecursiveTask<Totals> {
+
+        private final List<Range> ranges;
+
+        private RangesTask(List<Range> ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (ranges.size() == 1) {
+                return reconcile(ranges.getFirst());
+            }
+            int middle = ranges.size() / 2;
+            RangesTask left = new RangesTask(ranges.subList(0, middle));
+            left.fork();
+            Totals right = new RangesTask(ranges.subList(middle, ranges.size())).compute();
+            return left.join().merge(right);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package hu.bergerdenes.instantpayment.service.reconciliation;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint ({@code /reconciliation}): a GET returns the report of the last run, a POST starts a run in the
+ * background, as a run over a large ledger takes minutes.
+ */
+@Component
+@Endpoint(id = "reconciliation")
+public class ReconciliationEndpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReconciliationEndpoint.class);
+
+    private final LedgerReconciler reconciler;
+
+    private final ExecutorService executor;
+
+    public ReconciliationEndpoint(LedgerReconciler reconciler, @Qualifier("paymentExecutor") ExecutorService executor) {
+        this.reconciler = reconciler;
+        this.executor = executor;
+    }
+
+    @ReadOperation
+    public ReconciliationReport lastReport() {
+        return reconciler.lastReport();
+    }
+
+    @WriteOperation
+    public Map<String, String> start() {
+        CompletableFuture.runAsync(reconciler::reconcile, executor)
+                .exceptionally(ex -> {
+                    LOGGER.warn("Reconciliation failed: {}", ex.getMessage());
+                    return null;
+                });
+        return Map.of("status", "started");
+    }
+
+}
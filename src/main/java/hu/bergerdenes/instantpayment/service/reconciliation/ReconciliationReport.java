@@ -0,0 +1,29 @@
+package hu.bergerdenes.instantpayment.service.reconciliation;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Outcome of one reconciliation run. Money is conserved when the accounts hold exactly their opening balances in
+ * total, both sides taken from one snapshot at the end of the run.
+ *
+ * @param unverifiedAccounts accounts seen for the first time, whose opening balance was derived from their current
+ *                           balance and recorded in this run, so a difference they already had can not show
+ * @param mismatches the first mismatched accounts, at most a fixed number of them
+ */
+public record ReconciliationReport(Instant startedAt, Instant finishedAt, int ranges, long accounts, long unverifiedAccounts,
+                                   BigDecimal totalBalance, BigDecimal totalOpeningBalance, boolean moneyConserved,
+                                   long mismatchedAccounts, List<Mismatch> mismatches) {
+
+    public boolean consistent() {
+        return moneyConserved && mismatchedAccounts == 0;
+    }
+
+    /**
+     * @param balance {@code null} for an account that has transactions but no account row
+     */
+    public record Mismatch(String accountId, BigDecimal balance, BigDecimal expectedBalance) {
+    }
+
+}
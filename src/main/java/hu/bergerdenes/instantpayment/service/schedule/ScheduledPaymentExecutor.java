@@ -0,0 +1,277 @@
+package hu.bergerdenes.instantpayment.service.schedule;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult.Reason;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Status;
+import hu.bergerdenes.instantpayment.repository.ScheduledPaymentRepository;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+
+/**
+ * Makes the due occurrences of scheduled payments. Only the schedules due within {@code payment.schedule.horizon}
+ * are loaded, periodically, into a {@link TimingWheel}; a ticker thread expires the wheel and sends each tick's due
+ * payments together through {@link PaymentService#sendPayment}, then moves their schedules to the next occurrence
+ * in one database transaction. The idempotency key of an occurrence is {@code sched-<id>-<occurrence>}, so firing it
+ * again, after a restart or from another instance, only gets "already processed". An occurrence that hit the
+ * fallback is not moved on and is fired again after the next load.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.schedule.enabled", havingValue = "true")
+public class ScheduledPaymentExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledPaymentExecutor.class);
+
+    private final ScheduledPaymentRepository scheduleRepo;
+
+    private final PaymentService paymentService;
+
+    private final TransactionOperations transactionOperations;
+
+    private final ExecutorService paymentExecutor;
+
+    private final Duration horizon;
+
+    private final int loadBatchSize;
+
+    private final long tickNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final TimingWheel<Due> wheel;
+
+    /**
+     * Occurrence in the wheel, or being fired, per schedule id.
+     */
+    private final Map<Long, Long> queued = new HashMap<>();
+
+    private final List<Due> ready = new ArrayList<>();
+
+    private volatile Instant loadedUntil = Instant.EPOCH;
+
+    private volatile boolean running = true;
+
+    private Thread ticker;
+
+    public ScheduledPaymentExecutor(ScheduledPaymentRepository scheduleRepo, PaymentService paymentService,
+                                    TransactionOperations transactionOperations,
+                                    @Qualifier("paymentExecutor") ExecutorService paymentExecutor,
+                                    @Value("${payment.schedule.horizon}") Duration horizon,
+                                    @Value("${payment.schedule.load-batch-size}") int loadBatchSize,
+                                    @Value("${payment.schedule.tick}") Duration tick,
+                                    @Value("${payment.schedule.wheel-size}") int wheelSize) {
+        this.scheduleRepo = scheduleRepo;
+        this.paymentService = paymentService;
+        this.transactionOperations = transactionOperations;
+        this.paymentExecutor = paymentExecutor;
+        this.horizon = horizon;
+        this.loadBatchSize = loadBatchSize;
+        this.tickNanos = tick.toNanos();
+        this.wheel = new TimingWheel<>(tick.toMillis(), wheelSize, System.currentTimeMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ticker = Thread.ofPlatform().name("payment-scheduler").daemon(true).start(this::run);
+    }
+
+    /**
+     * Loads the active schedules due before now plus the horizon, including overdue ones, in id order pages.
+     */
+    @Scheduled(fixedDelayString = "${payment.schedule.load-interval-ms}")
+    public void load() {
+        try {
+            Instant until = Instant.now().plus(horizon);
+            long afterId = 0;
+            int loaded = 0;
+            List<ScheduledPayment> page;
+            do {
+                long after = afterId;
+                page = transactionOperations.execute(status ->
+                        scheduleRepo.findDueBefore(Status.ACTIVE, until, after, PageRequest.of(0, loadBatchSize)));
+                lock.lock();
+                try {
+                    for (ScheduledPayment schedule : page) {
+                        loaded += enqueue(schedule.getId(), schedule.getOccurrence(), schedule.getNextExecution()) ? 1 : 0;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.getLast().getId();
+                }
+            } while (page.size() == loadBatchSize);
+            loadedUntil = until;
+            LOGGER.debug("Scheduled payments loaded: new={}, until={}", loaded, until);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Loading scheduled payments failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Picks up a schedule created after the last load if it is due before the next one.
+     */
+    public void schedule(ScheduledPayment schedule) {
+        if (schedule.getStatus() != Status.ACTIVE || !schedule.getNextExecution().isBefore(loadedUntil)) {
+            return;
+        }
+        lock.lock();
+        try {
+            enqueue(schedule.getId(), schedule.getOccurrence(), schedule.getNextExecution());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (ticker != null) {
+            ticker.join(Duration.ofSeconds(30).toMillis());
+        }
+    }
+
+    private boolean enqueue(long id, long occurrence, Instant nextExecution) {
+        Long current = queued.get(id);
+        if (current != null && current >= occurrence) {
+            return false;
+        }
+        queued.put(id, occurrence);
+        Due due = new Due(id, occurrence);
+        if (!wheel.add(nextExecution.toEpochMilli(), due)) {
+            ready.add(due);
+        }
+        return true;
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(tickNanos);
+            tick(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Fires the occurrences loaded overdue and those whose wheel bucket ended by {@code nowMillis}.
+     */
+    void tick(long nowMillis) {
+        List<Due> batch;
+        lock.lock();
+        try {
+            batch = new ArrayList<>(ready);
+            ready.clear();
+            batch.addAll(wheel.advance(nowMillis));
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            try {
+                fire(batch);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Firing scheduled payments failed, will retry after the next load: {}", e.getMessage());
+                forget(batch);
+            }
+        }
+    }
+
+    private void fire(List<Due> batch) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        batch.forEach(due -> ids.add(due.id));
+        Map<Long, ScheduledPayment> schedules = new HashMap<>();
+        transactionOperations.executeWithoutResult(status -> scheduleRepo.findAllById(ids).forEach(s -> schedules.put(s.getId(), s)));
+
+        List<Due> fired = new ArrayList<>(batch.size());
+        List<CompletableFuture<SendPaymentResult>> results = new ArrayList<>(batch.size());
+        List<Due> skipped = new ArrayList<>();
+        for (Due due : batch) {
+            ScheduledPayment schedule = schedules.get(due.id);
+            if (schedule == null || schedule.getStatus() != Status.ACTIVE || schedule.getOccurrence() != due.occurrence) {
+                skipped.add(due);
+                continue;
+            }
+            fired.add(due);
+            results.add(CompletableFuture.supplyAsync(() -> paymentService.sendPayment(schedule.getSenderId(),
+                    schedule.getRecipientId(), schedule.getAmount().toBigDecimal(), idempotencyKey(due)), paymentExecutor));
+        }
+        forget(skipped);
+        if (fired.isEmpty()) {
+            return;
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).exceptionally(ex -> null).join();
+
+        List<Due> retried = new ArrayList<>();
+        Map<Due, Instant> advanced = new HashMap<>();
+        transactionOperations.executeWithoutResult(status -> {
+            for (int i = 0; i < fired.size(); i++) {
+                Due due = fired.get(i);
+                SendPaymentResult result = results.get(i).isCompletedExceptionally() ? null : results.get(i).join();
+                if (result == null || result.reason() == Reason.PROCESSING_FAILED) {
+                    retried.add(due);
+                    continue;
+                }
+                Instant next = schedules.get(due.id).executionAfter(due.occurrence);
+                scheduleRepo.advance(due.id, due.occurrence, next, next == null ? Status.COMPLETED : Status.ACTIVE,
+                        result.message(), Status.ACTIVE);
+                if (next != null) {
+                    advanced.put(due, next);
+                }
+            }
+        });
+        lock.lock();
+        try {
+            fired.forEach(due -> queued.remove(due.id, due.occurrence));
+            advanced.forEach((due, next) -> {
+                if (next.isBefore(loadedUntil)) {
+                    enqueue(due.id, due.occurrence + 1, next);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.info("Scheduled payments fired: count={}, retried={}, skipped={}", fired.size(), retried.size(), skipped.size());
+    }
+
+    private void forget(List<Due> dues) {
+        if (dues.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            dues.forEach(due -> queued.remove(due.id, due.occurrence));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String idempotencyKey(Due due) {
+        return "sched-" + due.id + "-" + due.occurrence;
+    }
+
+    record Due(long id, long occurrence) {
+    }
+
+}
@@ -0,0 +1,76 @@
+package hu.bergerdenes.instantpayment.service.schedule;
+
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import hu.bergerdenes.instantpayment.dto.ScheduledPaymentRequest;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Status;
+import hu.bergerdenes.instantpayment.repository.ScheduledPaymentRepository;
+
+@Service
+public class ScheduledPaymentService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledPaymentService.class);
+
+    private final ScheduledPaymentRepository scheduleRepo;
+
+    private final ScheduledPaymentExecutor executor;
+
+    public ScheduledPaymentService(ScheduledPaymentRepository scheduleRepo, ObjectProvider<ScheduledPaymentExecutor> executor) {
+        this.scheduleRepo = scheduleRepo;
+        this.executor = executor.getIfAvailable();
+    }
+
+    public ScheduledPayment create(ScheduledPaymentRequest request) {
+        if (request.getSenderId().equals(request.getRecipientId())) {
+            throw new IllegalArgumentException("Sender and recipient must differ");
+        }
+        if (request.getEndAt() != null && request.getEndAt().isBefore(request.getStartAt())) {
+            throw new IllegalArgumentException("endAt must not be before startAt");
+        }
+        ScheduledPayment schedule = new ScheduledPayment();
+        schedule.setSenderId(request.getSenderId());
+        schedule.setRecipientId(request.getRecipientId());
+        schedule.setAmount(Money.of(request.getAmount()));
+        schedule.setRecurrence(request.getRecurrence());
+        schedule.setStartAt(request.getStartAt());
+        schedule.setEndAt(request.getEndAt());
+        schedule.setNextExecution(request.getStartAt());
+        scheduleRepo.save(schedule);
+        LOGGER.info("Payment scheduled: {}", schedule);
+        if (executor != null) {
+            executor.schedule(schedule);
+        }
+        return schedule;
+    }
+
+    public Optional<ScheduledPayment> get(long id) {
+        return scheduleRepo.findById(id);
+    }
+
+    /**
+     * Cancels the schedule; an occurrence already being sent may still go through.
+     *
+     * @return the schedule, empty if it does not exist
+     */
+    @Transactional
+    public Optional<ScheduledPayment> cancel(long id) {
+        Optional<ScheduledPayment> schedule = scheduleRepo.findById(id);
+        schedule.ifPresent(s -> {
+            if (scheduleRepo.updateStatus(id, Status.ACTIVE, Status.CANCELLED) == 0) {
+                throw new IllegalArgumentException("Scheduled payment is not active: " + s.getStatus());
+            }
+            s.setStatus(Status.CANCELLED);
+            LOGGER.info("Scheduled payment cancelled: id={}", id);
+        });
+        return schedule;
+    }
+
+}
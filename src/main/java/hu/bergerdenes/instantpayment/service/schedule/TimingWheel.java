@@ -0,0 +1,119 @@
+package hu.bergerdenes.instantpayment.service.schedule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel. Level 0 has {@code wheelSize} buckets of {@code tickMillis}; every further level has
+ * as many buckets, each as wide as the whole level below it, and is created once an entry needs it. An entry sits in
+ * the lowest level whose range covers its deadline and moves down one level whenever the current time enters its
+ * bucket, so adding and expiring are O(1) per level however many entries are waiting. Not thread-safe.
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final List<Level<T>> levels = new ArrayList<>();
+
+    /**
+     * Start of the first level 0 bucket not expired yet.
+     */
+    private long currentTime;
+
+    private int size;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        this.levels.add(new Level<>(tickMillis, wheelSize));
+    }
+
+    /**
+     * Adds the item unless its deadline falls into an already expired bucket.
+     *
+     * @return {@code false} if the item is already due
+     */
+    boolean add(long deadlineMillis, T item) {
+        if (deadlineMillis < currentTime) {
+            return false;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                levels.add(new Level<>(levels.get(i - 1).tickMillis * wheelSize, wheelSize));
+            }
+            Level<T> level = levels.get(i);
+            long bucket = Math.floorDiv(deadlineMillis, level.tickMillis);
+            if (bucket - Math.floorDiv(currentTime, level.tickMillis) < wheelSize) {
+                level.add(bucket, new Entry<>(deadlineMillis, item));
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis} and returns the items of the buckets that ended by then, in bucket order.
+     */
+    List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        while (currentTime + tickMillis <= nowMillis) {
+            for (Entry<T> entry : levels.getFirst().drain(Math.floorDiv(currentTime, tickMillis))) {
+                size--;
+                expired.add(entry.item);
+            }
+            currentTime += tickMillis;
+            for (int i = levels.size() - 1; i > 0; i--) {
+                Level<T> level = levels.get(i);
+                if (Math.floorMod(currentTime, level.tickMillis) == 0) {
+                    for (Entry<T> entry : level.drain(Math.floorDiv(currentTime, level.tickMillis))) {
+                        size--;
+                        if (!add(entry.deadline, entry.item)) {
+                            expired.add(entry.item);
+                        }
+                    }
+                }
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private record Entry<T>(long deadline, T item) {
+    }
+
+    private static final class Level<T> {
+
+        private final long tickMillis;
+
+        private final List<List<Entry<T>>> buckets;
+
+        private Level(long tickMillis, int wheelSize) {
+            this.tickMillis = tickMillis;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(new ArrayList<>());
+            }
+        }
+
+        private void add(long bucket, Entry<T> entry) {
+            buckets.get((int) Math.floorMod(bucket, (long) buckets.size())).add(entry);
+        }
+
+        private List<Entry<T>> drain(long bucket) {
+            int index = (int) Math.floorMod(bucket, (long) buckets.size());
+            List<Entry<T>> drained = buckets.get(index);
+            if (drained.isEmpty()) {
+                return List.of();
+            }
+            buckets.set(index, new ArrayList<>());
+            return drained;
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package hu.bergerdenes.instantpayment.service.velocity;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Total of the values added during the last {@code bucketCount} buckets of {@code bucketMillis} each. The buckets
+ * form a ring; a bucket is an immutable (epoch, value) pair replaced with compare-and-set, and one holding an older
+ * epoch counts as empty, so the window slides without a cleanup thread and no call ever blocks.
+ */
+final class SlidingWindow {
+
+    private final long bucketMillis;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    SlidingWindow(int bucketCount, long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    /**
+     * Adds {@code delta} to the current bucket unless the window total would exceed {@code limit}.
+     *
+     * @return the epoch of the bucket added to, to be passed to {@link #remove(long, long)}, or {@code -1} if the
+     * limit would be exceeded
+     */
+    long tryAdd(long nowMillis, long delta, long limit) {
+        long epoch = nowMillis / bucketMillis;
+        int index = index(epoch);
+        while (true) {
+            Bucket current = buckets.get(index);
+            long value = current != null && current.epoch == epoch ? current.value : 0;
+            if (value + others(epoch, index) + delta > limit) {
+                return -1;
+            }
+            if (buckets.compareAndSet(index, current, new Bucket(epoch, value + delta))) {
+                return epoch;
+            }
+        }
+    }
+
+    /**
+     * Adds {@code delta} at the given time without a limit, unless that time has already slid out of the window.
+     */
+    void add(long timestampMillis, long delta) {
+        long epoch = timestampMillis / bucketMillis;
+        int index = index(epoch);
+        while (true) {
+            Bucket current = buckets.get(index);
+            if (current != null && current.epoch > epoch) {
+                return;
+            }
+            long value = current != null && current.epoch == epoch ? current.value : 0;
+            if (buckets.compareAndSet(index, current, new Bucket(epoch, value + delta))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes back a {@link #tryAdd(long, long, long) successful add}, unless its bucket has slid out of the window.
+     */
+    void remove(long epoch, long delta) {
+        int index = index(epoch);
+        while (true) {
+            Bucket current = buckets.get(index);
+            if (current == null || current.epoch != epoch) {
+                return;
+            }
+            if (buckets.compareAndSet(index, current, new Bucket(epoch, current.value - delta))) {
+                return;
+            }
+        }
+    }
+
+    long total(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        int index = index(epoch);
+        Bucket current = buckets.get(index);
+        return others(epoch, index) + (current != null && current.epoch == epoch ? current.value : 0);
+    }
+
+    /**
+     * Time until the oldest bucket with a value slides out of the window, {@code 0} if the window is empty.
+     */
+    long millisUntilOldestExpires(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.value > 0 && bucket.epoch <= epoch && bucket.epoch > epoch - buckets.length()) {
+                oldest = Math.min(oldest, bucket.epoch);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : (oldest + buckets.length()) * bucketMillis - nowMillis;
+    }
+
+    private long others(long epoch, int skipped) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (i != skipped && bucket != null && bucket.epoch < epoch && bucket.epoch > epoch - buckets.length()) {
+                total += bucket.value;
+            }
+        }
+        return total;
+    }
+
+    private int index(long epoch) {
+        return (int) Math.floorMod(epoch, (long) buckets.length());
+    }
+
+    private record Bucket(long epoch, long value) {
+    }
+
+}
@@ -0,0 +1,246 @@
+package hu.bergerdenes.instantpayment.service.velocity;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.SentTransfer;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+/**
+ * Per-sender velocity limits: transfers per minute and amount per day, counted in memory instead of querying the
+ * transaction table on every payment. A payment takes a {@link Permit} up front, which counts it right away so
+ * concurrent payments of one sender can not both slip under a limit, and gives it back if the payment does not go
+ * through. Windows slide bucket by bucket, see {@link SlidingWindow}. Idle senders are evicted once their windows
+ * are empty, and the number of tracked senders is bounded; an evicted busy sender starts again from zero.
+ * At startup the windows are rebuilt from the transactions of the last day.
+ */
+@Component
+public class VelocityLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VelocityLimiter.class);
+
+    private static final int MINUTE_BUCKETS = 12;
+
+    private static final long MINUTE_BUCKET_MILLIS = Duration.ofMinutes(1).toMillis() / MINUTE_BUCKETS;
+
+    private static final int DAY_BUCKETS = 24;
+
+    private static final Duration DAY = Duration.ofDays(1);
+
+    private static final long DAY_BUCKET_MILLIS = DAY.toMillis() / DAY_BUCKETS;
+
+    private static final Permit UNLIMITED = new Permit(null, 0, -1, -1, null);
+
+    private final Cache<String, AccountWindows> windows;
+
+    private final TransactionRepository transactionRepo;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final long maxTransfersPerMinute;
+
+    private final long maxAmountPerDay;
+
+    private final Instant startedAt = Instant.now();
+
+    /**
+     * @param maxTransfersPerMinute {@code 0} for no limit
+     * @param maxAmountPerDay {@code 0} for no limit
+     */
+    public VelocityLimiter(TransactionRepository transactionRepo, TransactionTemplate transactionTemplate,
+                           @Value("${payment.velocity.max-transfers-per-minute}") long maxTransfersPerMinute,
+                           @Value("${payment.velocity.max-amount-per-day}") BigDecimal maxAmountPerDay,
+                           @Value("${payment.velocity.max-accounts}") long maxAccounts) {
+        this.transactionRepo = transactionRepo;
+        this.transactionTemplate = transactionTemplate;
+        this.maxTransfersPerMinute = maxTransfersPerMinute;
+        this.maxAmountPerDay = Money.of(maxAmountPerDay).minorUnits();
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(maxAccounts)
+                .expireAfterAccess(maxAmountPerDay.signum() > 0 ? DAY : Duration.ofMinutes(1))
+                .build();
+    }
+
+    /**
+     * Counts the transfers sent before this instance started; later ones are counted as they are made.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled()) {
+            return;
+        }
+        Instant since = startedAt.minus(maxAmountPerDay > 0 ? DAY : Duration.ofMinutes(1));
+        Long count = transactionTemplate.execute(status -> {
+            long loaded = 0;
+            try (Stream<SentTransfer> transfers = transactionRepo.streamSentBetween(since, startedAt)) {
+                Iterator<SentTransfer> it = transfers.iterator();
+                while (it.hasNext()) {
+                    SentTransfer transfer = it.next();
+                    windows.get(transfer.senderId(), id -> new AccountWindows())
+                            .add(transfer.timestamp().toEpochMilli(), transfer.amount().minorUnits());
+                    loaded++;
+                }
+            }
+            return loaded;
+        });
+        LOGGER.info("Velocity windows rebuilt: transfers={}, accounts={}, since={}", count, windows.estimatedSize(), since);
+    }
+
+    public Permit tryAcquire(String senderId, Money amount) {
+        return tryAcquire(senderId, amount, System.currentTimeMillis());
+    }
+
+    Permit tryAcquire(String senderId, Money amount, long nowMillis) {
+        if (!enabled()) {
+            return UNLIMITED;
+        }
+        AccountWindows account = windows.get(senderId, id -> new AccountWindows());
+        long transferBucket = -1;
+        if (maxTransfersPerMinute > 0) {
+            transferBucket = account.transfers.tryAdd(nowMillis, 1, maxTransfersPerMinute);
+            if (transferBucket < 0) {
+                LOGGER.debug("Transfer limit per minute exceeded: senderId={}", senderId);
+                return new Permit(null, 0, -1, -1, SendPaymentResult.TRANSFER_RATE_LIMIT);
+            }
+        }
+        long amountBucket = -1;
+        if (maxAmountPerDay > 0) {
+            amountBucket = account.amounts.tryAdd(nowMillis, amount.minorUnits(), maxAmountPerDay);
+            if (amountBucket < 0) {
+                if (transferBucket >= 0) {
+                    account.transfers.remove(transferBucket, 1);
+                }
+                LOGGER.debug("Daily amount limit exceeded: senderId={}, amount={}", senderId, amount);
+                return new Permit(null, 0, -1, -1, SendPaymentResult.DAILY_AMOUNT_LIMIT);
+            }
+        }
+        return new Permit(account, amount.minorUnits(), transferBucket, amountBucket, null);
+    }
+
+    /**
+     * How long a sender rejected for {@code amount} has to wait before the oldest transfer counted against the
+     * exceeded limit slides out of its window. A lower bound for the daily amount, which may need more to slide out.
+     */
+    public Duration retryAfter(String senderId, Money amount) {
+        return retryAfter(senderId, amount, System.currentTimeMillis());
+    }
+
+    Duration retryAfter(String senderId, Money amount, long nowMillis) {
+        AccountWindows account = windows.getIfPresent(senderId);
+        if (account == null) {
+            return Duration.ZERO;
+        }
+        long waitMillis = 0;
+        if (maxTransfersPerMinute > 0 && account.transfers.total(nowMillis) + 1 > maxTransfersPerMinute) {
+            waitMillis = account.transfers.millisUntilOldestExpires(nowMillis);
+        }
+        if (maxAmountPerDay > 0 && account.amounts.total(nowMillis) + amount.minorUnits() > maxAmountPerDay) {
+            waitMillis = Math.max(waitMillis, account.amounts.millisUntilOldestExpires(nowMillis));
+        }
+        return Duration.ofMillis(waitMillis);
+    }
+
+    /**
+     * Gives back a granted permit of a payment that did not go through.
+     */
+    public void release(Permit permit) {
+        if (permit.account == null) {
+            return;
+        }
+        if (permit.transferBucket >= 0) {
+            permit.account.transfers.remove(permit.transferBucket, 1);
+        }
+        if (permit.amountBucket >= 0) {
+            permit.account.amounts.remove(permit.amountBucket, permit.amount);
+        }
+    }
+
+    /**
+     * Releases the permits if the current transaction rolls back, or does nothing outside of a transaction.
+     */
+    public void releaseOnRollback(Collection<Permit> permits) {
+        if (permits.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        List<Permit> taken = List.copyOf(permits);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                    taken.forEach(VelocityLimiter.this::release);
+                }
+            }
+        });
+    }
+
+    private boolean enabled() {
+        return maxTransfersPerMinute > 0 || maxAmountPerDay > 0;
+    }
+
+    /**
+     * Outcome of {@link #tryAcquire(String, Money)}: either granted, or rejected with the reason.
+     */
+    public static final class Permit {
+
+        private final AccountWindows account;
+
+        private final long amount;
+
+        private final long transferBucket;
+
+        private final long amountBucket;
+
+        private final SendPaymentResult rejection;
+
+        private Permit(AccountWindows account, long amount, long transferBucket, long amountBucket, SendPaymentResult rejection) {
+            this.account = account;
+            this.amount = amount;
+            this.transferBucket = transferBucket;
+            this.amountBucket = amountBucket;
+            this.rejection = rejection;
+        }
+
+        public boolean granted() {
+            return rejection == null;
+        }
+
+        /**
+         * The result of a rejected permit, {@code null} if granted.
+         */
+        public SendPaymentResult rejection() {
+            return rejection;
+        }
+    }
+
+    private static final class AccountWindows {
+
+        private final SlidingWindow transfers = new SlidingWindow(MINUTE_BUCKETS, MINUTE_BUCKET_MILLIS);
+
+        private final SlidingWindow amounts = new SlidingWindow(DAY_BUCKETS, DAY_BUCKET_MILLIS);
+
+        private void add(long timestampMillis, long amount) {
+            transfers.add(timestampMillis, 1);
+            amounts.add(timestampMillis, amount);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package hu.bergerdenes.instantpayment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+
+/**
+ * Measures the time from starting the application to its first successful payment over HTTP in lazy startup mode
+ * and fails above {@code startup.budget-ms}. It runs on the plain test classpath in the test JVM, so it covers lazy
+ * mode only, not the AOT-processed, AppCDS-trained image of {@code Dockerfile.fast-startup}. Being a wall-clock
+ * check, it is left out of {@code test} and run by {@code gradle startupTest} on a machine the budget fits.
+ */
+@Tag("startup")
+public class StartupTimeTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimeTest.class);
+
+    @Test
+    void testFirstPaymentWithinStartupBudget() throws Exception {
+        long budgetMillis = Long.getLong("startup.budget-ms", 15000);
+        long start = System.nanoTime();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(InstantPaymentApplication.class).run(
+                "--server.port=0",
+                "--management.server.port=-1",
+                "--spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--kafka.enabled=false",
+                "--payment.audit.directory=build/audit",
+                "--payment.startup.lazy=true");
+        try {
+            long readyNanos = System.nanoTime() - start;
+            seed(context.getBean(AccountRepository.class));
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/payments/send"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"senderId\":\"startup1\",\"recipientId\":\"startup2\",\"amount\":1.00,\"idempotencyKey\":\"startup-1\"}"))
+                    .build();
+            HttpResponse<String> response;
+            HttpResponse<String> apiDocs;
+            long firstPaymentMillis;
+            try (HttpClient client = HttpClient.newHttpClient()) {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                firstPaymentMillis = (System.nanoTime() - start) / 1_000_000;
+                assertFalse(context.getBeanFactory().containsSingleton("customOpenAPI"), "springdoc was created eagerly");
+                assertFalse(context.getBeanFactory().containsSingleton("kafkaTemplate"), "Kafka producer was created eagerly");
+                apiDocs = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/v3/api-docs")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+            }
+
+            LOGGER.info("Startup: context ready in {} ms, first payment after {} ms, budget {} ms",
+                    readyNanos / 1_000_000, firstPaymentMillis, budgetMillis);
+            assertEquals(200, response.statusCode(), response.body());
+            assertTrue(response.body().contains("\"SUCCESSFUL\""), response.body());
+            assertEquals(200, apiDocs.statusCode(), "springdoc is created on first use");
+            assertTrue(apiDocs.body().contains("Instant Payment API"), apiDocs.body());
+            assertTrue(firstPaymentMillis <= budgetMillis,
+                    "first payment after " + firstPaymentMillis + " ms, budget is " + budgetMillis + " ms");
+        } finally {
+            SpringApplication.exit(context);
+        }
+    }
+
+    private static void seed(AccountRepository accountRepo) {
+        Account sender = new Account();
+        sender.setId("startup1");
+        sender.setBalance(Money.of(BigDecimal.valueOf(100)));
+        Account recipient = new Account();
+        recipient.setId("startup2");
+        recipient.setBalance(Money.of(BigDecimal.ZERO));
+        accountRepo.saveAll(List.of(sender, recipient));
+    }
+
+}
@@ -0,0 +1,44 @@
+package hu.bergerdenes.instantpayment.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+
+public class PaymentNotificationEventSerializerTest {
+
+    private final PaymentNotificationEventSerializer serializer = new PaymentNotificationEventSerializer();
+
+    private final PaymentNotificationEventDeserializer deserializer = new PaymentNotificationEventDeserializer();
+
+    @Test
+    void testRoundTrip() {
+        Transaction tx = new Transaction();
+        tx.setId(42L);
+        tx.setSenderId("user1");
+        tx.setRecipientId("fizető-2");
+        tx.setAmount(Money.of(new BigDecimal("123.45")));
+        tx.setTimestamp(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        tx.setIdempotencyKey("a1b2c3d4");
+        PaymentNotificationEvent event = PaymentNotificationEvent.from(tx);
+
+        byte[] bytes = serializer.serialize("transaction_notifications", event);
+
+        assertEquals(12345L, event.amountMinor());
+        assertEquals(event, deserializer.deserialize("transaction_notifications", bytes));
+    }
+
+    @Test
+    void testUnknownVersionIsRejected() {
+        assertThrows(SerializationException.class, () -> deserializer.deserialize("transaction_notifications", new byte[]{9, 0, 0}));
+    }
+
+}
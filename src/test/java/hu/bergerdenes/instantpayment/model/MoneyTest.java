@@ -0,0 +1,45 @@
+package hu.bergerdenes.instantpayment.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+public class MoneyTest {
+
+    @Test
+    void testOfAcceptsUpToTwoDecimals() {
+        assertEquals(12345L, Money.of(new BigDecimal("123.45")).minorUnits());
+        assertEquals(12300L, Money.of(new BigDecimal("123")).minorUnits());
+        assertEquals(12340L, Money.of(new BigDecimal("123.4000")).minorUnits());
+        assertEquals(new BigDecimal("123.45"), Money.of(new BigDecimal("123.45")).toBigDecimal());
+    }
+
+    @Test
+    void testOfRejectsSubCentAmounts() {
+        assertThrows(IllegalArgumentException.class, () -> Money.of(new BigDecimal("0.001")));
+        assertThrows(IllegalArgumentException.class, () -> Money.of(new BigDecimal("1e30")));
+    }
+
+    @Test
+    void testArithmetic() {
+        Money balance = Money.ofMinor(1000);
+        Money amount = Money.ofMinor(250);
+
+        assertEquals(Money.ofMinor(750), balance.minus(amount));
+        assertEquals(Money.ofMinor(1250), balance.plus(amount));
+        assertTrue(amount.isLessThan(balance));
+        assertEquals(-1, amount.minus(balance).signum());
+        assertEquals("10.00", balance.toString());
+    }
+
+    @Test
+    void testOverflowIsDetected() {
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MAX_VALUE).plus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MIN_VALUE).minus(Money.ofMinor(1)));
+    }
+
+}
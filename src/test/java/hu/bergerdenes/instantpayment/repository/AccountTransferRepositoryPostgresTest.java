@@ -0,0 +1,116 @@
+package hu.bergerdenes.instantpayment.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Runs the transfer statement against a real Postgres, it uses data-modifying CTEs that H2 does not support. Enabled
+ * with {@code -PpostgresUrl=jdbc:postgresql://localhost:5432/instantpayments}; the tables are created in a schema of
+ * their own, which is dropped afterwards.
+ */
+@EnabledIfSystemProperty(named = "postgres.url", matches = ".+")
+public class AccountTransferRepositoryPostgresTest {
+
+    private SingleConnectionDataSource dataSource;
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private AccountTransferRepositoryImpl repository;
+
+    private String schema;
+
+    @BeforeEach
+    void setup() {
+        dataSource = new SingleConnectionDataSource(System.getProperty("postgres.url"),
+                System.getProperty("postgres.username", "postgres"), System.getProperty("postgres.password", "postgres"), true);
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        schema = "transfer_test_" + UUID.randomUUID().toString().replace("-", "");
+        execute("CREATE SCHEMA " + schema);
+        execute("SET search_path TO " + schema);
+        execute("CREATE TABLE account (id varchar(255) NOT NULL PRIMARY KEY, balance numeric(38, 2), hot boolean NOT NULL DEFAULT false)");
+        execute("""
+                CREATE TABLE transaction (id bigserial PRIMARY KEY, amount numeric(38, 2), recipient_id varchar(255),
+                    sender_id varchar(255), timestamp timestamp(6) with time zone, idempotency_key varchar(255) UNIQUE)""");
+        execute("""
+                CREATE TABLE outbox_message (id bigserial PRIMARY KEY, transaction_id bigint NOT NULL,
+                    created_at timestamp(6) with time zone, sent_at timestamp(6) with time zone)""");
+        execute("INSERT INTO account (id, balance) VALUES ('user1', 100.00), ('user2', 50.00)");
+        repository = new AccountTransferRepositoryImpl(jdbcTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        execute("DROP SCHEMA " + schema + " CASCADE");
+        dataSource.destroy();
+    }
+
+    @Test
+    void testTransferMovesMoneyAndQueuesTheNotification() {
+        assertEquals(TransferOutcome.TRANSFERRED, repository.transfer("user1", "user2", new BigDecimal("30.00"), "key", true));
+
+        assertEquals(new BigDecimal("70.00"), balance("user1"));
+        assertEquals(new BigDecimal("80.00"), balance("user2"));
+        assertEquals(1, count("transaction"));
+        assertEquals(1, count("outbox_message"));
+    }
+
+    @Test
+    void testTransferWithoutNotification() {
+        assertEquals(TransferOutcome.TRANSFERRED, repository.transfer("user1", "user2", new BigDecimal("30.00"), "key", false));
+
+        assertEquals(1, count("transaction"));
+        assertEquals(0, count("outbox_message"));
+    }
+
+    @Test
+    void testDuplicateKeyChangesNothing() {
+        repository.transfer("user1", "user2", new BigDecimal("30.00"), "key", true);
+
+        assertEquals(TransferOutcome.DUPLICATE, repository.transfer("user1", "user2", new BigDecimal("30.00"), "key", true));
+        assertEquals(new BigDecimal("70.00"), balance("user1"));
+        assertEquals(1, count("transaction"));
+    }
+
+    @Test
+    void testRejectedTransfersChangeNothing() {
+        assertEquals(TransferOutcome.SENDER_NOT_FOUND, repository.transfer("missing", "user2", new BigDecimal("1.00"), "k1", true));
+        assertEquals(TransferOutcome.RECIPIENT_NOT_FOUND, repository.transfer("user1", "missing", new BigDecimal("1.00"), "k2", true));
+        assertEquals(TransferOutcome.INSUFFICIENT_FUNDS, repository.transfer("user1", "user2", new BigDecimal("100.01"), "k3", true));
+
+        assertEquals(new BigDecimal("100.00"), balance("user1"));
+        assertEquals(new BigDecimal("50.00"), balance("user2"));
+        assertEquals(0, count("transaction"));
+        assertEquals(0, count("outbox_message"));
+    }
+
+    @Test
+    void testTransferToSelfKeepsTheBalance() {
+        assertEquals(TransferOutcome.TRANSFERRED, repository.transfer("user1", "user1", new BigDecimal("30.00"), "key", false));
+
+        assertEquals(new BigDecimal("100.00"), balance("user1"));
+        assertEquals(1, count("transaction"));
+    }
+
+    private void execute(String sql) {
+        jdbcTemplate.getJdbcTemplate().execute(sql);
+    }
+
+    private BigDecimal balance(String accountId) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM account WHERE id = :id", Map.of("id", accountId), BigDecimal.class);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT count(*) FROM " + table, Integer.class);
+    }
+
+}
@@ -0,0 +1,67 @@
+package hu.bergerdenes.instantpayment.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 8, Duration.ofSeconds(10), 0.5,
+            Duration.ofSeconds(1), new SimpleMeterRegistry());
+
+    @Test
+    void testRejectsAboveLimit() {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(limiter.acquire());
+        }
+        assertThrows(ServiceBusyException.class, limiter::acquire);
+
+        permits.remove(0).release(null);
+        permits.add(limiter.acquire());
+        permits.forEach(p -> p.release(null));
+    }
+
+    @Test
+    void testLimitGrowsWhenUsedAndShrinksOnOverload() {
+        for (int round = 0; round < 10; round++) {
+            List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                permits.add(limiter.acquire());
+            }
+            permits.forEach(p -> p.release(null));
+        }
+        assertEquals(8, limiter.getLimit());
+
+        limiter.acquire().release(new ServiceBusyException("busy", Duration.ofSeconds(1)));
+        assertEquals(4, limiter.getLimit());
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire().release(new ServiceBusyException("busy", Duration.ofSeconds(1)));
+        }
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    void testBatchLatencyIsJudgedPerPayment() throws InterruptedException {
+        AdaptiveConcurrencyLimiter fast = new AdaptiveConcurrencyLimiter(4, 2, 8, Duration.ofMillis(20), 0.5,
+                Duration.ofSeconds(1), new SimpleMeterRegistry());
+
+        AdaptiveConcurrencyLimiter.Permit batch = fast.acquire(100);
+        Thread.sleep(50);
+        batch.release(null);
+        assertEquals(4, fast.getLimit());
+
+        AdaptiveConcurrencyLimiter.Permit single = fast.acquire();
+        Thread.sleep(50);
+        single.release(null);
+        assertEquals(2, fast.getLimit());
+    }
+
+}
@@ -0,0 +1,148 @@
+package hu.bergerdenes.instantpayment.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.AccountSlotRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+import hu.bergerdenes.instantpayment.service.velocity.VelocityLimiter;
+
+public class BatchPaymentProcessorTest {
+
+    private AccountRepository accountRepo;
+
+    private TransactionRepository transactionRepo;
+
+    private AccountLockStrategy lockStrategy;
+
+    private AccountSlotRepository slotRepo;
+
+    private HotAccounts hotAccounts;
+
+    private BatchPaymentProcessor processor;
+
+    private Account user1;
+
+    private Account user2;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        accountRepo = mock(AccountRepository.class);
+        transactionRepo = mock(TransactionRepository.class);
+        lockStrategy = mock(AccountLockStrategy.class);
+        slotRepo = mock(AccountSlotRepository.class);
+        hotAccounts = new HotAccounts(accountRepo, slotRepo, 4);
+        user1 = account("user1", 100);
+        user2 = account("user2", 50);
+        when(accountRepo.findAllById(anyIterable())).thenReturn(List.of(user1, user2));
+        when(transactionRepo.findExistingIdempotencyKeys(anyCollection())).thenReturn(Set.of("old"));
+        when(lockStrategy.name()).thenReturn("test");
+        PaymentMetrics metrics = new PaymentMetrics(new SimpleMeterRegistry(), lockStrategy, mock(ObjectProvider.class));
+        processor = new BatchPaymentProcessor(accountRepo, transactionRepo, lockStrategy, metrics, hotAccounts, mock(BalanceCache.class),
+                new VelocityLimiter(transactionRepo, null, 0, BigDecimal.ZERO, 1000), false);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProcessAppliesPaymentsInOrder() {
+        List<SendPaymentResult> results = processor.process(List.of(
+                request("user1", "user2", 80, "k1"),
+                request("user1", "user2", 30, "k2"),
+                request("user2", "user1", 130, "k3"),
+                request("user1", "missing", 1, "k4"),
+                request("missing", "user1", 1, "k5"),
+                request("user1", "user2", 1, "k1"),
+                request("user1", "user2", 1, "old")));
+
+        assertEquals("Payment is processed.", results.get(0).message());
+        assertEquals("Insufficient balance.", results.get(1).message());
+        assertEquals("Payment is processed.", results.get(2).message());
+        assertEquals("Recipient account not found.", results.get(3).message());
+        assertEquals("Sender account not found.", results.get(4).message());
+        assertEquals("Payment is already processed.", results.get(5).message());
+        assertEquals("Payment is already processed.", results.get(6).message());
+        assertEquals(Money.of(BigDecimal.valueOf(150)), user1.getBalance());
+        assertEquals(Money.ZERO, user2.getBalance());
+
+        verify(lockStrategy).lockAccounts(Set.of("user1", "user2", "missing"));
+        ArgumentCaptor<List<Transaction>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepo).insertAll(inserted.capture(), eq(false));
+        assertEquals(2, inserted.getValue().size());
+    }
+
+    @Test
+    void testFailedPaymentIsReplayedForRepeatedKey() {
+        List<SendPaymentResult> results = processor.process(List.of(
+                request("user2", "user1", 500, "k1"),
+                request("user2", "user1", 10, "k1")));
+
+        assertEquals("Insufficient balance.", results.get(0).message());
+        assertEquals("Insufficient balance.", results.get(1).message());
+        assertEquals(Money.of(BigDecimal.valueOf(50)), user2.getBalance());
+        verify(transactionRepo).insertAll(anyList(), eq(false));
+    }
+
+    @Test
+    void testHotRecipientIsCreditedThroughSlotWithoutLock() {
+        user2.setHot(true);
+        when(accountRepo.findHotAccountIds()).thenReturn(List.of("user2"));
+        when(slotRepo.credit(eq("user2"), anyInt(), any())).thenReturn(1);
+        hotAccounts.refresh();
+
+        List<SendPaymentResult> results = processor.process(List.of(
+                request("user1", "user2", 30, "k1"),
+                request("user1", "user2", 20, "k2")));
+
+        assertEquals("Payment is processed.", results.get(0).message());
+        assertEquals("Payment is processed.", results.get(1).message());
+        assertEquals(Money.of(BigDecimal.valueOf(50)), user1.getBalance());
+        assertEquals(Money.of(BigDecimal.valueOf(50)), user2.getBalance());
+        verify(lockStrategy).lockAccounts(Set.of("user1"));
+        verify(slotRepo).credit(eq("user2"), anyInt(), eq(new BigDecimal("50.00")));
+    }
+
+    private static Account account(String id, long balance) {
+        Account account = new Account();
+        account.setId(id);
+        account.setBalance(Money.of(BigDecimal.valueOf(balance)));
+        return account;
+    }
+
+    private static SendPaymentRequest request(String senderId, String recipientId, long amount, String idempotencyKey) {
+        SendPaymentRequest request = new SendPaymentRequest();
+        request.setSenderId(senderId);
+        request.setRecipientId(recipientId);
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setIdempotencyKey(idempotencyKey);
+        return request;
+    }
+
+}
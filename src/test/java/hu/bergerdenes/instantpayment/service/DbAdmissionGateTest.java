@@ -0,0 +1,42 @@
+package hu.bergerdenes.instantpayment.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+public class DbAdmissionGateTest {
+
+    @Test
+    void testRejectsWhenFull() throws Exception {
+        DbAdmissionGate gate = new DbAdmissionGate(1, Duration.ofMillis(50), Duration.ofSeconds(2));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> holder = CompletableFuture.supplyAsync(() -> gate.call(() -> {
+            entered.countDown();
+            await(release);
+            return "first";
+        }));
+        entered.await();
+
+        ServiceBusyException ex = assertThrows(ServiceBusyException.class, () -> gate.call(() -> "second"));
+        assertEquals(Duration.ofSeconds(2), ex.getRetryAfter());
+
+        release.countDown();
+        assertEquals("first", holder.join());
+        assertEquals("third", gate.call(() -> "third"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
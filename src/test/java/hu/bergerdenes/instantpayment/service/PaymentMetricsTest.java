@@ -0,0 +1,73 @@
+package hu.bergerdenes.instantpayment.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.service.lock.AccountLockStrategy;
+
+public class PaymentMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final PaymentMetrics metrics = newMetrics();
+
+    @Test
+    void testEveryKnownResultIsCountedUnderItsReason() {
+        Map<SendPaymentResult, String> expected = new LinkedHashMap<>();
+        expected.put(SendPaymentResult.PROCESSED, "processed");
+        expected.put(SendPaymentResult.ALREADY_PROCESSED, "already_processed");
+        expected.put(SendPaymentResult.SENDER_NOT_FOUND, "sender_not_found");
+        expected.put(SendPaymentResult.RECIPIENT_NOT_FOUND, "recipient_not_found");
+        expected.put(SendPaymentResult.INSUFFICIENT_BALANCE, "insufficient_balance");
+        expected.put(SendPaymentResult.RECIPIENT_BALANCE_LIMIT, "recipient_balance_limit");
+        expected.put(SendPaymentResult.IDENTIFIERS_TOO_LONG, "identifiers_too_long");
+        expected.put(SendPaymentResult.TRANSFER_RATE_LIMIT, "transfer_rate_limit");
+        expected.put(SendPaymentResult.DAILY_AMOUNT_LIMIT, "daily_amount_limit");
+        expected.put(SendPaymentResult.PROCESSING_FAILED, "fallback");
+        expected.put(SendPaymentResult.validationError("amount - must be positive; "), "validation");
+        expected.put(SendPaymentResult.serviceBusy("Too many concurrent requests"), "service_busy");
+
+        expected.forEach((result, reason) -> {
+            metrics.recordResult(result);
+
+            assertEquals(1, count(result.successCode(), reason), result.message());
+        });
+    }
+
+    @Test
+    void testUnknownMessageIsCountedAsOther() {
+        metrics.recordResult(new SendPaymentResult(SuccessCode.FAILED, "Recipient balance limit exceeded."));
+
+        assertEquals(1, count(SuccessCode.FAILED, "other"));
+        assertEquals(0, count(SuccessCode.FAILED, "recipient_balance_limit"));
+    }
+
+    @Test
+    void testResultCountersAreRegisteredUpFront() {
+        assertEquals(SuccessCode.values().length * SendPaymentResult.Reason.values().length,
+                meterRegistry.find("payment.results").counters().size());
+    }
+
+    private double count(SuccessCode code, String reason) {
+        return meterRegistry.get("payment.results").tag("code", code.name()).tag("reason", reason).counter().count();
+    }
+
+    private PaymentMetrics newMetrics() {
+        AccountLockStrategy lockStrategy = mock(AccountLockStrategy.class);
+        when(lockStrategy.name()).thenReturn("local");
+        return new PaymentMetrics(meterRegistry, lockStrategy,
+                new StaticListableBeanFactory().getBeanProvider(CircuitBreakerRegistry.class));
+    }
+
+}
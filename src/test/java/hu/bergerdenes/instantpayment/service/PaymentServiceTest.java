@@ -2,13 +2,20 @@ package hu.bergerdenes.instantpayment.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import jakarta.inject.Inject;
@@ -18,13 +25,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.transaction.annotation.Transactional;
 
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
 import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
 import hu.bergerdenes.instantpayment.dto.SuccessCode;
 import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
 import hu.bergerdenes.instantpayment.model.Transaction;
 import hu.bergerdenes.instantpayment.repository.AccountRepository;
 import hu.bergerdenes.instantpayment.repository.TransactionRepository;
@@ -43,14 +53,18 @@ public class PaymentServiceTest {
     @MockitoBean
     private TransactionRepository transactionRepo;
 
+    private Account a1;
+
+    private Account a2;
+
     @BeforeEach
     void setup() {
-        Account a1 = new Account();
+        a1 = new Account();
         a1.setId("user1");
-        a1.setBalance(BigDecimal.valueOf(1000));
-        Account a2 = new Account();
+        a1.setBalance(Money.of(BigDecimal.valueOf(1000)));
+        a2 = new Account();
         a2.setId("user2");
-        a2.setBalance(BigDecimal.valueOf(500));
+        a2.setBalance(Money.of(BigDecimal.valueOf(500)));
         when(accountRepo.findById("user1")).thenReturn(Optional.of(a1));
         when(accountRepo.findById("user2")).thenReturn(Optional.of(a2));
     }
@@ -61,9 +75,9 @@ public class PaymentServiceTest {
         SendPaymentResult result = paymentService.sendPayment("user1", "user2", BigDecimal.valueOf(100), key);
         ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
         Account user1 = accountRepo.findById("user1").get();
-        assertEquals(BigDecimal.valueOf(900), user1.getBalance());
+        assertEquals(Money.of(BigDecimal.valueOf(900)), user1.getBalance());
         Account user2 = accountRepo.findById("user2").get();
-        assertEquals(BigDecimal.valueOf(600), user2.getBalance());
+        assertEquals(Money.of(BigDecimal.valueOf(600)), user2.getBalance());
         verify(accountRepo, times(1)).save(user1);
         verify(accountRepo, times(1)).save(user2);
         assertEquals(SuccessCode.SUCCESSFUL, result.successCode());
@@ -102,8 +116,8 @@ public class PaymentServiceTest {
         assertEquals("Payment is processed.", res1.message());
         assertEquals(SuccessCode.SUCCESSFUL, res2.successCode());
         assertEquals("Payment is already processed.", res2.message());
-        assertEquals(BigDecimal.valueOf(950), accountRepo.findById("user1").get().getBalance());
-        assertEquals(BigDecimal.valueOf(550), accountRepo.findById("user2").get().getBalance());
+        assertEquals(Money.of(BigDecimal.valueOf(950)), accountRepo.findById("user1").get().getBalance());
+        assertEquals(Money.of(BigDecimal.valueOf(550)), accountRepo.findById("user2").get().getBalance());
     }
 
     @Test
@@ -126,14 +140,58 @@ public class PaymentServiceTest {
         verify(transactionRepo, never()).save(any());
     }
 
+    @Test
+    void testBatchConflictingWithSinglePaymentReportsItAlreadyProcessed() {
+        String k1 = UUID.randomUUID().toString();
+        String k2 = UUID.randomUUID().toString();
+        String k3 = UUID.randomUUID().toString();
+        when(accountRepo.findAllById(anyIterable())).thenReturn(List.of(a1, a2));
+        when(transactionRepo.findExistingIdempotencyKeys(anyCollection())).thenReturn(Set.of()).thenReturn(Set.of(k2));
+        doThrow(new DuplicateKeyException("duplicate key value violates unique constraint"))
+                .doNothing()
+                .when(transactionRepo).insertAll(anyList(), anyBoolean());
+
+        List<SendPaymentResult> results = paymentService.sendPayments(List.of(
+                request("user1", "user2", 10, k1),
+                request("user1", "user2", 10, k2),
+                request("user1", "user2", 10, k3)));
+
+        assertEquals(List.of("Payment is processed.", "Payment is already processed.", "Payment is processed."),
+                results.stream().map(SendPaymentResult::message).toList());
+        ArgumentCaptor<List<Transaction>> inserted = ArgumentCaptor.captor();
+        verify(transactionRepo, times(2)).insertAll(inserted.capture(), anyBoolean());
+        assertEquals(List.of(k1, k3), inserted.getValue().stream().map(Transaction::getIdempotencyKey).toList());
+    }
+
+    @Test
+    void testBatchReplaysCachedResult() {
+        String key = UUID.randomUUID().toString();
+        SendPaymentResult single = paymentService.sendPayment("nonexistentSender", "user2", BigDecimal.valueOf(100), key);
+
+        List<SendPaymentResult> batch = paymentService.sendPayments(List.of(request("user1", "user2", 100, key)));
+
+        assertEquals(List.of(single), batch);
+        assertEquals("Sender account not found.", batch.get(0).message());
+        verify(transactionRepo, never()).insertAll(anyList(), anyBoolean());
+    }
+
     @Test
     void testFallbackSendPayment() {
         String key = UUID.randomUUID().toString();
         SendPaymentResult result = paymentService.fallbackSendPayment("user1", "user2", BigDecimal.valueOf(100), key, new RuntimeException("Simulated failure"));
         assertEquals(SuccessCode.FAILED, result.successCode());
-        assertEquals("Payment processing failed. Please try again later.", result.message());
+        assertEquals(SendPaymentResult.PROCESSING_FAILED, result);
         verify(accountRepo, never()).save(any());
         verify(transactionRepo, never()).save(any());
     }
 
+    private static SendPaymentRequest request(String senderId, String recipientId, long amount, String idempotencyKey) {
+        SendPaymentRequest request = new SendPaymentRequest();
+        request.setSenderId(senderId);
+        request.setRecipientId(recipientId);
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setIdempotencyKey(idempotencyKey);
+        return request;
+    }
+
 }
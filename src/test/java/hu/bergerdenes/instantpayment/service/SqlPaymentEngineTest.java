@@ -0,0 +1,82 @@
+package hu.bergerdenes.instantpayment.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransferOutcome;
+import hu.bergerdenes.instantpayment.service.balance.BalanceCache;
+
+public class SqlPaymentEngineTest {
+
+    private static final Map<TransferOutcome, SendPaymentResult> EXPECTED = Map.of(
+            TransferOutcome.TRANSFERRED, SendPaymentResult.PROCESSED,
+            TransferOutcome.DUPLICATE, SendPaymentResult.ALREADY_PROCESSED,
+            TransferOutcome.SENDER_NOT_FOUND, SendPaymentResult.SENDER_NOT_FOUND,
+            TransferOutcome.RECIPIENT_NOT_FOUND, SendPaymentResult.RECIPIENT_NOT_FOUND,
+            TransferOutcome.INSUFFICIENT_FUNDS, SendPaymentResult.INSUFFICIENT_BALANCE);
+
+    private final AccountRepository accountRepo = mock(AccountRepository.class);
+
+    private final BalanceCache balanceCache = mock(BalanceCache.class);
+
+    @Test
+    void testEveryOutcomeMapsToItsResult() {
+        SqlPaymentEngine engine = new SqlPaymentEngine(accountRepo, balanceCache, false);
+        for (TransferOutcome outcome : TransferOutcome.values()) {
+            when(accountRepo.transfer(anyString(), anyString(), any(), anyString(), anyBoolean())).thenReturn(outcome);
+
+            SendPaymentResult result = engine.sendPayment("user1", "user2", Money.ofMinor(1050), "key-" + outcome);
+
+            assertEquals(EXPECTED.get(outcome), result, outcome.name());
+        }
+    }
+
+    @Test
+    void testTransferredEvictsBothBalances() {
+        SqlPaymentEngine engine = new SqlPaymentEngine(accountRepo, balanceCache, false);
+        when(accountRepo.transfer(anyString(), anyString(), any(), anyString(), anyBoolean())).thenReturn(TransferOutcome.TRANSFERRED);
+
+        engine.sendPayment("user1", "user2", Money.ofMinor(1050), "key");
+
+        verify(accountRepo).transfer("user1", "user2", new BigDecimal("10.50"), "key", false);
+        verify(balanceCache).evictAfterCommit(List.of("user1", "user2"));
+    }
+
+    @Test
+    void testFailureKeepsCachedBalances() {
+        SqlPaymentEngine engine = new SqlPaymentEngine(accountRepo, balanceCache, false);
+        when(accountRepo.transfer(anyString(), anyString(), any(), anyString(), anyBoolean())).thenReturn(TransferOutcome.INSUFFICIENT_FUNDS);
+
+        engine.sendPayment("user1", "user2", Money.ofMinor(1050), "key");
+
+        verify(balanceCache, never()).evictAfterCommit(any());
+    }
+
+    @Test
+    void testNotifiesThroughTheOutboxOnlyWithKafka() {
+        when(accountRepo.transfer(anyString(), anyString(), any(), anyString(), anyBoolean())).thenReturn(TransferOutcome.TRANSFERRED);
+
+        new SqlPaymentEngine(accountRepo, balanceCache, true).sendPayment("user1", "user2", Money.ofMinor(100), "notified");
+        new SqlPaymentEngine(accountRepo, balanceCache, false).sendPayment("user1", "user2", Money.ofMinor(100), "silent");
+
+        verify(accountRepo).transfer(anyString(), anyString(), any(), eq("notified"), eq(true));
+        verify(accountRepo).transfer(anyString(), anyString(), any(), eq("silent"), eq(false));
+    }
+
+}
@@ -0,0 +1,91 @@
+package hu.bergerdenes.instantpayment.service.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+
+public class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEventsAreWrittenAsJsonLines() throws Exception {
+        AuditLog auditLog = auditLog(16, "block", DataSize.ofMegabytes(1), 3);
+        auditLog.start();
+
+        auditLog.record("user1", "user2", 10050, "key-1", SendPaymentResult.PROCESSED, System.nanoTime());
+        auditLog.record("user\"3", "user4", 5, "key-2", null, System.nanoTime());
+        auditLog.stop();
+
+        List<String> lines = Files.readAllLines(directory.resolve(AuditFile.FILE_NAME));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"senderId\":\"user1\",\"recipientId\":\"user2\",\"amount\":100.50,\"idempotencyKey\":\"key-1\","
+                + "\"outcome\":\"SUCCESSFUL\",\"message\":\"Payment is processed.\""), lines.get(0));
+        assertTrue(lines.get(1).contains("\"senderId\":\"user\\\"3\",\"recipientId\":\"user4\",\"amount\":0.05,\"idempotencyKey\":\"key-2\","
+                + "\"outcome\":\"ERROR\",\"message\":null"), lines.get(1));
+    }
+
+    @Test
+    void testFullBufferDropsAndCounts() throws Exception {
+        AuditLog auditLog = auditLog(4, "drop", DataSize.ofMegabytes(1), 3);
+
+        for (int i = 0; i < 6; i++) {
+            auditLog.record("user1", "user2", 100, "key-" + i, SendPaymentResult.INSUFFICIENT_BALANCE, System.nanoTime());
+        }
+        auditLog.start();
+        auditLog.stop();
+
+        assertEquals(2, auditLog.getDropped());
+        assertEquals(4, Files.readAllLines(directory.resolve(AuditFile.FILE_NAME)).size());
+    }
+
+    @Test
+    void testBlockingPolicyKeepsEveryEventAndFilesRoll() throws Exception {
+        AuditLog auditLog = auditLog(8, "block", DataSize.ofKilobytes(256), 100);
+        auditLog.start();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<?>> producers = IntStream.range(0, 4).<Future<?>>mapToObj(p -> executor.submit(() -> {
+                for (int i = 0; i < 2500; i++) {
+                    auditLog.record("user" + p, "user9", i, p + "-" + i, SendPaymentResult.PROCESSED, System.nanoTime());
+                }
+            })).toList();
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        }
+        auditLog.stop();
+
+        long lines = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                lines += Files.readAllLines(file).size();
+            }
+        }
+        assertEquals(0, auditLog.getDropped());
+        assertEquals(10_000, lines);
+        assertTrue(Files.exists(directory.resolve("payment-audit.1.log")));
+    }
+
+    private AuditLog auditLog(int bufferSize, String overflow, DataSize maxFileSize, int maxFiles) {
+        return new AuditLog(true, directory, bufferSize, overflow, maxFileSize, maxFiles, Duration.ofMillis(5), new SimpleMeterRegistry());
+    }
+
+}
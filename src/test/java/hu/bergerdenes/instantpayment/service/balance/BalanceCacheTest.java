@@ -0,0 +1,72 @@
+package hu.bergerdenes.instantpayment.service.balance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+
+public class BalanceCacheTest {
+
+    private AccountRepository accountRepo;
+
+    private BalanceCache cache;
+
+    @BeforeEach
+    void setup() {
+        accountRepo = mock(AccountRepository.class);
+        HotAccounts hotAccounts = mock(HotAccounts.class);
+        when(hotAccounts.totalBalance(any())).thenAnswer(inv -> inv.<Account>getArgument(0).getBalance());
+        Account account = new Account();
+        account.setId("user1");
+        account.setBalance(Money.ofMinor(1000));
+        when(accountRepo.findById("user1")).thenReturn(Optional.of(account));
+        cache = new BalanceCache(accountRepo, hotAccounts, mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testBalanceIsLoadedOnce() {
+        assertEquals(Optional.of(Money.ofMinor(1000)), cache.get("user1"));
+        assertEquals(Optional.of(Money.ofMinor(1000)), cache.get("user1"));
+        assertTrue(cache.get("missing").isEmpty());
+
+        verify(accountRepo, times(1)).findById("user1");
+    }
+
+    @Test
+    void testEvictedOnlyAfterCommit() {
+        cache.get("user1");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.evictAfterCommit(List.of("user1"));
+            cache.get("user1");
+            verify(accountRepo, times(1)).findById("user1");
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cache.get("user1");
+        verify(accountRepo, times(2)).findById("user1");
+    }
+
+}
@@ -0,0 +1,145 @@
+package hu.bergerdenes.instantpayment.service.groupcommit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentRequest;
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.BatchPaymentProcessor;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+
+public class GroupCommitPaymentEngineTest {
+
+    private final AtomicInteger commits = new AtomicInteger();
+
+    private BatchPaymentProcessor batchProcessor;
+
+    private TransactionRepository transactionRepo;
+
+    private GroupCommitPaymentEngine engine;
+
+    @BeforeEach
+    void setup() {
+        batchProcessor = mock(BatchPaymentProcessor.class);
+        transactionRepo = mock(TransactionRepository.class);
+        when(transactionRepo.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        engine = new GroupCommitPaymentEngine(batchProcessor, transactionRepo, TransactionOperations.withoutTransaction(),
+                Duration.ofMillis(50), 256, 1000, Duration.ofSeconds(5), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        engine.shutdown();
+    }
+
+    @Test
+    void testConcurrentPaymentsShareOneCommit() {
+        when(batchProcessor.process(anyList())).thenAnswer(inv -> {
+            commits.incrementAndGet();
+            List<SendPaymentRequest> requests = inv.getArgument(0);
+            return requests.stream().map(r -> new SendPaymentResult(SuccessCode.SUCCESSFUL, r.getIdempotencyKey())).toList();
+        });
+
+        List<CompletableFuture<SendPaymentResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(engine.submit("user1", "user2", Money.ofMinor(100), "key" + i));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("key" + i, futures.get(i).join().message());
+        }
+        assertTrue(commits.get() < futures.size(), "expected grouped commits, got " + commits.get());
+    }
+
+    @Test
+    void testFailingGroupIsCommittedOneByOne() {
+        when(batchProcessor.process(anyList())).thenAnswer(inv -> {
+            List<SendPaymentRequest> requests = inv.getArgument(0);
+            if (requests.stream().anyMatch(r -> r.getIdempotencyKey().equals("bad"))) {
+                throw new DataIntegrityViolationException("duplicate key");
+            }
+            return requests.stream().map(r -> SendPaymentResult.PROCESSED).toList();
+        });
+        when(transactionRepo.findByIdempotencyKey("bad")).thenReturn(Optional.of(new Transaction()));
+
+        CompletableFuture<SendPaymentResult> good = engine.submit("user1", "user2", Money.ofMinor(100), "good");
+        CompletableFuture<SendPaymentResult> bad = engine.submit("user1", "user2", Money.ofMinor(100), "bad");
+
+        assertEquals("Payment is processed.", good.join().message());
+        assertEquals("Payment is already processed.", bad.join().message());
+    }
+
+    @Test
+    void testOverloadIsRejectedAsBusy() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(batchProcessor.process(anyList())).thenAnswer(inv -> {
+            processing.countDown();
+            release.await();
+            List<SendPaymentRequest> requests = inv.getArgument(0);
+            return requests.stream().map(r -> SendPaymentResult.PROCESSED).toList();
+        });
+        GroupCommitPaymentEngine small = new GroupCommitPaymentEngine(batchProcessor, transactionRepo, TransactionOperations.withoutTransaction(),
+                Duration.ofMillis(1), 256, 1, Duration.ofMillis(100), Duration.ofSeconds(2));
+        try {
+            CompletableFuture<SendPaymentResult> first = small.submit("user1", "user2", Money.ofMinor(100), "first");
+            processing.await();
+            CompletableFuture<SendPaymentResult> queued = small.submit("user1", "user2", Money.ofMinor(100), "queued");
+
+            ServiceBusyException full = assertThrows(ServiceBusyException.class,
+                    () -> small.sendPayment("user1", "user2", Money.ofMinor(100), "rejected"));
+            assertEquals(Duration.ofSeconds(2), full.getRetryAfter());
+
+            release.countDown();
+            assertEquals("Payment is processed.", first.join().message());
+            assertEquals("Payment is processed.", queued.join().message());
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void testTimeoutIsRejectedAsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(batchProcessor.process(anyList())).thenAnswer(inv -> {
+            release.await();
+            List<SendPaymentRequest> requests = inv.getArgument(0);
+            return requests.stream().map(r -> SendPaymentResult.PROCESSED).toList();
+        });
+        GroupCommitPaymentEngine slow = new GroupCommitPaymentEngine(batchProcessor, transactionRepo, TransactionOperations.withoutTransaction(),
+                Duration.ofMillis(1), 256, 10, Duration.ofMillis(50), Duration.ofSeconds(2));
+        try {
+            ServiceBusyException timedOut = assertThrows(ServiceBusyException.class,
+                    () -> slow.sendPayment("user1", "user2", Money.ofMinor(100), "slow"));
+            assertEquals(Duration.ofSeconds(2), timedOut.getRetryAfter());
+        } finally {
+            release.countDown();
+            slow.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package hu.bergerdenes.instantpayment.service.groupcommit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import jakarta.inject.Inject;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+
+@SpringBootTest(properties = {"payment.engine=group-commit", "payment.velocity.max-transfers-per-minute=2"})
+@ActiveProfiles("test")
+public class GroupCommitVelocityLimitTest {
+
+    @Inject
+    private PaymentService paymentService;
+
+    @MockitoBean
+    private AccountRepository accountRepo;
+
+    @MockitoBean
+    private TransactionRepository transactionRepo;
+
+    @Test
+    void testEachTransferCountsOnceAgainstTheLimit() {
+        when(accountRepo.findAllById(anyIterable())).thenReturn(List.of(account("user1", 1000), account("user2", 0)));
+
+        SendPaymentResult first = paymentService.sendPayment("user1", "user2", BigDecimal.TEN, "velocity-1");
+        SendPaymentResult second = paymentService.sendPayment("user1", "user2", BigDecimal.TEN, "velocity-2");
+        SendPaymentResult third = paymentService.sendPayment("user1", "user2", BigDecimal.TEN, "velocity-3");
+
+        assertEquals(SuccessCode.SUCCESSFUL, first.successCode());
+        assertEquals(SuccessCode.SUCCESSFUL, second.successCode());
+        assertEquals(SuccessCode.LIMIT_EXCEEDED, third.successCode());
+        assertEquals("Transfer limit per minute exceeded.", third.message());
+    }
+
+    private static Account account(String id, long balance) {
+        Account account = new Account();
+        account.setId(id);
+        account.setBalance(Money.of(BigDecimal.valueOf(balance)));
+        return account;
+    }
+
+}
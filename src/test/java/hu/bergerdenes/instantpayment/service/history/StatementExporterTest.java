@@ -0,0 +1,108 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.hot.HotAccounts;
+
+public class StatementExporterTest {
+
+    private static final Instant FROM = Instant.parse("2025-05-01T00:00:00Z");
+
+    private static final Instant TO = Instant.parse("2025-06-01T00:00:00Z");
+
+    private AccountRepository accountRepo;
+
+    private TransactionRepository transactionRepo;
+
+    private StatementExporter exporter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        accountRepo = mock(AccountRepository.class);
+        transactionRepo = mock(TransactionRepository.class);
+        HotAccounts hotAccounts = mock(HotAccounts.class);
+        Account account = new Account();
+        account.setId("user1");
+        account.setBalance(Money.ofMinor(100_00));
+        when(accountRepo.findById("user1")).thenReturn(Optional.of(account));
+        when(hotAccounts.totalBalance(account)).thenReturn(account.getBalance());
+        when(transactionRepo.netChangeSince("user1", FROM)).thenReturn(new BigDecimal("20.00"));
+        doAnswer(inv -> {
+            Consumer<Transaction> consumer = inv.getArgument(3);
+            consumer.accept(tx(1, "user2", "user1", 50_00, "2025-05-02T10:00:00Z"));
+            consumer.accept(tx(2, "user1", "user3", 30_00, "2025-05-03T10:00:00Z"));
+            consumer.accept(tx(3, "user1", "user1", 10_00, "2025-05-04T10:00:00Z"));
+            return null;
+        }).when(transactionRepo).streamStatement(eq("user1"), eq(FROM), eq(TO), any(Consumer.class));
+        exporter = new StatementExporter(accountRepo, transactionRepo, hotAccounts, new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    @Test
+    void testCsvStatementHasRunningBalance() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int lines = exporter.export("user1", FROM, TO, StatementFormat.CSV, out);
+
+        assertEquals(3, lines);
+        assertEquals("""
+                transaction_id,timestamp,direction,counterparty_id,amount,balance
+                1,2025-05-02T10:00:00Z,CREDIT,user2,50.00,130.00
+                2,2025-05-03T10:00:00Z,DEBIT,user3,30.00,100.00
+                3,2025-05-04T10:00:00Z,SELF,user1,10.00,100.00
+                """, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testNdjsonStatementHasOneLinePerPayment() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exporter.export("user1", FROM, TO, StatementFormat.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(130.00, new ObjectMapper().readTree(lines[0]).get("balance").asDouble());
+    }
+
+    @Test
+    void testUnknownAccountIsRejected() {
+        when(accountRepo.findById("missing")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> exporter.export("missing", FROM, TO, StatementFormat.CSV, new ByteArrayOutputStream()));
+    }
+
+    private static Transaction tx(long id, String senderId, String recipientId, long amountMinor, String timestamp) {
+        Transaction tx = new Transaction();
+        tx.setId(id);
+        tx.setSenderId(senderId);
+        tx.setRecipientId(recipientId);
+        tx.setAmount(Money.ofMinor(amountMinor));
+        tx.setTimestamp(Instant.parse(timestamp));
+        return tx;
+    }
+
+}
@@ -0,0 +1,80 @@
+package hu.bergerdenes.instantpayment.service.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.dto.TransactionHistoryPage;
+import hu.bergerdenes.instantpayment.dto.TransactionView;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+public class TransactionHistoryServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-05-01T10:00:00.123456Z");
+
+    private TransactionRepository transactionRepo;
+
+    private TransactionHistoryService service;
+
+    @BeforeEach
+    void setup() {
+        transactionRepo = mock(TransactionRepository.class);
+        service = new TransactionHistoryService(transactionRepo);
+    }
+
+    @Test
+    void testPageMergesSentAndReceivedNewestFirst() {
+        Transaction toSelf = tx(5, "user1", "user1", 50);
+        when(transactionRepo.findSentBefore(eq("user1"), any(), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(toSelf, tx(3, "user1", "user2", 30), tx(1, "user1", "user2", 10)));
+        when(transactionRepo.findReceivedBefore(eq("user1"), any(), eq(Long.MAX_VALUE), any()))
+                .thenReturn(List.of(toSelf, tx(4, "user2", "user1", 40), tx(2, "user2", "user1", 20)));
+
+        TransactionHistoryPage page = service.history("user1", null, 3);
+
+        assertEquals(List.of(5L, 4L, 3L), page.transactions().stream().map(TransactionView::id).toList());
+
+        service.history("user1", page.nextCursor(), 3);
+        verify(transactionRepo).findSentBefore(eq("user1"), eq(NOW.minusSeconds(3)), eq(3L), any());
+    }
+
+    @Test
+    void testLastPageHasNoCursor() {
+        when(transactionRepo.findSentBefore(any(), any(), eq(Long.MAX_VALUE), any())).thenReturn(List.of(tx(1, "user1", "user2", 10)));
+        when(transactionRepo.findReceivedBefore(any(), any(), eq(Long.MAX_VALUE), any())).thenReturn(List.of());
+
+        TransactionHistoryPage page = service.history("user1", null, 3);
+
+        assertEquals(1, page.transactions().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void testInvalidCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.history("user1", "not-a-cursor", 3));
+    }
+
+    private static Transaction tx(long id, String senderId, String recipientId, long amount) {
+        Transaction tx = new Transaction();
+        tx.setId(id);
+        tx.setSenderId(senderId);
+        tx.setRecipientId(recipientId);
+        tx.setAmount(Money.ofMinor(amount));
+        tx.setTimestamp(NOW.minusSeconds(6 - id));
+        return tx;
+    }
+
+}
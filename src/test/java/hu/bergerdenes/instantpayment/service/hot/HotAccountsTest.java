@@ -0,0 +1,73 @@
+package hu.bergerdenes.instantpayment.service.hot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.AccountSlot;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.AccountSlotRepository;
+
+public class HotAccountsTest {
+
+    private AccountSlotRepository slotRepo;
+
+    private HotAccounts hotAccounts;
+
+    private Account account;
+
+    @BeforeEach
+    void setup() {
+        slotRepo = mock(AccountSlotRepository.class);
+        hotAccounts = new HotAccounts(mock(AccountRepository.class), slotRepo, 2);
+        account = new Account();
+        account.setId("fees");
+        account.setBalance(Money.ofMinor(100));
+        account.setHot(true);
+    }
+
+    @Test
+    void testFoldMovesSlotBalancesIntoAccount() {
+        AccountSlot first = slot(0, 250);
+        AccountSlot second = slot(1, 50);
+        when(slotRepo.findByAccountIdForUpdate("fees")).thenReturn(List.of(first, second));
+
+        assertEquals(Money.ofMinor(300), hotAccounts.fold(account));
+        assertEquals(Money.ofMinor(400), account.getBalance());
+        assertEquals(Money.ZERO, first.getBalance());
+        assertEquals(Money.ZERO, second.getBalance());
+    }
+
+    @Test
+    void testTotalBalanceIncludesSlots() {
+        when(slotRepo.sumBalance("fees")).thenReturn(new BigDecimal("2.50"));
+
+        assertEquals(Money.ofMinor(350), hotAccounts.totalBalance(account));
+    }
+
+    @Test
+    void testCreditFailsWithoutSlots() {
+        when(slotRepo.credit(eq("fees"), anyInt(), any())).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> hotAccounts.credit("fees", Money.ofMinor(100)));
+    }
+
+    private static AccountSlot slot(int index, long balance) {
+        AccountSlot slot = new AccountSlot("fees", index);
+        slot.setBalance(Money.ofMinor(balance));
+        return slot;
+    }
+
+}
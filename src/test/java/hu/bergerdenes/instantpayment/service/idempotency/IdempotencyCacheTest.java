@@ -0,0 +1,37 @@
+package hu.bergerdenes.instantpayment.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+public class IdempotencyCacheTest {
+
+    private final IdempotencyCache cache = new IdempotencyCache(mock(TransactionRepository.class), mock(TransactionTemplate.class),
+            100, Duration.ofMinutes(10), 1000, 0.01, Duration.ofHours(1));
+
+    @Test
+    void testFailureIsReplayedForRepeatedKey() {
+        cache.execute("k1", () -> SendPaymentResult.INSUFFICIENT_BALANCE);
+        SendPaymentResult repeated = cache.execute("k1", () -> SendPaymentResult.PROCESSED);
+
+        assertEquals(SendPaymentResult.INSUFFICIENT_BALANCE, repeated);
+    }
+
+    @Test
+    void testLimitExceededIsNotReplayed() {
+        SendPaymentResult rejected = cache.execute("k1", () -> SendPaymentResult.TRANSFER_RATE_LIMIT);
+        SendPaymentResult retried = cache.execute("k1", () -> SendPaymentResult.PROCESSED);
+
+        assertEquals(SuccessCode.LIMIT_EXCEEDED, rejected.successCode());
+        assertEquals(SendPaymentResult.PROCESSED, retried);
+    }
+
+}
@@ -0,0 +1,46 @@
+package hu.bergerdenes.instantpayment.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class RotatingBloomFilterTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void testFalsePositivesStayLowBeyondExpectedKeys() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.01, Duration.ofHours(1), nanos::get);
+
+        IntStream.range(0, 20_000).forEach(i -> filter.put("key-" + i));
+
+        assertTrue(IntStream.range(19_000, 20_000).allMatch(i -> filter.mightContain("key-" + i)));
+        long falsePositives = IntStream.range(0, 10_000).filter(i -> filter.mightContain("new-" + i)).count();
+        assertTrue(falsePositives < 500, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void testKeysAreForgottenAfterTwoIntervals() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1000, 0.01, Duration.ofHours(1), nanos::get);
+
+        filter.put("old");
+        nanos.addAndGet(Duration.ofMinutes(90).toNanos());
+        filter.put("recent");
+
+        assertTrue(filter.mightContain("old"));
+        assertTrue(filter.mightContain("recent"));
+
+        nanos.addAndGet(Duration.ofMinutes(90).toNanos());
+        filter.put("latest");
+
+        assertFalse(filter.mightContain("old"));
+        assertTrue(filter.mightContain("recent"));
+        assertTrue(filter.mightContain("latest"));
+    }
+
+}
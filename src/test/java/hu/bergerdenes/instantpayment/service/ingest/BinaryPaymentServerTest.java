@@ -0,0 +1,163 @@
+package hu.bergerdenes.instantpayment.service.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jakarta.validation.Validation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.service.AdaptiveConcurrencyLimiter;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+
+public class BinaryPaymentServerTest {
+
+    private final PaymentService paymentService = mock(PaymentService.class);
+
+    private BinaryPaymentServer server;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.stop();
+    }
+
+    @Test
+    void testPipelinedPaymentsGetCorrelatedResults() throws IOException {
+        when(paymentService.sendPaymentAsync(anyString(), anyString(), any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(SendPaymentResult.PROCESSED));
+        start(16);
+
+        try (SocketChannel client = connect()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            PaymentFrames.encodePayment(frames, 1, 10050, "user1", "user2", "key-1");
+            PaymentFrames.encodePayment(frames, 2, 100, "", "user2", "key-2");
+            PaymentFrames.encodePayment(frames, 3, 0, "user1", "user2", "key-3");
+            write(client, frames);
+
+            Map<Long, Result> results = readResults(client, 3);
+
+            assertEquals(new Result(PaymentFrames.SUCCESSFUL, "Payment is processed."), results.get(1L));
+            assertEquals(PaymentFrames.FAILED, results.get(2L).status);
+            assertTrue(results.get(2L).message.contains("senderId - must not be blank"), results.get(2L).message);
+            assertEquals(PaymentFrames.FAILED, results.get(3L).status);
+            assertTrue(results.get(3L).message.contains("Amount to send has to be positive"), results.get(3L).message);
+        }
+        verify(paymentService).sendPaymentAsync("user1", "user2", new BigDecimal("100.50"), "key-1");
+    }
+
+    @Test
+    void testConnectionIsNotReadBeyondMaxInFlight() throws Exception {
+        List<CompletableFuture<SendPaymentResult>> pending = new CopyOnWriteArrayList<>();
+        when(paymentService.sendPaymentAsync(anyString(), anyString(), any(), anyString())).thenAnswer(invocation -> {
+            CompletableFuture<SendPaymentResult> result = new CompletableFuture<>();
+            pending.add(result);
+            return result;
+        });
+        start(2);
+
+        try (SocketChannel client = connect()) {
+            ByteBuffer frames = ByteBuffer.allocate(1024);
+            for (int i = 0; i < 5; i++) {
+                PaymentFrames.encodePayment(frames, i, 100, "user1", "user2", "key-" + i);
+            }
+            write(client, frames);
+
+            verify(paymentService, timeout(1000).times(2)).sendPaymentAsync(anyString(), anyString(), any(), anyString());
+            Thread.sleep(200);
+            verify(paymentService, times(2)).sendPaymentAsync(anyString(), anyString(), any(), anyString());
+
+            for (int completed = 0; completed < 5; completed++) {
+                verify(paymentService, timeout(1000).times(Math.min(5, completed + 2)))
+                        .sendPaymentAsync(anyString(), anyString(), any(), anyString());
+                pending.get(completed).complete(SendPaymentResult.INSUFFICIENT_BALANCE);
+            }
+
+            Map<Long, Result> results = readResults(client, 5);
+            assertEquals(5, results.size());
+            assertEquals(new Result(PaymentFrames.FAILED, "Insufficient balance."), results.get(4L));
+        }
+    }
+
+    @Test
+    void testMalformedFrameClosesConnection() throws IOException {
+        start(16);
+
+        try (SocketChannel client = connect()) {
+            write(client, ByteBuffer.allocate(8).putInt(3).putInt(0));
+
+            assertEquals(-1, client.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    private void start(int maxInFlight) throws IOException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 5, 1000, Duration.ofSeconds(1), 0.9,
+                Duration.ofSeconds(1), new SimpleMeterRegistry());
+        server = new BinaryPaymentServer(paymentService, limiter, Validation.buildDefaultValidatorFactory().getValidator(),
+                0, DataSize.ofKilobytes(4), maxInFlight, 4);
+        server.start();
+    }
+
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+    }
+
+    private static void write(SocketChannel client, ByteBuffer frames) throws IOException {
+        frames.flip();
+        while (frames.hasRemaining()) {
+            client.write(frames);
+        }
+    }
+
+    private static Map<Long, Result> readResults(SocketChannel client, int count) throws IOException {
+        Map<Long, Result> results = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer length = readFully(client, PaymentFrames.LENGTH_BYTES);
+            ByteBuffer frame = readFully(client, length.getInt());
+            long correlationId = frame.getLong();
+            byte status = frame.get();
+            byte[] message = new byte[frame.getShort()];
+            frame.get(message);
+            results.put(correlationId, new Result(status, new String(message, StandardCharsets.UTF_8)));
+        }
+        return results;
+    }
+
+    private static ByteBuffer readFully(SocketChannel client, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private record Result(byte status, String message) {
+    }
+
+}
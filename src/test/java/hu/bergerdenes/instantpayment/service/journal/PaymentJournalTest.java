@@ -0,0 +1,138 @@
+package hu.bergerdenes.instantpayment.service.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+public class PaymentJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private TransactionRepository transactionRepo;
+
+    private final Set<String> persistedKeys = new HashSet<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        transactionRepo = mock(TransactionRepository.class);
+        when(transactionRepo.findExistingIdempotencyKeys(anyCollection())).thenAnswer(inv -> {
+            Set<String> existing = new HashSet<>(inv.<List<String>>getArgument(0));
+            existing.retainAll(persistedKeys);
+            return existing;
+        });
+    }
+
+    @Test
+    void testRecoversBalancesAndTransfers() throws Exception {
+        PaymentJournal journal = journal();
+        journal.recover();
+        journal.appendOpen("user1", Money.ofMinor(1000), false);
+        journal.appendOpen("user2", Money.ofMinor(500), true);
+        journal.appendTransfer(tx("user1", "user2", 300, "k1"));
+        long last = journal.appendTransfer(tx("user2", "user1", 100, "k2"));
+        journal.whenDurable(last).get();
+        journal.close();
+
+        JournalRecovery recovery = journal().recover();
+
+        assertEquals(4, recovery.lastSequence());
+        assertEquals(new JournalAccount(800, false), recovery.accounts().get("user1"));
+        assertEquals(new JournalAccount(700, true), recovery.accounts().get("user2"));
+        assertEquals(List.of("k1", "k2"), recovery.transfers().stream().map(Transaction::getIdempotencyKey).toList());
+    }
+
+    @Test
+    void testTornRecordEndsTheJournal() throws Exception {
+        PaymentJournal journal = journal();
+        journal.recover();
+        journal.appendOpen("user1", Money.ofMinor(1000), false);
+        journal.appendOpen("user2", Money.ofMinor(0), false);
+        journal.appendTransfer(tx("user1", "user2", 300, "k1"));
+        journal.close();
+        Path segment = segments().getFirst();
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.position(2L * JournalRecord.SIZE + 100);
+            channel.write(ByteBuffer.wrap(new byte[]{42}));
+        }
+
+        PaymentJournal reopened = journal();
+        JournalRecovery recovery = reopened.recover();
+        assertEquals(2, recovery.lastSequence());
+        assertEquals(1000, recovery.accounts().get("user1").balance());
+
+        reopened.appendTransfer(tx("user1", "user2", 100, "k2"));
+        reopened.close();
+        assertEquals(900, journal().recover().accounts().get("user1").balance());
+    }
+
+    @Test
+    void testSnapshotReplacesPersistedSegments() throws Exception {
+        PaymentJournal journal = journal();
+        journal.recover();
+        journal.appendOpen("user1", Money.ofMinor(1000), false);
+        journal.appendOpen("user2", Money.ofMinor(0), false);
+        for (int i = 0; i < 10; i++) {
+            journal.appendTransfer(tx("user1", "user2", 10, "k" + i));
+        }
+        journal.compact();
+        assertEquals(3, segments().size());
+
+        for (int i = 0; i < 10; i++) {
+            persistedKeys.add("k" + i);
+        }
+        journal.compact();
+        journal.close();
+
+        assertEquals(1, segments().size());
+        JournalRecovery recovery = journal().recover();
+        assertEquals(12, recovery.lastSequence());
+        assertEquals(900, recovery.accounts().get("user1").balance());
+        assertEquals(100, recovery.accounts().get("user2").balance());
+        assertTrue(recovery.transfers().size() < 10);
+    }
+
+    private PaymentJournal journal() {
+        return new PaymentJournal(transactionRepo, directory, DataSize.ofBytes(4L * JournalRecord.SIZE), "always", Duration.ofMillis(1));
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.toString().endsWith(".segment")).sorted().toList();
+        }
+    }
+
+    private static Transaction tx(String senderId, String recipientId, long amount, String key) {
+        Transaction tx = new Transaction();
+        tx.setSenderId(senderId);
+        tx.setRecipientId(recipientId);
+        tx.setAmount(Money.ofMinor(amount));
+        tx.setTimestamp(Instant.parse("2025-05-01T10:00:00Z"));
+        tx.setIdempotencyKey(key);
+        return tx;
+    }
+
+}
@@ -0,0 +1,234 @@
+package hu.bergerdenes.instantpayment.service.ledger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.dto.SuccessCode;
+import hu.bergerdenes.instantpayment.model.Account;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.AccountRepository;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+import hu.bergerdenes.instantpayment.service.ServiceBusyException;
+
+public class LedgerEngineTest {
+
+    private static final int ACCOUNTS = 16;
+
+    private static final Money INITIAL_BALANCE = Money.ofMinor(100_000);
+
+    private static final Money FULL_BALANCE = Money.ofMinor(Long.MAX_VALUE - 500);
+
+    private final Map<String, Money> persistedBalances = new ConcurrentHashMap<>();
+
+    private final Set<String> persistedKeys = ConcurrentHashMap.newKeySet();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private volatile boolean databaseDown;
+
+    private AccountRepository accountRepo;
+
+    private TransactionRepository transactionRepo;
+
+    private LedgerEngine engine;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        accountRepo = mock(AccountRepository.class);
+        transactionRepo = mock(TransactionRepository.class);
+        when(accountRepo.findById(anyString())).thenAnswer(inv -> {
+            String id = inv.getArgument(0);
+            if (!id.startsWith("user")) {
+                return Optional.empty();
+            }
+            Account account = new Account();
+            account.setId(id);
+            account.setBalance(id.equals("userFull") ? FULL_BALANCE : INITIAL_BALANCE);
+            return Optional.of(account);
+        });
+        when(accountRepo.saveAll(anyIterable())).thenAnswer(inv -> {
+            ((Iterable<Account>) inv.getArgument(0)).forEach(a -> persistedBalances.put(a.getId(), a.getBalance()));
+            return List.of();
+        });
+        when(transactionRepo.saveAll(anyIterable())).thenAnswer(inv -> {
+            Iterable<Transaction> batch = inv.getArgument(0);
+            if (databaseDown) {
+                throw new TransientDataAccessResourceException("database is down");
+            }
+            for (Transaction tx : batch) {
+                if (tx.getIdempotencyKey().startsWith("rejected")) {
+                    throw new DataIntegrityViolationException("rejected row");
+                }
+            }
+            batch.forEach(tx -> persistedKeys.add(tx.getIdempotencyKey()));
+            return List.of();
+        });
+        when(transactionRepo.findByIdempotencyKey(anyString()))
+                .thenAnswer(inv -> persistedKeys.contains(inv.<String>getArgument(0)) ? Optional.of(new Transaction()) : Optional.empty());
+        engine = newEngine(100_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LedgerEngine newEngine(int maxBacklog) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new LedgerEngine(accountRepo, transactionRepo, mock(OutboxRepository.class), TransactionOperations.withoutTransaction(),
+                mock(ObjectProvider.class), false, 4, 10_000, Duration.ofSeconds(10), 100, Duration.ofMillis(5), maxBacklog,
+                Duration.ofSeconds(1), meterRegistry);
+    }
+
+    private static void awaitCaughtUp(LedgerEngine engine) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (engine.writeBehindBacklog() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, engine.writeBehindBacklog());
+    }
+
+    @Test
+    void testConcurrentTransfersConserveBalances() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        List<Future<SendPaymentResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            futures.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                String sender = "user" + random.nextInt(ACCOUNTS);
+                String recipient = "user" + random.nextInt(ACCOUNTS);
+                return engine.sendPayment(sender, recipient, Money.ofMinor(random.nextInt(1, 300) * 100L), UUID.randomUUID().toString());
+            }));
+        }
+        int successful = 0;
+        for (Future<SendPaymentResult> future : futures) {
+            if (future.get().successCode() == SuccessCode.SUCCESSFUL) {
+                successful++;
+            }
+        }
+        pool.shutdown();
+
+        Money total = Money.ZERO;
+        List<Money> balances = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Money balance = engine.balance("user" + i);
+            assertTrue(balance.signum() >= 0, "negative balance: " + balance);
+            balances.add(balance);
+            total = total.plus(balance);
+        }
+        assertEquals(Money.ofMinor(INITIAL_BALANCE.minorUnits() * ACCOUNTS), total);
+
+        engine.shutdown();
+        assertEquals(successful, persistedKeys.size());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(balances.get(i), persistedBalances.getOrDefault("user" + i, INITIAL_BALANCE));
+        }
+    }
+
+    @Test
+    void testFailedTransfersLeaveBalancesUntouched() throws Exception {
+        SendPaymentResult senderMissing = engine.sendPayment("missing", "user1", Money.ofMinor(1000), UUID.randomUUID().toString());
+        SendPaymentResult recipientMissing = engine.sendPayment("user1", "missing", Money.ofMinor(1000), UUID.randomUUID().toString());
+        SendPaymentResult insufficient = engine.sendPayment("user1", "user2", Money.ofMinor(500_000), UUID.randomUUID().toString());
+
+        assertEquals("Sender account not found.", senderMissing.message());
+        assertEquals("Recipient account not found.", recipientMissing.message());
+        assertEquals("Insufficient balance.", insufficient.message());
+        assertEquals(INITIAL_BALANCE, engine.balance("user1"));
+        assertEquals(INITIAL_BALANCE, engine.balance("user2"));
+        engine.shutdown();
+        assertEquals(0, persistedKeys.size());
+    }
+
+    @Test
+    void testRecipientOverflowRefundsSender() throws Exception {
+        SendPaymentResult overflow = engine.sendPayment("user1", "userFull", Money.ofMinor(1000), UUID.randomUUID().toString());
+        SendPaymentResult fits = engine.sendPayment("user1", "userFull", Money.ofMinor(500), UUID.randomUUID().toString());
+
+        assertEquals("Recipient balance limit exceeded.", overflow.message());
+        assertEquals(SuccessCode.SUCCESSFUL, fits.successCode());
+        assertEquals(INITIAL_BALANCE.minus(Money.ofMinor(500)), engine.balance("user1"));
+        assertEquals(Money.ofMinor(Long.MAX_VALUE), engine.balance("userFull"));
+        engine.shutdown();
+        assertEquals(1, persistedKeys.size());
+        assertEquals(INITIAL_BALANCE.minus(Money.ofMinor(500)), persistedBalances.get("user1"));
+    }
+
+    @Test
+    void testRejectedTransactionIsParkedAndTheRestPersisted() throws Exception {
+        for (String key : List.of("first", "rejected", "second")) {
+            assertEquals(SuccessCode.SUCCESSFUL, engine.sendPayment("user1", "user2", Money.ofMinor(1000), key).successCode());
+        }
+        awaitCaughtUp(engine);
+
+        assertEquals(Set.of("first", "second"), persistedKeys);
+        assertEquals(1.0, meterRegistry.get("payment.ledger.write-behind.parked").functionCounter().count());
+        assertEquals("Payment is already processed.",
+                engine.sendPayment("user1", "user2", Money.ofMinor(1000), "rejected").message());
+        SendPaymentResult afterwards = engine.sendPayment("user1", "user2", Money.ofMinor(1000), "third");
+        assertEquals(SuccessCode.SUCCESSFUL, afterwards.successCode());
+        engine.shutdown();
+        assertEquals(Set.of("first", "second", "third"), persistedKeys);
+    }
+
+    @Test
+    void testTransfersRejectedWhileBacklogIsOverItsBound() throws Exception {
+        engine.shutdown();
+        engine = newEngine(2);
+        databaseDown = true;
+        engine.sendPayment("user1", "user2", Money.ofMinor(1000), UUID.randomUUID().toString());
+        engine.sendPayment("user1", "user2", Money.ofMinor(1000), UUID.randomUUID().toString());
+
+        ServiceBusyException busy = assertThrows(ServiceBusyException.class,
+                () -> engine.sendPayment("user1", "user2", Money.ofMinor(1000), UUID.randomUUID().toString()));
+        assertEquals(Duration.ofSeconds(1), busy.getRetryAfter());
+        assertTrue(meterRegistry.get("payment.ledger.write-behind.backlog").gauge().value() >= 2);
+
+        databaseDown = false;
+        awaitCaughtUp(engine);
+        SendPaymentResult accepted = engine.sendPayment("user1", "user2", Money.ofMinor(1000), UUID.randomUUID().toString());
+        assertEquals(SuccessCode.SUCCESSFUL, accepted.successCode());
+        engine.shutdown();
+        assertEquals(3, persistedKeys.size());
+    }
+
+    @Test
+    void testDuplicateIdempotencyKey() throws Exception {
+        String key = UUID.randomUUID().toString();
+        SendPaymentResult first = engine.sendPayment("user1", "user2", Money.ofMinor(1000), key);
+        SendPaymentResult second = engine.sendPayment("user1", "user2", Money.ofMinor(1000), key);
+
+        assertEquals("Payment is processed.", first.message());
+        assertEquals("Payment is already processed.", second.message());
+        assertEquals(INITIAL_BALANCE.minus(Money.ofMinor(1000)), engine.balance("user1"));
+        engine.shutdown();
+    }
+
+}
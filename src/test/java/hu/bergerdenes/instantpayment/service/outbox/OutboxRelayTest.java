@@ -0,0 +1,83 @@
+package hu.bergerdenes.instantpayment.service.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.OutboxMessage;
+import hu.bergerdenes.instantpayment.model.Transaction;
+import hu.bergerdenes.instantpayment.repository.OutboxRepository;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+public class OutboxRelayTest {
+
+    private final List<Transaction> published = new ArrayList<>();
+
+    private OutboxRepository outboxRepo;
+
+    private TransactionRepository transactionRepo;
+
+    private List<OutboxMessage> messages;
+
+    @BeforeEach
+    void setup() {
+        outboxRepo = mock(OutboxRepository.class);
+        transactionRepo = mock(TransactionRepository.class);
+        messages = new ArrayList<>();
+        List<Transaction> transactions = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            Transaction tx = new Transaction();
+            tx.setId(id);
+            tx.setSenderId("user1");
+            tx.setRecipientId("user" + (id + 1));
+            tx.setAmount(Money.ofMinor(1000));
+            transactions.add(tx);
+            messages.add(new OutboxMessage(id));
+        }
+        when(outboxRepo.findUnsent(any())).thenReturn(messages).thenReturn(List.of());
+        when(transactionRepo.findAllById(anyIterable())).thenReturn(transactions);
+    }
+
+    @Test
+    void testRelayPublishesAndMarksSent() {
+        NotificationPublisher fakeProducer = transactions -> {
+            published.addAll(transactions);
+            return CompletableFuture.completedFuture(null);
+        };
+
+        relay(fakeProducer).relay();
+
+        assertEquals(3, published.size());
+        assertEquals("user2", published.get(0).getRecipientId());
+        messages.forEach(message -> assertNotNull(message.getSentAt()));
+    }
+
+    @Test
+    void testFailedPublishLeavesMessagesPending() {
+        NotificationPublisher failingProducer = transactions -> CompletableFuture.failedFuture(new IllegalStateException("broker down"));
+
+        relay(failingProducer).relay();
+
+        messages.forEach(message -> assertNull(message.getSentAt()));
+    }
+
+    private OutboxRelay relay(NotificationPublisher publisher) {
+        return new OutboxRelay(outboxRepo, transactionRepo, publisher, TransactionOperations.withoutTransaction(),
+                3, Duration.ofSeconds(1), Duration.ofDays(7));
+    }
+
+}
@@ -0,0 +1,95 @@
+package hu.bergerdenes.instantpayment.service.reconciliation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class LedgerReconcilerTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    private LedgerReconciler reconciler;
+
+    @BeforeEach
+    void setup() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:reconciliation-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE account (id varchar(255) PRIMARY KEY, balance numeric(38, 2))");
+        jdbcTemplate.execute("CREATE TABLE account_slot (account_id varchar(255), slot integer, balance numeric(38, 2), PRIMARY KEY (account_id, slot))");
+        jdbcTemplate.execute("CREATE TABLE transaction (id bigint AUTO_INCREMENT PRIMARY KEY, sender_id varchar(255), recipient_id varchar(255), amount numeric(38, 2))");
+        jdbcTemplate.execute("CREATE TABLE account_baseline (account_id varchar(255) PRIMARY KEY, opening_balance numeric(38, 2) NOT NULL)");
+        for (int i = 0; i < 25; i++) {
+            jdbcTemplate.update("INSERT INTO account (id, balance) VALUES (?, 100)", "user" + i);
+        }
+        reconciler = new LedgerReconciler(jdbcTemplate, new DataSourceTransactionManager(dataSource), 4, 3);
+    }
+
+    @Test
+    void testConsistentLedgerAfterTransfers() {
+        reconciler.reconcile();
+        transfer("user1", "user17", 30);
+        transfer("user17", "user9", 5);
+        jdbcTemplate.update("INSERT INTO account_slot (account_id, slot, balance) VALUES ('user9', 0, 5)");
+        jdbcTemplate.update("UPDATE account SET balance = 100 WHERE id = 'user9'");
+
+        ReconciliationReport report = reconciler.reconcile();
+
+        assertTrue(report.consistent());
+        assertEquals(7, report.ranges());
+        assertEquals(25, report.accounts());
+        assertEquals(0, report.unverifiedAccounts());
+        assertEquals(new BigDecimal("2500.00"), report.totalBalance());
+        assertEquals(new BigDecimal("2500.00"), report.totalOpeningBalance());
+    }
+
+    @Test
+    void testDriftIsReported() {
+        transfer("user1", "user2", 10);
+        ReconciliationReport first = reconciler.reconcile();
+        jdbcTemplate.update("UPDATE account SET balance = balance + 10 WHERE id = 'user3'");
+        transfer("user4", "missing", 7);
+
+        ReconciliationReport report = reconciler.reconcile();
+
+        assertEquals(25, first.unverifiedAccounts());
+        assertTrue(first.consistent());
+        assertFalse(report.consistent());
+        assertFalse(report.moneyConserved());
+        assertEquals(2, report.mismatchedAccounts());
+        assertEquals(new BigDecimal("2503.00"), report.totalBalance());
+        assertEquals(new BigDecimal("2500.00"), report.totalOpeningBalance());
+    }
+
+    @Test
+    void testFirstRunReportsAccountsAsUnverified() {
+        jdbcTemplate.update("UPDATE account SET balance = balance + 10 WHERE id = 'user3'");
+
+        ReconciliationReport first = reconciler.reconcile();
+        jdbcTemplate.update("UPDATE account SET balance = balance + 10 WHERE id = 'user3'");
+        ReconciliationReport second = reconciler.reconcile();
+
+        assertEquals(25, first.unverifiedAccounts());
+        assertEquals(0, first.mismatchedAccounts());
+        assertEquals(0, second.unverifiedAccounts());
+        assertEquals(1, second.mismatchedAccounts());
+        assertEquals(new BigDecimal("120.00"), second.mismatches().getFirst().balance());
+        assertEquals(new BigDecimal("110.00"), second.mismatches().getFirst().expectedBalance());
+    }
+
+    private void transfer(String senderId, String recipientId, long amount) {
+        jdbcTemplate.update("INSERT INTO transaction (sender_id, recipient_id, amount) VALUES (?, ?, ?)", senderId, recipientId, amount);
+        jdbcTemplate.update("UPDATE account SET balance = balance - ? WHERE id = ?", amount, senderId);
+        jdbcTemplate.update("UPDATE account SET balance = balance + ? WHERE id = ?", amount, recipientId);
+    }
+
+}
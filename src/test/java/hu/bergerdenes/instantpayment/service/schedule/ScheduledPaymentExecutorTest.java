@@ -0,0 +1,138 @@
+package hu.bergerdenes.instantpayment.service.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Recurrence;
+import hu.bergerdenes.instantpayment.model.ScheduledPayment.Status;
+import hu.bergerdenes.instantpayment.repository.ScheduledPaymentRepository;
+import hu.bergerdenes.instantpayment.service.PaymentService;
+
+public class ScheduledPaymentExecutorTest {
+
+    private final ScheduledPaymentRepository scheduleRepo = mock(ScheduledPaymentRepository.class);
+
+    private final PaymentService paymentService = mock(PaymentService.class);
+
+    private final ExecutorService paymentExecutor = Executors.newSingleThreadExecutor();
+
+    private ScheduledPaymentExecutor executor;
+
+    private ScheduledPayment schedule;
+
+    @BeforeEach
+    void setup() {
+        executor = new ScheduledPaymentExecutor(scheduleRepo, paymentService, TransactionOperations.withoutTransaction(),
+                paymentExecutor, Duration.ofMinutes(10), 100, Duration.ofMillis(10), 64);
+
+        // the fourth daily occurrence, due a minute ago
+        schedule = new ScheduledPayment();
+        schedule.setId(7L);
+        schedule.setSenderId("user1");
+        schedule.setRecipientId("user2");
+        schedule.setAmount(Money.ofMinor(1050));
+        schedule.setRecurrence(Recurrence.DAILY);
+        schedule.setStartAt(Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(3, ChronoUnit.DAYS).minus(1, ChronoUnit.MINUTES));
+        schedule.setOccurrence(3);
+        schedule.setNextExecution(Recurrence.DAILY.occurrence(schedule.getStartAt(), 3));
+        when(scheduleRepo.findDueBefore(eq(Status.ACTIVE), any(), anyLong(), any())).thenReturn(List.of(schedule));
+        when(scheduleRepo.findAllById(any())).thenReturn(List.of(schedule));
+    }
+
+    @AfterEach
+    void tearDown() {
+        paymentExecutor.shutdownNow();
+    }
+
+    @Test
+    void testOccurrenceIsPaidOnceUnderItsKeyAndAdvanced() {
+        when(paymentService.sendPayment(anyString(), anyString(), any(), anyString())).thenReturn(SendPaymentResult.PROCESSED);
+
+        executor.load();
+        executor.load();
+        executor.tick(System.currentTimeMillis());
+        executor.tick(System.currentTimeMillis());
+
+        verify(paymentService, times(1)).sendPayment("user1", "user2", new BigDecimal("10.50"), "sched-7-3");
+        verify(scheduleRepo, times(1)).advance(7L, 3L, schedule.getStartAt().plus(4, ChronoUnit.DAYS), Status.ACTIVE,
+                "Payment is processed.", Status.ACTIVE);
+    }
+
+    @Test
+    void testFallbackResultIsRetriedAfterTheNextLoad() {
+        when(paymentService.sendPayment(anyString(), anyString(), any(), anyString()))
+                .thenReturn(SendPaymentResult.PROCESSING_FAILED, SendPaymentResult.PROCESSED);
+
+        executor.load();
+        executor.tick(System.currentTimeMillis());
+
+        verify(scheduleRepo, never()).advance(anyLong(), anyLong(), any(), any(), any(), any());
+
+        executor.load();
+        executor.tick(System.currentTimeMillis());
+
+        verify(paymentService, times(2)).sendPayment("user1", "user2", new BigDecimal("10.50"), "sched-7-3");
+        verify(scheduleRepo, times(1)).advance(eq(7L), eq(3L), any(), eq(Status.ACTIVE), eq("Payment is processed."), eq(Status.ACTIVE));
+    }
+
+    @Test
+    void testFailedPaymentIsNotRetried() {
+        when(paymentService.sendPayment(anyString(), anyString(), any(), anyString())).thenReturn(SendPaymentResult.INSUFFICIENT_BALANCE);
+
+        executor.load();
+        executor.tick(System.currentTimeMillis());
+
+        verify(scheduleRepo).advance(eq(7L), eq(3L), any(), eq(Status.ACTIVE), eq("Insufficient balance."), eq(Status.ACTIVE));
+    }
+
+    @Test
+    void testLastOccurrenceBeforeTheEndCompletesTheSchedule() {
+        schedule.setEndAt(schedule.getStartAt().plus(3, ChronoUnit.DAYS).plus(12, ChronoUnit.HOURS));
+        when(paymentService.sendPayment(anyString(), anyString(), any(), anyString())).thenReturn(SendPaymentResult.PROCESSED);
+
+        executor.load();
+        executor.tick(System.currentTimeMillis());
+
+        verify(scheduleRepo).advance(7L, 3L, null, Status.COMPLETED, "Payment is processed.", Status.ACTIVE);
+    }
+
+    @Test
+    void testExecutionAfterStopsAtTheEnd() {
+        Instant start = Instant.parse("2025-01-01T08:00:00Z");
+        schedule.setStartAt(start);
+        schedule.setEndAt(Instant.parse("2025-01-03T08:00:00Z"));
+
+        assertEquals(Instant.parse("2025-01-02T08:00:00Z"), schedule.executionAfter(0));
+        assertEquals(Instant.parse("2025-01-03T08:00:00Z"), schedule.executionAfter(1));
+        assertNull(schedule.executionAfter(2));
+
+        schedule.setEndAt(null);
+        assertEquals(Instant.parse("2025-01-04T08:00:00Z"), schedule.executionAfter(2));
+    }
+
+}
@@ -0,0 +1,74 @@
+package hu.bergerdenes.instantpayment.service.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import hu.bergerdenes.instantpayment.model.ScheduledPayment;
+
+public class TimingWheelTest {
+
+    private static final long START = 1_000_000;
+
+    @Test
+    void testItemsExpireOnceTheirBucketEnds() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.add(START + 150, "a");
+        wheel.add(START + 50, "b");
+
+        assertEquals(List.of(), wheel.advance(START + 99));
+        assertEquals(List.of("b"), wheel.advance(START + 100));
+        assertEquals(List.of(), wheel.advance(START + 199));
+        assertEquals(List.of("a"), wheel.advance(START + 200));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testOverdueItemIsRejected() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.advance(START + 500);
+
+        assertFalse(wheel.add(START + 450, "late"));
+        assertTrue(wheel.add(START + 500, "now"));
+    }
+
+    @Test
+    void testFarItemsCascadeDownTheLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 4, START);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long deadline = START + random.nextInt(100_000);
+            deadlines.add(deadline);
+            wheel.add(deadline, deadline);
+        }
+
+        int expired = 0;
+        for (long now = START; now <= START + 100_010; now += 7) {
+            for (long deadline : wheel.advance(now)) {
+                assertTrue(deadline < now, "expired early: " + deadline + " at " + now);
+                assertTrue(deadline >= now - 7 - 10, "expired late: " + deadline + " at " + now);
+                expired++;
+            }
+        }
+        assertEquals(deadlines.size(), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testMonthlyOccurrencesDoNotDrift() {
+        Instant start = Instant.parse("2025-01-31T08:00:00Z");
+
+        assertEquals(Instant.parse("2025-02-28T08:00:00Z"), ScheduledPayment.Recurrence.MONTHLY.occurrence(start, 1));
+        assertEquals(Instant.parse("2025-03-31T08:00:00Z"), ScheduledPayment.Recurrence.MONTHLY.occurrence(start, 2));
+        assertEquals(null, ScheduledPayment.Recurrence.ONCE.occurrence(start, 1));
+    }
+
+}
@@ -0,0 +1,123 @@
+package hu.bergerdenes.instantpayment.service.velocity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import hu.bergerdenes.instantpayment.dto.SendPaymentResult;
+import hu.bergerdenes.instantpayment.model.Money;
+import hu.bergerdenes.instantpayment.repository.SentTransfer;
+import hu.bergerdenes.instantpayment.repository.TransactionRepository;
+
+public class VelocityLimiterTest {
+
+    private static final long NOW = Instant.parse("2025-05-01T12:00:00Z").toEpochMilli();
+
+    private final TransactionRepository transactionRepo = mock(TransactionRepository.class);
+
+    @Test
+    void testTransferCountSlidesWithTheMinute() {
+        VelocityLimiter limiter = limiter(3, 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("user1", Money.ofMinor(100), NOW + i * 1000L).granted());
+        }
+        VelocityLimiter.Permit rejected = limiter.tryAcquire("user1", Money.ofMinor(100), NOW + 10_000);
+
+        assertFalse(rejected.granted());
+        assertEquals(SendPaymentResult.TRANSFER_RATE_LIMIT, rejected.rejection());
+        assertTrue(limiter.tryAcquire("user2", Money.ofMinor(100), NOW + 10_000).granted());
+        assertTrue(limiter.tryAcquire("user1", Money.ofMinor(100), NOW + Duration.ofMinutes(1).toMillis()).granted());
+    }
+
+    @Test
+    void testReleasedPermitDoesNotCount() {
+        VelocityLimiter limiter = limiter(0, 10);
+
+        VelocityLimiter.Permit permit = limiter.tryAcquire("user1", Money.ofMinor(800), NOW);
+        VelocityLimiter.Permit rejected = limiter.tryAcquire("user1", Money.ofMinor(300), NOW);
+        limiter.release(permit);
+
+        assertTrue(permit.granted());
+        assertEquals(SendPaymentResult.DAILY_AMOUNT_LIMIT, rejected.rejection());
+        assertTrue(limiter.tryAcquire("user1", Money.ofMinor(1000), NOW).granted());
+    }
+
+    @Test
+    void testRetryAfterIsWhenTheOldestTransferSlidesOut() {
+        VelocityLimiter limiter = limiter(2, 0);
+
+        limiter.tryAcquire("user1", Money.ofMinor(100), NOW);
+        limiter.tryAcquire("user1", Money.ofMinor(100), NOW + 20_000);
+
+        assertEquals(Duration.ofSeconds(30), limiter.retryAfter("user1", Money.ofMinor(100), NOW + 30_000));
+        assertEquals(Duration.ZERO, limiter.retryAfter("user2", Money.ofMinor(100), NOW + 30_000));
+    }
+
+    @Test
+    void testConcurrentSendersCanNotExceedTheLimit() throws Exception {
+        VelocityLimiter limiter = limiter(100, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(pool.submit(() -> limiter.tryAcquire("user1", Money.ofMinor(1), NOW).granted()));
+        }
+        int granted = 0;
+        for (Future<Boolean> future : futures) {
+            granted += future.get() ? 1 : 0;
+        }
+        pool.shutdown();
+
+        assertEquals(100, granted);
+    }
+
+    @Test
+    void testRebuildCountsRecentTransfers() {
+        when(transactionRepo.streamSentBetween(any(), any())).thenReturn(Stream.of(
+                new SentTransfer("user1", Money.ofMinor(600), Instant.now().minus(Duration.ofHours(2))),
+                new SentTransfer("user1", Money.ofMinor(300), Instant.now().minus(Duration.ofSeconds(5)))));
+        VelocityLimiter limiter = limiter(0, 10);
+
+        limiter.rebuild();
+
+        assertEquals(SendPaymentResult.DAILY_AMOUNT_LIMIT, limiter.tryAcquire("user1", Money.ofMinor(200)).rejection());
+        assertTrue(limiter.tryAcquire("user1", Money.ofMinor(100)).granted());
+    }
+
+    @Test
+    void testWindowForgetsExpiredBuckets() {
+        SlidingWindow window = new SlidingWindow(4, 1000);
+
+        window.add(NOW - 5000, 7);
+        window.add(NOW - 2500, 2);
+        window.add(NOW, 1);
+
+        assertEquals(3, window.total(NOW));
+        assertEquals(1, window.total(NOW + 2000));
+        assertEquals(0, window.total(NOW + 4000));
+    }
+
+    private VelocityLimiter limiter(long maxTransfersPerMinute, long maxAmountPerDay) {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> TransactionOperations.withoutTransaction().execute(inv.getArgument(0)));
+        return new VelocityLimiter(transactionRepo, transactionTemplate, maxTransfersPerMinute, BigDecimal.valueOf(maxAmountPerDay), 1000);
+    }
+
+}